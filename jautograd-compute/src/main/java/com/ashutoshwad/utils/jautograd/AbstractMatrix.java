@@ -1,24 +1,51 @@
 package com.ashutoshwad.utils.jautograd;
 
-import java.util.Arrays;
-
 class AbstractMatrix {
-    private final double[][] value;
-    private final double[][] gradient;
+    private StridedStorage value;
+    private StridedStorage gradient;
+    private final BufferStorage bufferValue;
+    private final BufferStorage bufferGradient;
     protected final boolean requiresGradient;
     protected final ForwardComputeOperation forwardComputeOperation;
     protected final BackwardComputeOperation backwardComputeOperation;
 
-    protected AbstractMatrix(double[][] value, double[][] gradient, boolean requiresGradient, ForwardComputeOperation forwardComputeOperation, BackwardComputeOperation backwardComputeOperation) {
+    protected AbstractMatrix(StridedStorage value, StridedStorage gradient, boolean requiresGradient, ForwardComputeOperation forwardComputeOperation, BackwardComputeOperation backwardComputeOperation) {
         this.value = value;
         this.gradient = gradient;
+        this.bufferValue = null;
+        this.bufferGradient = null;
         this.requiresGradient = requiresGradient;
         this.forwardComputeOperation = forwardComputeOperation;
         this.backwardComputeOperation = backwardComputeOperation;
     }
 
+    /**
+     * A leaf whose value is kept in a narrower precision or off the heap. The gradient stays in double precision so that
+     * gradients from many operations add up without rounding in between, either in a {@code double[]} or, off the heap,
+     * in a FLOAT64 buffer.
+     */
+    protected AbstractMatrix(BufferStorage value, StridedStorage gradient, BufferStorage bufferGradient, boolean requiresGradient) {
+        this.value = null;
+        this.gradient = gradient;
+        this.bufferValue = value;
+        this.bufferGradient = bufferGradient;
+        this.requiresGradient = requiresGradient;
+        this.forwardComputeOperation = null;
+        this.backwardComputeOperation = null;
+    }
+
     // Accessor methods
     public void fill(double value) {
+        StridedStorage storage = getValueStorage();
+        if (null != storage) {
+            storage.fill(value);
+            return;
+        }
+        BufferStorage buffer = getBufferStorage();
+        if (null != buffer) {
+            buffer.fill(value);
+            return;
+        }
         for (int row = 0; row < numRows(); row++) {
             for (int col = 0; col < numCols(); col++) {
                 setValue(row, col, value);
@@ -32,25 +59,104 @@ class AbstractMatrix {
         return getGradient(0, 0);
     }
     public double getValue(int row, int column) {
-        return this.value[row][column];
+        return (null != this.value) ? this.value.get(row, column) : this.bufferValue.get(row, column);
     }
-    public synchronized void setValue(int row, int column, double value) {
-        this.value[row][column]=value;
+    public void setValue(int row, int column, double value) {
+        if (null != this.value) {
+            this.value.set(row, column, value);
+        } else {
+            this.bufferValue.set(row, column, value);
+        }
     }
     public double getGradient(int row, int column) {
-        return this.gradient[row][column];
+        return (null != this.bufferGradient) ? this.bufferGradient.get(row, column) : this.gradient.get(row, column);
     }
-    public synchronized void setGradient(int row, int column, double value) {
-        this.gradient[row][column]=value;
+    public void setGradient(int row, int column, double value) {
+        if (null != this.bufferGradient) {
+            this.bufferGradient.set(row, column, value);
+        } else {
+            this.gradient.set(row, column, value);
+        }
     }
-    public synchronized void accumulateGradient(int row, int column, double value) {
-        this.gradient[row][column]+=value;
+    public void accumulateGradient(int row, int column, double value) {
+        if (null != this.bufferGradient) {
+            this.bufferGradient.add(row, column, value);
+        } else {
+            this.gradient.add(row, column, value);
+        }
     }
     public int numRows() {
-        return this.value.length;
+        return (null != this.value) ? this.value.numRows() : this.bufferValue.numRows();
     }
     public int numCols() {
-        return this.value[0].length;
+        return (null != this.value) ? this.value.numCols() : this.bufferValue.numCols();
+    }
+    /**
+     * @return numRows() * numCols() without overflowing, matrices kept off the heap may hold more than 2^31 elements.
+     */
+    public long numElements() {
+        return (long) numRows() * numCols();
+    }
+    public Precision getPrecision() {
+        BufferStorage storage = getBufferStorage();
+        return (null == storage) ? Precision.FLOAT64 : storage.precision();
+    }
+
+    /**
+     * Direct access to the backing buffer, used by the compute kernels to skip the accessor methods.
+     * Views override this to describe themselves as a strided window over their source, or return null
+     * if they cannot be expressed that way, in which case kernels fall back to the accessor methods.
+     */
+    StridedStorage getValueStorage() {
+        return this.value;
+    }
+
+    /**
+     * The value of a matrix kept in a narrower {@link Precision}, or null if it is kept in a {@code double[]} or cannot
+     * be expressed as a strided window. Views override this the same way as {@link #getValueStorage()}.
+     */
+    BufferStorage getBufferStorage() {
+        return this.bufferValue;
+    }
+
+    /**
+     * Same as {@link #getBufferStorage()} for a gradient kept off the heap.
+     */
+    BufferStorage getGradientBufferStorage() {
+        return this.bufferGradient;
+    }
+
+    /**
+     * @return whichever of {@link #getValueStorage()} and {@link #getBufferStorage()} describes the value, or null.
+     */
+    ElementWindow getValueWindow() {
+        StridedStorage storage = getValueStorage();
+        return (null != storage) ? storage : getBufferStorage();
+    }
+
+    /**
+     * Same as {@link #getValueStorage()} for the gradient buffer. Returns null if there is no gradient.
+     */
+    StridedStorage getGradientStorage() {
+        return this.gradient;
+    }
+    /**
+     * @return the matrices a view reads and writes through, or null if this is not a view. Used to find the buffers
+     * behind views that have no strided storage.
+     */
+    Matrix[] getViewSources() {
+        return null;
+    }
+
+    /**
+     * Moves the value into another buffer of the same shape, used by {@link MemoryPlanner} to share buffers.
+     */
+    void bindValueStorage(StridedStorage value) {
+        this.value = value;
+    }
+
+    void bindGradientStorage(StridedStorage gradient) {
+        this.gradient = gradient;
     }
     public boolean getRequiresGradient() {
         return requiresGradient;
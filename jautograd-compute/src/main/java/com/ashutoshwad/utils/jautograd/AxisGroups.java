@@ -0,0 +1,61 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * The independent groups of elements an operation normalizing along an axis works on: every column for axis 0, every
+ * row for axis 1, or the whole matrix as a single group for {@link #ALL}.
+ * Element e of group g sits at {@code start(storage, g) + e * stride(storage)} for storage that {@link #isLinear} fits.
+ */
+record AxisGroups(int axis, int numRows, int numCols, int numGroups, int groupLength) {
+    static final int ALL = -1;
+
+    public static AxisGroups of(Matrix matrix, int axis) {
+        final int numRows = matrix.numRows();
+        final int numCols = matrix.numCols();
+        return switch (axis) {
+            case 0 -> new AxisGroups(axis, numRows, numCols, numCols, numRows);
+            case 1 -> new AxisGroups(axis, numRows, numCols, numRows, numCols);
+            case ALL -> new AxisGroups(axis, numRows, numCols, 1, numRows * numCols);
+            default -> throw new IllegalArgumentException("Axis must be either 0 for rows or 1 for columns. Found: " + axis);
+        };
+    }
+
+    /**
+     * @return true if every group of the storage is a single strided run, which holds for the axes and for the whole
+     * matrix only when it is contiguous.
+     */
+    public boolean isLinear(StridedStorage storage) {
+        return null != storage && (axis != ALL || storage.isContiguous());
+    }
+
+    public int start(StridedStorage storage, int group) {
+        return switch (axis) {
+            case 0 -> storage.offset() + group * storage.colStride();
+            case 1 -> storage.offset() + group * storage.rowStride();
+            default -> storage.offset();
+        };
+    }
+
+    public int stride(StridedStorage storage) {
+        return switch (axis) {
+            case 0 -> storage.rowStride();
+            case 1 -> storage.colStride();
+            default -> 1;
+        };
+    }
+
+    public int row(int group, int element) {
+        return switch (axis) {
+            case 0 -> element;
+            case 1 -> group;
+            default -> element / numCols;
+        };
+    }
+
+    public int column(int group, int element) {
+        return switch (axis) {
+            case 0 -> group;
+            case 1 -> element;
+            default -> element % numCols;
+        };
+    }
+}
@@ -1,30 +1,31 @@
 package com.ashutoshwad.utils.jautograd;
 
-import java.util.*;
-import java.util.concurrent.atomic.AtomicLong;
-
-abstract class BackwardComputeOperation {
-    private static final AtomicLong SEQUENCE_FACTORY = new AtomicLong(0);
-    private final long id;
+abstract class BackwardComputeOperation implements ExecutionPlan.Node<BackwardComputeOperation> {
     private final Matrix left;
     private final Matrix right;
     private Matrix result;
-    private final List<BackwardComputeOperation> backwardComputeOperations;
+    private final BackwardComputeOperation[] inputs;
+    private int planMark;
+    private ExecutionPlan<BackwardComputeOperation> plan;
+    private StridedStorage[] gradientsToClear;
+    private FusedElementWiseChain fusedChain;
 
     public BackwardComputeOperation(Matrix left, Matrix right, BackwardComputeOperation...backwardComputeOperations) {
-        this.id = SEQUENCE_FACTORY.getAndIncrement();
         this.left = left;
         this.right = right;
-        if (null==backwardComputeOperations) {
-            this.backwardComputeOperations = new LinkedList<>();
-        } else {
-            List<BackwardComputeOperation>temp = new LinkedList<>();
+        int count = 0;
+        if (null != backwardComputeOperations) {
             for (int i = 0; i < backwardComputeOperations.length; i++) {
                 if (null != backwardComputeOperations[i]) {
-                    temp.add(backwardComputeOperations[i]);
+                    count++;
                 }
             }
-            this.backwardComputeOperations = Collections.unmodifiableList(temp);
+        }
+        this.inputs = new BackwardComputeOperation[count];
+        for (int i = 0, j = 0; j < count; i++) {
+            if (null != backwardComputeOperations[i]) {
+                inputs[j++] = backwardComputeOperations[i];
+            }
         }
     }
 
@@ -44,23 +45,103 @@ abstract class BackwardComputeOperation {
         return result;
     }
 
-    private void collectComputeNodes(Map<Long, BackwardComputeOperation> state) {
-        if(state.containsKey(id)) {
-            return;
+    @Override
+    public final BackwardComputeOperation[] inputs() {
+        return inputs;
+    }
+
+    @Override
+    public final int getPlanMark() {
+        return planMark;
+    }
+
+    @Override
+    public final void setPlanMark(int mark) {
+        this.planMark = mark;
+    }
+
+    ExecutionPlan<BackwardComputeOperation> getPlan() {
+        ExecutionPlan<BackwardComputeOperation> current = plan;
+        if (null == current) {
+            current = ExecutionPlan.compile(this, BackwardComputeOperation[]::new, false);
+            plan = current;
+        }
+        return current;
+    }
+
+    /**
+     * Backward operations add into the gradients of their operands, and operands (or views of them) are shared
+     * between operations, so these buffers have to be written by one operation at a time.
+     */
+    @Override
+    public final Object[] writeTargets() {
+        if (null != fusedChain) {
+            return fusedChain.isTail(this) ? fusedChain.gradientTargets() : null;
+        }
+        Object leftTarget = gradientTarget(left);
+        Object rightTarget = gradientTarget(right);
+        if (null == leftTarget && null == rightTarget) {
+            return null;
+        }
+        return new Object[]{leftTarget, rightTarget};
+    }
+
+    static Object gradientTarget(Matrix matrix) {
+        if (null == matrix || !matrix.getRequiresGradient()) {
+            return null;
         }
-        state.put(id, this);
-        backwardComputeOperations.forEach(op -> op.collectComputeNodes(state));
+        StridedStorage storage = matrix.getGradientStorage();
+        return (null == storage) ? ExecutionPlan.UNKNOWN_TARGET : storage.data();
+    }
+
+    /**
+     * Runs the graph below this operation one operation at a time from now on.
+     */
+    final void runSequentially() {
+        plan = getPlan().asSequential();
+    }
+
+    /**
+     * Gradient buffers placed by {@link MemoryPlanner} whose use starts with this operation, they are cleared right
+     * before it runs.
+     */
+    final void setGradientsToClear(StridedStorage[] gradientsToClear) {
+        this.gradientsToClear = gradientsToClear;
+    }
+
+    /**
+     * Makes this operation part of a fused chain, only the operation of the last result of the chain does any work.
+     */
+    final void setFusedChain(FusedElementWiseChain fusedChain) {
+        this.fusedChain = fusedChain;
+    }
+
+    final FusedElementWiseChain getFusedChain() {
+        return fusedChain;
+    }
+
+    /**
+     * Compiles the plan again on the next run, needed once the writes of operations have moved to other operations.
+     */
+    final void resetPlan() {
+        plan = null;
     }
 
     public final void backward() {
-        Map<Long, BackwardComputeOperation> computeNodeMap = new TreeMap<>(new Comparator<Long>() {
-            @Override
-            public int compare(Long o1, Long o2) {
-                return o2.compareTo(o1); //Reverse the comparison
+        GraphScheduler.run(getPlan(), BackwardComputeOperation::clearAndPerform);
+    }
+
+    private void clearAndPerform() {
+        if (null != gradientsToClear) {
+            for (StridedStorage gradient : gradientsToClear) {
+                gradient.fill(0);
             }
-        });
-        collectComputeNodes(computeNodeMap);
-        computeNodeMap.forEach((k, v) -> v.perform());
+        }
+        if (null == fusedChain) {
+            perform();
+        } else if (fusedChain.isTail(this)) {
+            fusedChain.backward();
+        }
     }
 
     protected abstract void perform();
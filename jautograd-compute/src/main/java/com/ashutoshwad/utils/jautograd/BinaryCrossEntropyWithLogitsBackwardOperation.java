@@ -0,0 +1,75 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * Gradient of {@link BinaryCrossEntropyWithLogitsForwardOperation}, {@code (sigmoid(x) - t) / n} scaled by the
+ * gradient of the loss. Targets get no gradient.
+ */
+public class BinaryCrossEntropyWithLogitsBackwardOperation extends BackwardComputeOperation {
+    BinaryCrossEntropyWithLogitsBackwardOperation(Matrix logits, Matrix targets, BackwardComputeOperation... backwardComputeOperations) {
+        super(logits, targets, backwardComputeOperations);
+    }
+
+    @Override
+    protected void perform() {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        final Matrix logits = getLeft();
+        final int totalElements = logits.numRows() * logits.numCols();
+        final int numTasks = CostModel.elementwiseTasks(totalElements, 1, 3, details.numThreads());
+        final GradientAccumulator accumulator = GradientAccumulator.create(logits, RangePartitioner.numChunks(numTasks), false);
+        final double scale = getResult().getGradient(0, 0) / totalElements;
+        RangePartitioner.run(details, totalElements, numTasks,
+                new BinaryCrossEntropyWithLogitsBackwardOperation.WorkerJob(logits, getRight(), scale, accumulator));
+        accumulator.merge();
+    }
+
+    private static class WorkerJob implements RangePartitioner.RangeJob {
+        private final Matrix logits;
+        private final Matrix targets;
+        private final double scale;
+        private final GradientAccumulator accumulator;
+
+        public WorkerJob(Matrix logits, Matrix targets, double scale, GradientAccumulator accumulator) {
+            this.logits = logits;
+            this.targets = targets;
+            this.scale = scale;
+            this.accumulator = accumulator;
+        }
+
+        @Override
+        public void run(int chunk, int from, int to) {
+            final int numCols = logits.numCols();
+            final StridedStorage x = logits.getValueStorage();
+            final StridedStorage t = targets.getValueStorage();
+            final StridedStorage xGrad = logits.getGradientStorage();
+            if (null != x && null != t && accumulator.isDirect()) {
+                final double[] xData = x.data();
+                final double[] tData = t.data();
+                final double[] xGradData = xGrad.data();
+                for (int i = from; i < to; ) {
+                    final int row = i / numCols;
+                    final int colFrom = i - row * numCols;
+                    final int colTo = Math.min(numCols, colFrom + (to - i));
+                    int xIndex = x.offset() + row * x.rowStride() + colFrom * x.colStride();
+                    int tIndex = t.offset() + row * t.rowStride() + colFrom * t.colStride();
+                    int gIndex = xGrad.offset() + row * xGrad.rowStride() + colFrom * xGrad.colStride();
+                    for (int column = colFrom; column < colTo; column++, xIndex += x.colStride(), tIndex += t.colStride(), gIndex += xGrad.colStride()) {
+                        xGradData[gIndex] += scale * (sigmoid(xData[xIndex]) - tData[tIndex]);
+                    }
+                    i += colTo - colFrom;
+                }
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                final int row = i / numCols;
+                final int column = i % numCols;
+                accumulator.add(chunk, row, column, scale * (sigmoid(logits.getValue(row, column)) - targets.getValue(row, column)));
+            }
+        }
+
+        //Written so that exp never overflows
+        private static double sigmoid(double logit) {
+            return (logit >= 0) ? 1 / (1 + Math.exp(-logit)) : Math.exp(logit) / (1 + Math.exp(logit));
+        }
+    }
+}
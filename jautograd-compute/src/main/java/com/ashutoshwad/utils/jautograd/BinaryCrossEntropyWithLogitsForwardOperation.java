@@ -0,0 +1,74 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * Mean binary cross entropy of sigmoid(logits) against targets of the same shape, computed from the logits directly
+ * as {@code max(x, 0) - x * t + log(1 + exp(-|x|))}, which neither overflows nor takes the log of 0.
+ */
+class BinaryCrossEntropyWithLogitsForwardOperation extends ForwardComputeOperation {
+    BinaryCrossEntropyWithLogitsForwardOperation(Matrix logits, Matrix targets, ForwardComputeOperation... forwardComputeOperations) {
+        super(logits, targets, forwardComputeOperations);
+        if (targets.numRows() != logits.numRows() || targets.numCols() != logits.numCols()) {
+            throw new IllegalArgumentException("Targets must have the shape of the logits [" + logits.numRows() + "," + logits.numCols()
+                    + "], found: [" + targets.numRows() + "," + targets.numCols() + "]");
+        }
+    }
+
+    @Override
+    protected void perform() {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        final Matrix logits = getLeft();
+        final int totalElements = logits.numRows() * logits.numCols();
+        final int numTasks = CostModel.elementwiseTasks(totalElements, 2, 2, details.numThreads());
+        final double[] partials = new double[RangePartitioner.numChunks(numTasks)];
+        RangePartitioner.run(details, totalElements, numTasks, new BinaryCrossEntropyWithLogitsForwardOperation.WorkerJob(logits, getRight(), partials));
+        double loss = 0;
+        for (double partial : partials) {
+            loss += partial;
+        }
+        getResult().setValue(0, 0, loss / totalElements);
+    }
+
+    private static class WorkerJob implements RangePartitioner.RangeJob {
+        private final Matrix logits;
+        private final Matrix targets;
+        private final double[] partials;
+
+        public WorkerJob(Matrix logits, Matrix targets, double[] partials) {
+            this.logits = logits;
+            this.targets = targets;
+            this.partials = partials;
+        }
+
+        @Override
+        public void run(int chunk, int from, int to) {
+            final int numCols = logits.numCols();
+            final StridedStorage x = logits.getValueStorage();
+            final StridedStorage t = targets.getValueStorage();
+            double loss = 0;
+            if (null != x && null != t) {
+                final double[] xData = x.data();
+                final double[] tData = t.data();
+                for (int i = from; i < to; ) {
+                    final int row = i / numCols;
+                    final int colFrom = i - row * numCols;
+                    final int colTo = Math.min(numCols, colFrom + (to - i));
+                    int xIndex = x.offset() + row * x.rowStride() + colFrom * x.colStride();
+                    int tIndex = t.offset() + row * t.rowStride() + colFrom * t.colStride();
+                    for (int column = colFrom; column < colTo; column++, xIndex += x.colStride(), tIndex += t.colStride()) {
+                        loss += loss(xData[xIndex], tData[tIndex]);
+                    }
+                    i += colTo - colFrom;
+                }
+            } else {
+                for (int i = from; i < to; i++) {
+                    loss += loss(logits.getValue(i / numCols, i % numCols), targets.getValue(i / numCols, i % numCols));
+                }
+            }
+            partials[chunk] = loss;
+        }
+
+        private static double loss(double logit, double target) {
+            return Math.max(logit, 0) - logit * target + Math.log1p(Math.exp(-Math.abs(logit)));
+        }
+    }
+}
@@ -43,16 +43,16 @@ class BroadcastView extends Matrix {
     public double getValue(int row, int column) {
         return original.getValue(mapRow(row), mapCol(column));
     }
-    public synchronized void setValue(int row, int column, double value) {
+    public void setValue(int row, int column, double value) {
         original.setValue(mapRow(row), mapCol(column), value);
     }
     public double getGradient(int row, int column) {
         return original.getGradient(mapRow(row), mapCol(column));
     }
-    public synchronized void setGradient(int row, int column, double value) {
+    public void setGradient(int row, int column, double value) {
         original.setGradient(mapRow(row), mapCol(column), value);
     }
-    public synchronized void accumulateGradient(int row, int column, double value) {
+    public void accumulateGradient(int row, int column, double value) {
         original.accumulateGradient(mapRow(row), mapCol(column), value);
     }
     public int numRows() {
@@ -61,4 +61,26 @@ class BroadcastView extends Matrix {
     public int numCols() {
         return bCols;
     }
+    StridedStorage getValueStorage() {
+        StridedStorage storage = original.getValueStorage();
+        return (null == storage) ? null : storage.broadcast(bRows, bCols);
+    }
+    BufferStorage getBufferStorage() {
+        BufferStorage storage = original.getBufferStorage();
+        return (null == storage) ? null : storage.broadcast(bRows, bCols);
+    }
+    //Many elements of a broadcast share one gradient cell, kernels have to check isOverlapping() before writing to it in parallel
+    StridedStorage getGradientStorage() {
+        StridedStorage storage = original.getGradientStorage();
+        return (null == storage) ? null : storage.broadcast(bRows, bCols);
+    }
+
+    BufferStorage getGradientBufferStorage() {
+        BufferStorage storage = original.getGradientBufferStorage();
+        return (null == storage) ? null : storage.broadcast(bRows, bCols);
+    }
+
+    Matrix[] getViewSources() {
+        return new Matrix[]{original};
+    }
 }
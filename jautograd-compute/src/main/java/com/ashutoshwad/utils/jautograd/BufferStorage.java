@@ -0,0 +1,71 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * Same as {@link StridedStorage} over an {@link ElementBuffer}, for matrices kept in a narrower {@link Precision}.
+ * Kernels that index {@code double[]} directly cannot use it, they read it through {@link #get(int, int)} instead.
+ * Offsets and strides are longs, so the window may cover more than 2^31 elements.
+ */
+record BufferStorage(ElementBuffer buffer, long offset, long rowStride, long colStride, int numRows, int numCols) implements ElementWindow {
+
+    public static BufferStorage allocate(Precision precision, int rows, int columns) {
+        return of(ElementBuffer.allocate(precision, (long) rows * columns), rows, columns);
+    }
+
+    /**
+     * @return the buffer as a rows x columns matrix stored row by row.
+     */
+    public static BufferStorage of(ElementBuffer buffer, int rows, int columns) {
+        return new BufferStorage(buffer, 0, columns, 1, rows, columns);
+    }
+
+    public Precision precision() {
+        return buffer.precision();
+    }
+
+    public long index(int row, int column) {
+        if (row < 0 || row >= numRows) {
+            throw new ArrayIndexOutOfBoundsException("This matrix has " + numRows + " rows. An attempt was made to access row: " + row);
+        }
+        if (column < 0 || column >= numCols) {
+            throw new ArrayIndexOutOfBoundsException("This matrix has " + numCols + " columns. An attempt was made to access column: " + column);
+        }
+        return offset + row * rowStride + column * colStride;
+    }
+
+    public double get(int row, int column) {
+        return buffer.get(index(row, column));
+    }
+
+    public void set(int row, int column, double value) {
+        buffer.set(index(row, column), value);
+    }
+
+    public void add(int row, int column, double value) {
+        buffer.add(index(row, column), value);
+    }
+
+    public void fill(double value) {
+        for (int row = 0; row < numRows; row++) {
+            long index = offset + row * rowStride;
+            for (int col = 0; col < numCols; col++, index += colStride) {
+                buffer.set(index, value);
+            }
+        }
+    }
+
+    public boolean isOverlapping() {
+        return (rowStride == 0 && numRows > 1) || (colStride == 0 && numCols > 1);
+    }
+
+    public BufferStorage transpose() {
+        return new BufferStorage(buffer, offset, colStride, rowStride, numCols, numRows);
+    }
+
+    public BufferStorage slice(int rowStart, int rowLength, int colStart, int colLength) {
+        return new BufferStorage(buffer, offset + rowStart * rowStride + colStart * colStride, rowStride, colStride, rowLength, colLength);
+    }
+
+    public BufferStorage broadcast(int rows, int columns) {
+        return new BufferStorage(buffer, offset, (numRows == 1) ? 0 : rowStride, (numCols == 1) ? 0 : colStride, rows, columns);
+    }
+}
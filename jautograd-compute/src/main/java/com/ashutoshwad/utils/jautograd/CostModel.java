@@ -0,0 +1,44 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * Rough cost estimates that decide how many tasks an operation is split into.
+ * Handing a task to the pool and waiting for it costs on the order of ten microseconds, so an operation is only
+ * split when every task gets enough work to pay for that, and small operations run on the calling thread.
+ * The figures are deliberately coarse, they only need to get the order of magnitude right.
+ */
+final class CostModel {
+    /**
+     * Estimated floating point work for one call of a {@link FunctionRegistry} function, most are a few arithmetic
+     * operations and some are a transcendental call.
+     */
+    static final long FUNCTION_FLOPS = 4;
+    static final double NANOS_PER_FLOP = 0.5;
+    static final double NANOS_PER_BYTE = 0.1;
+    static final double MIN_NANOS_PER_TASK = 50_000;
+
+    private CostModel() {
+    }
+
+    /**
+     * @return how many tasks an operation doing the given work should be split into, between 1 and numThreads.
+     */
+    public static int numTasks(long flops, long bytes, int numThreads) {
+        final double nanos = flops * NANOS_PER_FLOP + bytes * NANOS_PER_BYTE;
+        final double tasks = nanos / MIN_NANOS_PER_TASK;
+        if (tasks < 2 || numThreads < 2) {
+            return 1;
+        }
+        return (int) Math.min(numThreads, (long) tasks);
+    }
+
+    /**
+     * @param arrays the number of element sized arrays read or written per element
+     */
+    public static int elementwiseTasks(long elements, int functionCalls, int arrays, int numThreads) {
+        return numTasks(elements * functionCalls * FUNCTION_FLOPS, elements * arrays * Double.BYTES, numThreads);
+    }
+
+    public static int matmulTasks(long m, long n, long k, int numThreads) {
+        return numTasks(2 * m * n * k, (m * k + k * n + m * n) * Double.BYTES, numThreads);
+    }
+}
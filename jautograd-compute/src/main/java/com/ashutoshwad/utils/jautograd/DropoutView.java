@@ -73,7 +73,7 @@ public class DropoutView extends Matrix {
     }
 
     @Override
-    public synchronized void setValue(int row, int column, double value) {
+    public void setValue(int row, int column, double value) {
         if(!isDropout(row, column)) {
             source.setValue(row, column, value);
         }
@@ -89,7 +89,7 @@ public class DropoutView extends Matrix {
     }
 
     @Override
-    public synchronized void setGradient(int row, int column, double value) {
+    public void setGradient(int row, int column, double value) {
         if (isDropout(row, column)) {
             return;
         }
@@ -97,7 +97,7 @@ public class DropoutView extends Matrix {
     }
 
     @Override
-    public synchronized void accumulateGradient(int row, int column, double value) {
+    public void accumulateGradient(int row, int column, double value) {
         if (isDropout(row, column)) {
             return;
         }
@@ -118,4 +118,9 @@ public class DropoutView extends Matrix {
     public boolean getRequiresGradient() {
         return source.getRequiresGradient();
     }
+
+    @Override
+    Matrix[] getViewSources() {
+        return new Matrix[]{source};
+    }
 }
@@ -0,0 +1,263 @@
+package com.ashutoshwad.utils.jautograd;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * A flat buffer of values that is not a plain {@code double[]}: a narrower {@link Precision} on the heap, or memory
+ * outside the heap. Values go in and come out as doubles, rounded to the precision on the way in.
+ * Indices are longs, a buffer made of several {@link #chunked chunks} can hold more than 2^31 values.
+ */
+abstract class ElementBuffer {
+    private final Precision precision;
+
+    protected ElementBuffer(Precision precision) {
+        this.precision = precision;
+    }
+
+    /**
+     * Largest number of elements a single Java array can hold on common JVMs.
+     */
+    static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    public static ElementBuffer allocate(Precision precision, long length) {
+        if (length > MAX_ARRAY_LENGTH) {
+            throw new IllegalArgumentException("A heap buffer holds at most " + MAX_ARRAY_LENGTH + " elements, requested: " + length
+                    + ". Use Matrix.createOffHeap for larger matrices");
+        }
+        return switch (precision) {
+            case FLOAT32 -> new FloatArrayBuffer((int) length);
+            case BFLOAT16, FLOAT16 -> new HalfArrayBuffer(precision, (int) length);
+            case FLOAT64 -> throw new IllegalArgumentException("FLOAT64 values are kept in a double[], use StridedStorage");
+        };
+    }
+
+    /**
+     * Views the bytes of a buffer, normally a direct or a mapped one, as values of the given precision in the given
+     * byte order. The buffer is not copied, the returned buffer reads and writes through to it.
+     */
+    public static ElementBuffer wrap(Precision precision, ByteBuffer bytes, ByteOrder order) {
+        final ByteBuffer ordered = bytes.duplicate().order(order);
+        return switch (precision) {
+            case FLOAT64 -> new DoubleViewBuffer(ordered.asDoubleBuffer());
+            case FLOAT32 -> new FloatViewBuffer(ordered.asFloatBuffer());
+            case BFLOAT16, FLOAT16 -> new HalfViewBuffer(precision, ordered.asShortBuffer());
+        };
+    }
+
+    /**
+     * Joins buffers of the same precision into one. Every chunk but the last must hold exactly 2^chunkShift elements.
+     */
+    public static ElementBuffer chunked(ElementBuffer[] chunks, int chunkShift) {
+        return (chunks.length == 1) ? chunks[0] : new ChunkedBuffer(chunks, chunkShift);
+    }
+
+    public Precision precision() {
+        return precision;
+    }
+
+    public abstract long length();
+
+    public abstract double get(long index);
+
+    public abstract void set(long index, double value);
+
+    public void add(long index, double value) {
+        set(index, get(index) + value);
+    }
+
+    /**
+     * Detaches a wrapped buffer from its memory before the memory is freed, any later access fails with an
+     * IndexOutOfBoundsException instead of touching freed memory. Heap buffers are left to the garbage collector.
+     */
+    abstract void release();
+
+    private static final class FloatArrayBuffer extends ElementBuffer {
+        private final float[] data;
+
+        FloatArrayBuffer(int length) {
+            super(Precision.FLOAT32);
+            this.data = new float[length];
+        }
+
+        @Override
+        public long length() {
+            return data.length;
+        }
+
+        @Override
+        public double get(long index) {
+            return data[(int) index];
+        }
+
+        @Override
+        public void set(long index, double value) {
+            data[(int) index] = (float) value;
+        }
+
+        @Override
+        void release() {
+            //The array is freed by the garbage collector once nothing refers to it
+        }
+    }
+
+    private static final class HalfArrayBuffer extends ElementBuffer {
+        private final short[] data;
+
+        HalfArrayBuffer(Precision precision, int length) {
+            super(precision);
+            this.data = new short[length];
+        }
+
+        @Override
+        public long length() {
+            return data.length;
+        }
+
+        @Override
+        public double get(long index) {
+            return precision().decode(data[(int) index]);
+        }
+
+        @Override
+        public void set(long index, double value) {
+            data[(int) index] = precision().encode(value);
+        }
+
+        @Override
+        void release() {
+            //The array is freed by the garbage collector once nothing refers to it
+        }
+    }
+
+    private static final class DoubleViewBuffer extends ElementBuffer {
+        private DoubleBuffer data;
+
+        DoubleViewBuffer(DoubleBuffer data) {
+            super(Precision.FLOAT64);
+            this.data = data;
+        }
+
+        @Override
+        public long length() {
+            return data.capacity();
+        }
+
+        @Override
+        public double get(long index) {
+            return data.get((int) index);
+        }
+
+        @Override
+        public void set(long index, double value) {
+            data.put((int) index, value);
+        }
+
+        @Override
+        void release() {
+            data = DoubleBuffer.allocate(0);
+        }
+    }
+
+    private static final class FloatViewBuffer extends ElementBuffer {
+        private FloatBuffer data;
+
+        FloatViewBuffer(FloatBuffer data) {
+            super(Precision.FLOAT32);
+            this.data = data;
+        }
+
+        @Override
+        public long length() {
+            return data.capacity();
+        }
+
+        @Override
+        public double get(long index) {
+            return data.get((int) index);
+        }
+
+        @Override
+        public void set(long index, double value) {
+            data.put((int) index, (float) value);
+        }
+
+        @Override
+        void release() {
+            data = FloatBuffer.allocate(0);
+        }
+    }
+
+    private static final class HalfViewBuffer extends ElementBuffer {
+        private ShortBuffer data;
+
+        HalfViewBuffer(Precision precision, ShortBuffer data) {
+            super(precision);
+            this.data = data;
+        }
+
+        @Override
+        public long length() {
+            return data.capacity();
+        }
+
+        @Override
+        public double get(long index) {
+            return precision().decode(data.get((int) index));
+        }
+
+        @Override
+        public void set(long index, double value) {
+            data.put((int) index, precision().encode(value));
+        }
+
+        @Override
+        void release() {
+            data = ShortBuffer.allocate(0);
+        }
+    }
+
+    private static final class ChunkedBuffer extends ElementBuffer {
+        private final ElementBuffer[] chunks;
+        private final int chunkShift;
+        private final long chunkMask;
+        private final long length;
+
+        ChunkedBuffer(ElementBuffer[] chunks, int chunkShift) {
+            super(chunks[0].precision());
+            this.chunks = chunks;
+            this.chunkShift = chunkShift;
+            this.chunkMask = (1L << chunkShift) - 1;
+            long total = 0;
+            for (ElementBuffer chunk : chunks) {
+                total += chunk.length();
+            }
+            this.length = total;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public double get(long index) {
+            return chunks[(int) (index >>> chunkShift)].get(index & chunkMask);
+        }
+
+        @Override
+        public void set(long index, double value) {
+            chunks[(int) (index >>> chunkShift)].set(index & chunkMask, value);
+        }
+
+        @Override
+        void release() {
+            for (ElementBuffer chunk : chunks) {
+                chunk.release();
+            }
+        }
+    }
+}
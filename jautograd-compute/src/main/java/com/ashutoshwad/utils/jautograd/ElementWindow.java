@@ -0,0 +1,15 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * A two dimensional strided window over values, either a {@code double[]} kernels can index directly or a buffer in
+ * some other {@link Precision} whose values are widened to double as they are read.
+ */
+sealed interface ElementWindow permits StridedStorage, BufferStorage {
+    int numRows();
+
+    int numCols();
+
+    double get(int row, int column);
+
+    ElementWindow transpose();
+}
@@ -1,11 +1,5 @@
 package com.ashutoshwad.utils.jautograd;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-
 public class ElementWiseBinaryBackwardOperation extends BackwardComputeOperation {
     private final FunctionRegistry.BinaryGradientFunction leftBackwardFunction;
     private final FunctionRegistry.BinaryGradientFunction rightBackwardFunction;
@@ -19,48 +13,139 @@ public class ElementWiseBinaryBackwardOperation extends BackwardComputeOperation
         this.rightBackwardFunction = rightBackwardFunction;
     }
 
+    FunctionRegistry.BinaryGradientFunction getLeftBackwardFunction() {
+        return leftBackwardFunction;
+    }
+
+    FunctionRegistry.BinaryGradientFunction getRightBackwardFunction() {
+        return rightBackwardFunction;
+    }
+
     @Override
     protected void perform() {
         ExecutorFactory.Details details = ExecutorFactory.getDetails();
-        int numThreads = details.numThreads();
-        ExecutorService executorService = details.executorService();
-
-        List<Future<?>> futures = new ArrayList<>(details.numThreads());
-
         final Matrix left = getLeft();
         final Matrix right = getRight();
         final Matrix result = getResult();
-        for (int i = 0; i < numThreads; i++) {
-            futures.add(executorService.submit(new ElementWiseBinaryBackwardOperation.WorkerJob(left, right, result, i, numThreads)));
+        final int totalElements = result.numRows() * result.numCols();
+        int numTasks = CostModel.elementwiseTasks(totalElements, 2, 8, details.numThreads());
+        final int numChunks = RangePartitioner.numChunks(numTasks);
+        final GradientAccumulator leftAccumulator = left.requiresGradient ? GradientAccumulator.create(left, numChunks, false) : null;
+        //A different window over the buffer the left side writes to directly could hit the same cells from another worker
+        final GradientAccumulator rightAccumulator = right.requiresGradient ? GradientAccumulator.create(right, numChunks, left, leftAccumulator) : null;
+        RangePartitioner.run(details, totalElements, numTasks, new ElementWiseBinaryBackwardOperation.WorkerJob(left, right, result, leftAccumulator, rightAccumulator));
+        if (null != leftAccumulator) {
+            leftAccumulator.merge();
+        }
+        if (null != rightAccumulator) {
+            rightAccumulator.merge();
         }
-
-        ExecutorUtils.awaitFutures(futures);
     }
 
-    private class WorkerJob implements Runnable {
+    private class WorkerJob implements RangePartitioner.RangeJob {
         private final Matrix left;
         private final Matrix right;
         private final Matrix result;
-        private final int start;
-        private final int stride;
+        private final GradientAccumulator leftAccumulator;
+        private final GradientAccumulator rightAccumulator;
 
-        public WorkerJob(Matrix left, Matrix right, Matrix result, int start, int stride) {
+        public WorkerJob(Matrix left, Matrix right, Matrix result, GradientAccumulator leftAccumulator, GradientAccumulator rightAccumulator) {
             this.left = left;
             this.right = right;
             this.result = result;
-            this.start = start;
-            this.stride = stride;
+            this.leftAccumulator = leftAccumulator;
+            this.rightAccumulator = rightAccumulator;
         }
 
         @Override
-        public void run() {
-            int numRows = result.numRows();
+        public void run(int chunk, int from, int to) {
             final int numCols = result.numCols();
-            final int totalElements = numRows * numCols;
             final boolean isLeftGradEnabled = left.requiresGradient;
             final boolean isRightGradEnabled = right.requiresGradient;
 
-            for (int i = start; i < totalElements; i+=stride) {
+            final StridedStorage l = left.getValueStorage();
+            final StridedStorage r = right.getValueStorage();
+            final StridedStorage o = result.getValueStorage();
+            final StridedStorage oGrad = result.getGradientStorage();
+            //Broadcast operands get the worker's own buffer here, reduced into with the same loops and merged once
+            final StridedStorage lGrad = isLeftGradEnabled ? leftAccumulator.storageFor(chunk) : null;
+            final StridedStorage rGrad = isRightGradEnabled ? rightAccumulator.storageFor(chunk) : null;
+            final boolean directGradients = (!isLeftGradEnabled || null != lGrad) && (!isRightGradEnabled || null != rGrad);
+            if (null != l && null != r && null != o && null != oGrad && directGradients) {
+                final double[] lData = l.data();
+                final double[] rData = r.data();
+                final double[] oData = o.data();
+                final double[] oGradData = oGrad.data();
+                final boolean vectorized = SimdKernels.supports(isLeftGradEnabled ? leftBackwardFunction : null, isRightGradEnabled ? rightBackwardFunction : null);
+                if (vectorized && l.isContiguous() && r.isContiguous() && o.isContiguous() && oGrad.isContiguous()
+                        && (null == lGrad || lGrad.isContiguous()) && (null == rGrad || rGrad.isContiguous())) {
+                    SimdKernels.backward(leftBackwardFunction, rightBackwardFunction,
+                            lData, l.offset() + from, rData, r.offset() + from, oData, o.offset() + from, oGradData, oGrad.offset() + from,
+                            (null == lGrad) ? null : lGrad.data(), (null == lGrad) ? 0 : lGrad.offset() + from,
+                            (null == rGrad) ? null : rGrad.data(), (null == rGrad) ? 0 : rGrad.offset() + from,
+                            to - from);
+                    return;
+                }
+                //Row vector broadcasts keep unit column strides, so every row is still one vectorized run
+                final boolean rowsVectorized = vectorized && l.colStride() == 1 && r.colStride() == 1 && o.colStride() == 1 && oGrad.colStride() == 1
+                        && (null == lGrad || lGrad.colStride() == 1) && (null == rGrad || rGrad.colStride() == 1);
+                //Column vector and scalar broadcasts get one gradient per row, summed up in a register
+                final boolean leftPerRow = null != lGrad && lGrad.colStride() == 0;
+                final boolean rightPerRow = null != rGrad && rGrad.colStride() == 0;
+                for (int i = from; i < to; ) {
+                    final int row = i / numCols;
+                    final int colFrom = i - row * numCols;
+                    final int colTo = Math.min(numCols, colFrom + (to - i));
+                    int lIndex = l.offset() + row * l.rowStride() + colFrom * l.colStride();
+                    int rIndex = r.offset() + row * r.rowStride() + colFrom * r.colStride();
+                    int oIndex = o.offset() + row * o.rowStride() + colFrom * o.colStride();
+                    int oGradIndex = oGrad.offset() + row * oGrad.rowStride() + colFrom * oGrad.colStride();
+                    int lGradIndex = (null == lGrad) ? 0 : lGrad.offset() + row * lGrad.rowStride() + colFrom * lGrad.colStride();
+                    int rGradIndex = (null == rGrad) ? 0 : rGrad.offset() + row * rGrad.rowStride() + colFrom * rGrad.colStride();
+                    if (rowsVectorized) {
+                        SimdKernels.backward(leftBackwardFunction, rightBackwardFunction, lData, lIndex, rData, rIndex, oData, oIndex, oGradData, oGradIndex,
+                                (null == lGrad) ? null : lGrad.data(), lGradIndex, (null == rGrad) ? null : rGrad.data(), rGradIndex, colTo - colFrom);
+                        i += colTo - colFrom;
+                        continue;
+                    }
+                    double leftRowGradient = 0;
+                    double rightRowGradient = 0;
+                    for (int column = colFrom; column < colTo; column++, lIndex += l.colStride(), rIndex += r.colStride(), oIndex += o.colStride(), oGradIndex += oGrad.colStride()) {
+                        double leftValue = lData[lIndex];
+                        double rightValue = rData[rIndex];
+                        double resultValue = oData[oIndex];
+                        double resultGradient = oGradData[oGradIndex];
+                        if (isLeftGradEnabled) {
+                            double leftGradient = leftBackwardFunction.result(leftValue, rightValue, resultValue, resultGradient);
+                            if (leftPerRow) {
+                                leftRowGradient += leftGradient;
+                            } else {
+                                lGrad.data()[lGradIndex] += leftGradient;
+                                lGradIndex += lGrad.colStride();
+                            }
+                        }
+                        if (isRightGradEnabled) {
+                            double rightGradient = rightBackwardFunction.result(leftValue, rightValue, resultValue, resultGradient);
+                            if (rightPerRow) {
+                                rightRowGradient += rightGradient;
+                            } else {
+                                rGrad.data()[rGradIndex] += rightGradient;
+                                rGradIndex += rGrad.colStride();
+                            }
+                        }
+                    }
+                    if (leftPerRow) {
+                        lGrad.data()[lGradIndex] += leftRowGradient;
+                    }
+                    if (rightPerRow) {
+                        rGrad.data()[rGradIndex] += rightRowGradient;
+                    }
+                    i += colTo - colFrom;
+                }
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
                 int row = i / numCols;
                 int column = i % numCols;
                 double leftValue = left.getValue(row, column);
@@ -69,11 +154,11 @@ public class ElementWiseBinaryBackwardOperation extends BackwardComputeOperation
                 double resultGradient = result.getGradient(row, column);
                 if (isLeftGradEnabled) {
                     double leftGradient = leftBackwardFunction.result(leftValue, rightValue, resultValue, resultGradient);
-                    left.accumulateGradient(row, column, leftGradient);
+                    leftAccumulator.add(chunk, row, column, leftGradient);
                 }
                 if (isRightGradEnabled) {
                     double rightGradient = rightBackwardFunction.result(leftValue, rightValue, resultValue, resultGradient);
-                    right.accumulateGradient(row, column, rightGradient);
+                    rightAccumulator.add(chunk, row, column, rightGradient);
                 }
             }
         }
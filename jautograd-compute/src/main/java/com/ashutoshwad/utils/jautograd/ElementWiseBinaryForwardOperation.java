@@ -1,11 +1,5 @@
 package com.ashutoshwad.utils.jautograd;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-
 class ElementWiseBinaryForwardOperation extends ForwardComputeOperation {
     private final FunctionRegistry.BinaryCalcFunction forwardFunction;
     ElementWiseBinaryForwardOperation(Matrix left,
@@ -16,41 +10,68 @@ class ElementWiseBinaryForwardOperation extends ForwardComputeOperation {
         this.forwardFunction = forwardFunction;
     }
 
+    FunctionRegistry.BinaryCalcFunction getForwardFunction() {
+        return forwardFunction;
+    }
+
     @Override
     protected void perform() {
         ExecutorFactory.Details details = ExecutorFactory.getDetails();
-        int numThreads = details.numThreads();
-        ExecutorService executorService = details.executorService();
-
-        List<Future<?>>futures = new ArrayList<>(numThreads);
-        for (int i = 0; i < numThreads; i++) {
-            futures.add(executorService.submit(new ElementWiseBinaryForwardOperation.WorkerJob(getLeft(), getRight(), getResult(), i, numThreads)));
-        }
-        ExecutorUtils.awaitFutures(futures);
+        final int totalElements = getResult().numRows() * getResult().numCols();
+        int numTasks = CostModel.elementwiseTasks(totalElements, 1, 3, details.numThreads());
+        RangePartitioner.run(details, totalElements, numTasks, new ElementWiseBinaryForwardOperation.WorkerJob(getLeft(), getRight(), getResult()));
     }
 
-    private class WorkerJob implements Runnable {
+    private class WorkerJob implements RangePartitioner.RangeJob {
         private final Matrix left;
         private final Matrix right;
         private final Matrix result;
-        private final int start;
-        private final int stride;
 
-        public WorkerJob(Matrix left, Matrix right, Matrix result, int start, int stride) {
+        public WorkerJob(Matrix left, Matrix right, Matrix result) {
             this.left = left;
             this.right = right;
             this.result = result;
-            this.start = start;
-            this.stride = stride;
         }
 
         @Override
-        public void run() {
-            int numRows = result.numRows();
+        public void run(int chunk, int from, int to) {
             final int numCols = result.numCols();
-            final int totalElements = numRows * numCols;
 
-            for (int i = start; i < totalElements; i+=stride) {
+            final StridedStorage l = left.getValueStorage();
+            final StridedStorage r = right.getValueStorage();
+            final StridedStorage o = result.getValueStorage();
+            if (null != l && null != r && null != o) {
+                final double[] lData = l.data();
+                final double[] rData = r.data();
+                final double[] oData = o.data();
+                final boolean vectorized = SimdKernels.supports(forwardFunction);
+                if (vectorized && l.isContiguous() && r.isContiguous() && o.isContiguous()) {
+                    SimdKernels.forward(forwardFunction, lData, l.offset() + from, rData, r.offset() + from, oData, o.offset() + from, to - from);
+                    return;
+                }
+                //Row vector broadcasts keep unit column strides, so every row is still one vectorized run
+                final boolean rowsVectorized = vectorized && l.colStride() == 1 && r.colStride() == 1 && o.colStride() == 1;
+                for (int i = from; i < to; ) {
+                    final int row = i / numCols;
+                    final int colFrom = i - row * numCols;
+                    final int colTo = Math.min(numCols, colFrom + (to - i));
+                    int lIndex = l.offset() + row * l.rowStride() + colFrom * l.colStride();
+                    int rIndex = r.offset() + row * r.rowStride() + colFrom * r.colStride();
+                    int oIndex = o.offset() + row * o.rowStride() + colFrom * o.colStride();
+                    if (rowsVectorized) {
+                        SimdKernels.forward(forwardFunction, lData, lIndex, rData, rIndex, oData, oIndex, colTo - colFrom);
+                        i += colTo - colFrom;
+                        continue;
+                    }
+                    for (int column = colFrom; column < colTo; column++, lIndex += l.colStride(), rIndex += r.colStride(), oIndex += o.colStride()) {
+                        oData[oIndex] = forwardFunction.result(lData[lIndex], rData[rIndex]);
+                    }
+                    i += colTo - colFrom;
+                }
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
                 int row = i / numCols;
                 int column = i % numCols;
                 double leftValue = left.getValue(row, column);
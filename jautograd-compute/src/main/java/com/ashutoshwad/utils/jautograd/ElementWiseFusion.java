@@ -0,0 +1,136 @@
+package com.ashutoshwad.utils.jautograd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds chains of elementwise operations in the graph below a root and turns each into a {@link FusedElementWiseChain}.
+ * An operation continues the chain that ends at one of its operands if that operand is the plain result of the last
+ * operation of the chain (not a view of it) and nothing else in the graph uses it, as that result then exists only to
+ * feed the next step. The operand from outside the chain may be anything with strided storage, broadcasts included.
+ * A chain of n operations then passes over memory once instead of n times, in both directions.
+ */
+final class ElementWiseFusion {
+    private ElementWiseFusion() {
+    }
+
+    private static final class Chain {
+        private final List<ForwardComputeOperation> operations = new ArrayList<>();
+        private boolean[] chainIsLeft = new boolean[4];
+
+        private void add(ForwardComputeOperation operation, boolean isLeft) {
+            if (operations.size() == chainIsLeft.length) {
+                chainIsLeft = Arrays.copyOf(chainIsLeft, chainIsLeft.length * 2);
+            }
+            chainIsLeft[operations.size()] = isLeft;
+            operations.add(operation);
+        }
+    }
+
+    /**
+     * @param retained intermediate results that have to stay readable, they are never fused away.
+     * @return the number of operations that no longer run on their own.
+     */
+    public static int fuse(Matrix root, Matrix... retained) {
+        final ForwardComputeOperation rootForward = root.forwardComputeOperation;
+        if (null == rootForward) {
+            return 0;
+        }
+        final ForwardComputeOperation[] nodes = rootForward.getPlan().nodes();
+        final Map<ForwardComputeOperation, Integer> uses = new IdentityHashMap<>();
+        for (ForwardComputeOperation node : nodes) {
+            if (node.isMemoryPlanned()) {
+                throw new IllegalArgumentException("Operations have to be fused before the memory of the graph is planned");
+            }
+            for (ForwardComputeOperation input : node.inputs()) {
+                uses.merge(input, 1, Integer::sum);
+            }
+        }
+        final Map<Matrix, Boolean> kept = new IdentityHashMap<>();
+        for (Matrix matrix : retained) {
+            kept.put(matrix, Boolean.TRUE);
+        }
+
+        final Map<ForwardComputeOperation, Chain> open = new IdentityHashMap<>();
+        final List<Chain> chains = new ArrayList<>();
+        for (ForwardComputeOperation operation : nodes) {
+            if (!isFusable(operation)) {
+                continue;
+            }
+            final Matrix left = operation.getLeft();
+            final Matrix right = operation.getRight();
+            Chain chain = null;
+            boolean isLeft = true;
+            if (continues(left, right, operation, open, uses, kept)) {
+                chain = open.remove(left.forwardComputeOperation);
+            } else if (null != right && continues(right, left, operation, open, uses, kept)) {
+                chain = open.remove(right.forwardComputeOperation);
+                isLeft = false;
+            }
+            if (null == chain) {
+                if (null == left.getValueStorage()) {
+                    continue;
+                }
+                chain = new Chain();
+                chains.add(chain);
+            }
+            chain.add(operation, isLeft);
+            open.put(operation, chain);
+        }
+
+        int fused = 0;
+        for (Chain chain : chains) {
+            final int length = chain.operations.size();
+            if (length < 2) {
+                continue;
+            }
+            final ForwardComputeOperation[] operations = chain.operations.toArray(new ForwardComputeOperation[0]);
+            final FusedElementWiseChain fusedChain = new FusedElementWiseChain(operations, Arrays.copyOf(chain.chainIsLeft, length));
+            for (ForwardComputeOperation operation : operations) {
+                operation.setFusedChain(fusedChain);
+                final BackwardComputeOperation backward = operation.getResult().backwardComputeOperation;
+                if (null != backward) {
+                    backward.setFusedChain(fusedChain);
+                }
+            }
+            fused += length - 1;
+        }
+        if (fused > 0 && null != root.backwardComputeOperation) {
+            root.backwardComputeOperation.resetPlan();
+        }
+        return fused;
+    }
+
+    private static boolean isFusable(ForwardComputeOperation operation) {
+        if (null != operation.getFusedChain() || null == operation.getResult()) {
+            return false;
+        }
+        if (operation instanceof ElementWiseUnaryForwardOperation) {
+            return true;
+        }
+        return operation instanceof ElementWiseBinaryForwardOperation && null != operation.getRight().getValueStorage();
+    }
+
+    /**
+     * @return true if the operation can take chained as the running value of the chain that ends where it is computed,
+     * with other as the operand from outside the chain.
+     */
+    private static boolean continues(Matrix chained, Matrix other, ForwardComputeOperation operation,
+                                     Map<ForwardComputeOperation, Chain> open, Map<ForwardComputeOperation, Integer> uses,
+                                     Map<Matrix, Boolean> kept) {
+        final ForwardComputeOperation producer = chained.forwardComputeOperation;
+        if (null == producer || producer.getResult() != chained || !open.containsKey(producer)) {
+            return false;
+        }
+        if (uses.get(producer) != 1 || kept.containsKey(chained) || chained == other) {
+            return false;
+        }
+        if (null != other && null == other.getValueStorage()) {
+            return false;
+        }
+        return chained.getRequiresGradient() == operation.getResult().getRequiresGradient();
+    }
+}
@@ -1,11 +1,5 @@
 package com.ashutoshwad.utils.jautograd;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-
 public class ElementWiseUnaryBackwardOperation extends BackwardComputeOperation {
     private final FunctionRegistry.UnaryGradientFunction backwardFunction;
     ElementWiseUnaryBackwardOperation(Matrix left,
@@ -15,46 +9,77 @@ public class ElementWiseUnaryBackwardOperation extends BackwardComputeOperation
         this.backwardFunction = backwardFunction;
     }
 
+    FunctionRegistry.UnaryGradientFunction getBackwardFunction() {
+        return backwardFunction;
+    }
+
     @Override
     protected void perform() {
         ExecutorFactory.Details details = ExecutorFactory.getDetails();
-        int numThreads = details.numThreads();
-        ExecutorService executorService = details.executorService();
-
-        List<Future<?>> futures = new ArrayList<>(numThreads);
-        for (int i = 0; i < numThreads; i++) {
-            futures.add(executorService.submit(new ElementWiseUnaryBackwardOperation.WorkerJob(getLeft(), getResult(), i, numThreads)));
-        }
-        ExecutorUtils.awaitFutures(futures);
+        final int totalElements = getResult().numRows() * getResult().numCols();
+        int numTasks = CostModel.elementwiseTasks(totalElements, 1, 5, details.numThreads());
+        final GradientAccumulator accumulator = GradientAccumulator.create(getLeft(), RangePartitioner.numChunks(numTasks), false);
+        RangePartitioner.run(details, totalElements, numTasks, new ElementWiseUnaryBackwardOperation.WorkerJob(getLeft(), getResult(), accumulator));
+        accumulator.merge();
     }
 
-    private class WorkerJob implements Runnable {
+    private class WorkerJob implements RangePartitioner.RangeJob {
         private final Matrix input;
         private final Matrix result;
-        private final int start;
-        private final int stride;
+        private final GradientAccumulator accumulator;
 
-        public WorkerJob(Matrix input, Matrix result, int start, int stride) {
+        public WorkerJob(Matrix input, Matrix result, GradientAccumulator accumulator) {
             this.input = input;
             this.result = result;
-            this.start = start;
-            this.stride = stride;
+            this.accumulator = accumulator;
         }
 
         @Override
-        public void run() {
-            int numRows = result.numRows();
+        public void run(int chunk, int from, int to) {
             final int numCols = result.numCols();
-            final int totalElements = numRows * numCols;
 
-            for (int i = start; i < totalElements; i+=stride) {
+            final StridedStorage in = input.getValueStorage();
+            final StridedStorage inGrad = input.getGradientStorage();
+            final StridedStorage o = result.getValueStorage();
+            final StridedStorage oGrad = result.getGradientStorage();
+            if (null != in && accumulator.isDirect() && null != o && null != oGrad) {
+                final double[] inData = in.data();
+                final double[] inGradData = inGrad.data();
+                final double[] oData = o.data();
+                final double[] oGradData = oGrad.data();
+                if (SimdKernels.supports(backwardFunction) && in.isContiguous() && inGrad.isContiguous() && o.isContiguous() && oGrad.isContiguous()) {
+                    SimdKernels.backward(backwardFunction, inData, in.offset() + from, oData, o.offset() + from,
+                            oGradData, oGrad.offset() + from, inGradData, inGrad.offset() + from, to - from);
+                    return;
+                }
+                for (int i = from; i < to; ) {
+                    final int row = i / numCols;
+                    final int colFrom = i - row * numCols;
+                    final int colTo = Math.min(numCols, colFrom + (to - i));
+                    int inIndex = in.offset() + row * in.rowStride() + colFrom * in.colStride();
+                    int inGradIndex = inGrad.offset() + row * inGrad.rowStride() + colFrom * inGrad.colStride();
+                    int oIndex = o.offset() + row * o.rowStride() + colFrom * o.colStride();
+                    int oGradIndex = oGrad.offset() + row * oGrad.rowStride() + colFrom * oGrad.colStride();
+                    for (int column = colFrom; column < colTo; column++) {
+                        inGradData[inGradIndex] += backwardFunction.result(inData[inIndex], oData[oIndex], oGradData[oGradIndex]);
+                        inIndex += in.colStride();
+                        inGradIndex += inGrad.colStride();
+                        oIndex += o.colStride();
+                        oGradIndex += oGrad.colStride();
+                    }
+                    i += colTo - colFrom;
+                }
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
                 int row = i / numCols;
                 int column = i % numCols;
                 double inputValue = input.getValue(row, column);
                 double resultValue = result.getValue(row, column);
                 double resultGradient = result.getGradient(row, column);
                 double inputGradient = backwardFunction.result(inputValue, resultValue, resultGradient);
-                input.accumulateGradient(row, column, inputGradient);
+                accumulator.add(chunk, row, column, inputGradient);
             }
         }
     }
@@ -1,11 +1,5 @@
 package com.ashutoshwad.utils.jautograd;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-
 class ElementWiseUnaryForwardOperation extends ForwardComputeOperation {
     private final FunctionRegistry.UnaryCalcFunction forwardFunction;
     ElementWiseUnaryForwardOperation(Matrix left,
@@ -15,39 +9,55 @@ class ElementWiseUnaryForwardOperation extends ForwardComputeOperation {
         this.forwardFunction = forwardFunction;
     }
 
+    FunctionRegistry.UnaryCalcFunction getForwardFunction() {
+        return forwardFunction;
+    }
+
     @Override
     protected void perform() {
         ExecutorFactory.Details details = ExecutorFactory.getDetails();
-        int numThreads = details.numThreads();
-        ExecutorService executorService = details.executorService();
-
-        List<Future<?>>futures = new ArrayList<>(numThreads);
-        for (int i = 0; i < numThreads; i++) {
-            futures.add(executorService.submit(new ElementWiseUnaryForwardOperation.WorkerJob(getLeft(), getResult(), i, numThreads)));
-        }
-        ExecutorUtils.awaitFutures(futures);
+        final int totalElements = getResult().numRows() * getResult().numCols();
+        int numTasks = CostModel.elementwiseTasks(totalElements, 1, 2, details.numThreads());
+        RangePartitioner.run(details, totalElements, numTasks, new ElementWiseUnaryForwardOperation.WorkerJob(getLeft(), getResult()));
     }
 
-    private class WorkerJob implements Runnable {
+    private class WorkerJob implements RangePartitioner.RangeJob {
         private final Matrix input;
         private final Matrix result;
-        private final int start;
-        private final int stride;
 
-        public WorkerJob(Matrix input, Matrix result, int start, int stride) {
+        public WorkerJob(Matrix input, Matrix result) {
             this.input = input;
             this.result = result;
-            this.start = start;
-            this.stride = stride;
         }
 
         @Override
-        public void run() {
-            int numRows = result.numRows();
+        public void run(int chunk, int from, int to) {
             final int numCols = result.numCols();
-            final int totalElements = numRows * numCols;
 
-            for (int i = start; i < totalElements; i+=stride) {
+            final StridedStorage in = input.getValueStorage();
+            final StridedStorage o = result.getValueStorage();
+            if (null != in && null != o) {
+                final double[] inData = in.data();
+                final double[] oData = o.data();
+                if (SimdKernels.supports(forwardFunction) && in.isContiguous() && o.isContiguous()) {
+                    SimdKernels.forward(forwardFunction, inData, in.offset() + from, oData, o.offset() + from, to - from);
+                    return;
+                }
+                for (int i = from; i < to; ) {
+                    final int row = i / numCols;
+                    final int colFrom = i - row * numCols;
+                    final int colTo = Math.min(numCols, colFrom + (to - i));
+                    int inIndex = in.offset() + row * in.rowStride() + colFrom * in.colStride();
+                    int oIndex = o.offset() + row * o.rowStride() + colFrom * o.colStride();
+                    for (int column = colFrom; column < colTo; column++, inIndex += in.colStride(), oIndex += o.colStride()) {
+                        oData[oIndex] = forwardFunction.result(inData[inIndex]);
+                    }
+                    i += colTo - colFrom;
+                }
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
                 int row = i / numCols;
                 int column = i % numCols;
                 double inputValue = input.getValue(row, column);
@@ -0,0 +1,257 @@
+package com.ashutoshwad.utils.jautograd;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * The compute operations reachable from one root, flattened once into the order they have to run in.
+ * An operation's inputs are fixed when it is constructed, so new values in the leaves or repeated runs never change
+ * the plan and running it is a plain loop over an array. Only rewrites of the graph replace a root's plan: fusion
+ * (see {@link ElementWiseFusion}) moves the work of operations to the end of their chain, and {@link MemoryPlanner}
+ * makes the plan sequential.
+ *
+ * Plans are compiled with an iterative depth first search over arrays, so the cost is linear in the size of the
+ * graph and the depth of the graph is not limited by the size of the call stack.
+ *
+ * Besides the serial order a plan records, for every node, which nodes have to finish before it may start, so that
+ * {@link GraphScheduler} can run independent nodes at the same time. These are the data dependencies of the graph plus
+ * an ordering between nodes that write the same buffer (see {@link Node#writeTargets()}). Writers of a buffer are
+ * ordered as in the serial plan, so a parallel run adds into every buffer in the same order as a serial run.
+ */
+final class ExecutionPlan<T extends ExecutionPlan.Node<T>> {
+    /**
+     * A vertex of the compute graph. The mark is scratch space for the compiler and means nothing outside of it.
+     */
+    interface Node<T extends Node<T>> {
+        T[] inputs();
+
+        int getPlanMark();
+
+        void setPlanMark(int mark);
+
+        /**
+         * @return the buffers this node writes that other nodes of the same plan may also write, or null if there
+         * are none. An {@link #UNKNOWN_TARGET} entry orders the node against every other writer.
+         */
+        default Object[] writeTargets() {
+            return null;
+        }
+    }
+
+    /**
+     * Write target for nodes that write through a view without strided storage, whose buffers are not known.
+     */
+    static final Object UNKNOWN_TARGET = new Object();
+
+    private static final Object COMPILE_LOCK = new Object();
+    private static int currentMark = 0;
+
+    private final T[] nodes;
+    private final int[] predecessorCounts;
+    private final int[] successorStart;
+    private final int[] successors;
+    private final boolean sequential;
+
+    private ExecutionPlan(T[] nodes, int[] predecessorCounts, int[] successorStart, int[] successors, boolean sequential) {
+        this.nodes = nodes;
+        this.predecessorCounts = predecessorCounts;
+        this.successorStart = successorStart;
+        this.successors = successors;
+        this.sequential = sequential;
+    }
+
+    /**
+     * @param inputsFirst true to order every node after all of its inputs (forward), false to order every node before
+     *                    all of its inputs (backward, where the inputs are the operations that consume its gradient).
+     */
+    public static <T extends Node<T>> ExecutionPlan<T> compile(T root, IntFunction<T[]> arrayFactory, boolean inputsFirst) {
+        synchronized (COMPILE_LOCK) {
+            final T[] order = topologicalOrder(root, arrayFactory, inputsFirst);
+            final int size = order.length;
+            //Marks of this compile are positive, from here on the mark holds -(index + 1) of the node in the plan
+            for (int i = 0; i < size; i++) {
+                order[i].setPlanMark(-(i + 1));
+            }
+
+            int[] from = new int[size];
+            int[] to = new int[size];
+            int numEdges = 0;
+            for (int i = 0; i < size; i++) {
+                for (T input : order[i].inputs()) {
+                    final int j = -input.getPlanMark() - 1;
+                    if (numEdges == from.length) {
+                        from = Arrays.copyOf(from, numEdges * 2);
+                        to = Arrays.copyOf(to, numEdges * 2);
+                    }
+                    from[numEdges] = inputsFirst ? j : i;
+                    to[numEdges++] = inputsFirst ? i : j;
+                }
+            }
+
+            final Map<Object, Integer> lastWriters = new IdentityHashMap<>();
+            int lastBarrier = -1;
+            for (int i = 0; i < size; i++) {
+                final Object[] targets = order[i].writeTargets();
+                if (null == targets) {
+                    continue;
+                }
+                final int[] writeFrom;
+                boolean barrier = false;
+                for (Object target : targets) {
+                    barrier |= UNKNOWN_TARGET == target;
+                }
+                if (barrier) {
+                    writeFrom = new int[lastWriters.size() + 1];
+                    int count = 0;
+                    for (int writer : lastWriters.values()) {
+                        writeFrom[count++] = writer;
+                    }
+                    writeFrom[count++] = lastBarrier;
+                    lastWriters.clear();
+                    lastBarrier = i;
+                } else {
+                    writeFrom = new int[targets.length];
+                    for (int t = 0; t < targets.length; t++) {
+                        if (null == targets[t]) {
+                            writeFrom[t] = -1;
+                            continue;
+                        }
+                        Integer writer = lastWriters.put(targets[t], i);
+                        writeFrom[t] = (null == writer) ? lastBarrier : writer;
+                    }
+                }
+                for (int writer : writeFrom) {
+                    if (writer < 0 || writer == i) {
+                        continue;
+                    }
+                    if (numEdges == from.length) {
+                        from = Arrays.copyOf(from, numEdges * 2);
+                        to = Arrays.copyOf(to, numEdges * 2);
+                    }
+                    from[numEdges] = writer;
+                    to[numEdges++] = i;
+                }
+            }
+
+            final int[] predecessorCounts = new int[size];
+            final int[] successorStart = new int[size + 1];
+            final boolean[] chained = new boolean[size];
+            for (int e = 0; e < numEdges; e++) {
+                predecessorCounts[to[e]]++;
+                successorStart[from[e] + 1]++;
+                chained[to[e]] |= from[e] == to[e] - 1;
+            }
+            for (int i = 0; i < size; i++) {
+                successorStart[i + 1] += successorStart[i];
+            }
+            final int[] successors = new int[numEdges];
+            final int[] fill = Arrays.copyOf(successorStart, size);
+            for (int e = 0; e < numEdges; e++) {
+                successors[fill[from[e]]++] = to[e];
+            }
+            boolean sequential = true;
+            for (int i = 1; i < size && sequential; i++) {
+                sequential = chained[i];
+            }
+            return new ExecutionPlan<>(order, predecessorCounts, successorStart, successors, sequential);
+        }
+    }
+
+    private static <T extends Node<T>> T[] topologicalOrder(T root, IntFunction<T[]> arrayFactory, boolean inputsFirst) {
+        final int mark = ++currentMark;
+        T[] order = arrayFactory.apply(16);
+        int size = 0;
+        T[] stack = arrayFactory.apply(16);
+        int[] position = new int[16];
+        int depth = 0;
+
+        root.setPlanMark(mark);
+        stack[depth] = root;
+        position[depth++] = 0;
+        while (depth > 0) {
+            final T top = stack[depth - 1];
+            final T[] inputs = top.inputs();
+            final int next = position[depth - 1];
+            if (next < inputs.length) {
+                position[depth - 1] = next + 1;
+                final T input = inputs[next];
+                if (input.getPlanMark() != mark) {
+                    input.setPlanMark(mark);
+                    if (depth == stack.length) {
+                        stack = Arrays.copyOf(stack, depth * 2);
+                        position = Arrays.copyOf(position, depth * 2);
+                    }
+                    stack[depth] = input;
+                    position[depth++] = 0;
+                }
+            } else {
+                //Post order, every input has been emitted before the node itself
+                if (size == order.length) {
+                    order = Arrays.copyOf(order, size * 2);
+                }
+                order[size++] = top;
+                stack[--depth] = null;
+            }
+        }
+
+        order = Arrays.copyOf(order, size);
+        if (!inputsFirst) {
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                T temp = order[i];
+                order[i] = order[j];
+                order[j] = temp;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * @return the operations in execution order, callers must not modify the array.
+     */
+    public T[] nodes() {
+        return nodes;
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * @return the number of nodes that have to finish before the node at the given index can start.
+     */
+    public int predecessorCount(int index) {
+        return predecessorCounts[index];
+    }
+
+    public int successorStart(int index) {
+        return successorStart[index];
+    }
+
+    public int successorEnd(int index) {
+        return successorStart[index + 1];
+    }
+
+    /**
+     * @return the index of a node waiting on another node, for positions between {@link #successorStart(int)} and
+     * {@link #successorEnd(int)} of that node.
+     */
+    public int successor(int position) {
+        return successors[position];
+    }
+
+    /**
+     * @return the same plan, always run as a serial loop.
+     */
+    public ExecutionPlan<T> asSequential() {
+        return new ExecutionPlan<>(nodes, predecessorCounts, successorStart, successors, true);
+    }
+
+    /**
+     * @return true if every node depends on the one before it, so running the plan in parallel cannot gain anything.
+     */
+    public boolean isSequential() {
+        return sequential;
+    }
+}
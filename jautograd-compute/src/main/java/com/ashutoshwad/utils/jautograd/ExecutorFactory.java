@@ -2,15 +2,18 @@ package com.ashutoshwad.utils.jautograd;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 public class ExecutorFactory {
     private static ExecutorService executorService;
+    private static ExecutorService graphExecutorService;
     private static int numThreads;
 
     static {
         synchronized (ExecutorFactory.class) {
             ExecutorFactory.numThreads = Runtime.getRuntime().availableProcessors();
-            ExecutorFactory.executorService = Executors.newFixedThreadPool(numThreads);
+            ExecutorFactory.executorService = new ForkJoinPool(numThreads);
+            ExecutorFactory.graphExecutorService = Executors.newFixedThreadPool(numThreads);
         }
     }
 
@@ -19,15 +22,33 @@ public class ExecutorFactory {
             if (executorService != null) {
                 executorService.shutdown();
             }
-            numThreads = Math.max(1, numThreads);
-            executorService = Executors.newFixedThreadPool(numThreads);
+            if (graphExecutorService != null) {
+                graphExecutorService.shutdown();
+            }
+            ExecutorFactory.numThreads = Math.max(1, numThreads);
+            executorService = new ForkJoinPool(ExecutorFactory.numThreads);
+            graphExecutorService = Executors.newFixedThreadPool(ExecutorFactory.numThreads);
         }
     }
 
+    /**
+     * The executor service of the compute pool is a {@link ForkJoinPool}, so operations can split their work with
+     * {@link RangePartitioner}.
+     */
     public record Details(ExecutorService executorService, int numThreads){}
     public static Details getDetails() {
         synchronized (ExecutorFactory.class) {
             return new Details(executorService, numThreads);
         }
     }
+
+    /**
+     * Pool that runs whole graph nodes side by side. It is kept apart from the pool the nodes split their own work
+     * into, since a node blocks until its workers finish and would otherwise be able to starve them of threads.
+     */
+    static Details getGraphDetails() {
+        synchronized (ExecutorFactory.class) {
+            return new Details(graphExecutorService, numThreads);
+        }
+    }
 }
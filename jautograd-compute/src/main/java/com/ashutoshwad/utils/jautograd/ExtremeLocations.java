@@ -0,0 +1,149 @@
+package com.ashutoshwad.utils.jautograd;
+
+import java.util.Arrays;
+
+/**
+ * Where the max or min of every group of a reduction sits, recorded by {@link Reductions} in the same pass that
+ * finds the extremes. Every group keeps the first element equal to its extreme and how many there are, and every
+ * further tie is kept as a (group, element) pair, so the backward pass never looks at the source again.
+ * Elements are numbered along their group, in row major order for {@link AxisGroups#ALL}.
+ */
+final class ExtremeLocations {
+    //First element and count of every group
+    private final long[] locations;
+    //Ties as recorded by every chunk of the last pass, including those of an extreme that was beaten later on
+    private Ties[] chunkTies = new Ties[0];
+    private long[] chunkLocations = new long[0];
+    private final Ties ties = new Ties();
+
+    ExtremeLocations(int numGroups) {
+        this.locations = new long[2 * numGroups];
+    }
+
+    long first(int group) {
+        return locations[2 * group];
+    }
+
+    long count(int group) {
+        return locations[2 * group + 1];
+    }
+
+    /**
+     * @return the ties after the first of their group.
+     */
+    int numTies() {
+        return ties.size;
+    }
+
+    int tieGroup(int tie) {
+        return (int) ties.entries[2 * tie];
+    }
+
+    long tieElement(int tie) {
+        return ties.entries[2 * tie + 1];
+    }
+
+    /**
+     * @return the first element and count of every group, two longs per group, for the kernels to fill in.
+     */
+    long[] locations() {
+        return locations;
+    }
+
+    /**
+     * @return emptied tie lists for a pass cut into numChunks chunks, one per chunk.
+     */
+    Ties[] chunkTies(int numChunks) {
+        if (chunkTies.length < numChunks) {
+            final int previous = chunkTies.length;
+            chunkTies = Arrays.copyOf(chunkTies, numChunks);
+            for (int chunk = previous; chunk < numChunks; chunk++) {
+                chunkTies[chunk] = new Ties();
+            }
+        }
+        for (int chunk = 0; chunk < numChunks; chunk++) {
+            chunkTies[chunk].size = 0;
+        }
+        return chunkTies;
+    }
+
+    /**
+     * @return the first element and count every chunk of a single group found, two longs per chunk, emptied as
+     * chunks that do not run leave them alone.
+     */
+    long[] chunkLocations(int numChunks) {
+        if (chunkLocations.length < 2 * numChunks) {
+            chunkLocations = new long[2 * numChunks];
+        }
+        Arrays.fill(chunkLocations, 0, 2 * numChunks, 0);
+        return chunkLocations;
+    }
+
+    /**
+     * Keeps the ties the chunks recorded for groups that each chunk saw whole. Elements of a group are visited in
+     * order, so the ties of an extreme that was beaten come before the first element of the final one.
+     */
+    void collectGroupTies(int numChunks) {
+        ties.size = 0;
+        for (int chunk = 0; chunk < numChunks; chunk++) {
+            final Ties recorded = chunkTies[chunk];
+            for (int tie = 0; tie < recorded.size; tie++) {
+                final int group = (int) recorded.entries[2 * tie];
+                final long element = recorded.entries[2 * tie + 1];
+                if (count(group) > 1 && element > first(group)) {
+                    ties.add(group, element);
+                }
+            }
+        }
+    }
+
+    /**
+     * Combines the chunks of a single group in order. Every chunk that found the overall extreme adds its first
+     * element, its count and its ties, chunks that only found a smaller one are dropped.
+     */
+    void collectElementTies(int numChunks, double extreme, double[] partials) {
+        ties.size = 0;
+        locations[0] = -1;
+        locations[1] = 0;
+        if (Double.isNaN(extreme)) {
+            return;
+        }
+        for (int chunk = 0; chunk < numChunks; chunk++) {
+            final long chunkFirst = chunkLocations[2 * chunk];
+            final long chunkCount = chunkLocations[2 * chunk + 1];
+            if (chunkCount == 0 || partials[chunk] != extreme) {
+                continue;
+            }
+            if (locations[1] == 0) {
+                locations[0] = chunkFirst;
+            } else {
+                ties.add(0, chunkFirst);
+            }
+            locations[1] += chunkCount;
+            final Ties recorded = chunkTies[chunk];
+            for (int tie = 0; tie < recorded.size; tie++) {
+                final long element = recorded.entries[2 * tie + 1];
+                if (element > chunkFirst) {
+                    ties.add(0, element);
+                }
+            }
+        }
+    }
+
+    /**
+     * A growable list of (group, element) pairs.
+     */
+    static final class Ties {
+        private long[] entries = new long[16];
+        private int size;
+
+        void add(int group, long element) {
+            if (2 * size == entries.length) {
+                entries = Arrays.copyOf(entries, 2 * entries.length);
+            }
+            entries[2 * size] = group;
+            entries[2 * size + 1] = element;
+            size++;
+        }
+    }
+}
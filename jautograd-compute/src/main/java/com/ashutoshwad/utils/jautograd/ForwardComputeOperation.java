@@ -1,30 +1,31 @@
 package com.ashutoshwad.utils.jautograd;
 
-import java.util.*;
-import java.util.concurrent.atomic.AtomicLong;
-
-abstract class ForwardComputeOperation {
-    private static final AtomicLong SEQUENCE_FACTORY = new AtomicLong(0);
-    private final long id;
+abstract class ForwardComputeOperation implements ExecutionPlan.Node<ForwardComputeOperation> {
     private final Matrix left;
     private final Matrix right;
     private Matrix result;
-    private final List<ForwardComputeOperation> forwardComputeOperations;
+    private final ForwardComputeOperation[] inputs;
+    private int planMark;
+    private ExecutionPlan<ForwardComputeOperation> plan;
+    private boolean memoryPlanned;
+    private FusedElementWiseChain fusedChain;
 
     public ForwardComputeOperation(Matrix left, Matrix right, ForwardComputeOperation...forwardComputeOperations) {
-        this.id = SEQUENCE_FACTORY.getAndIncrement();
         this.left = left;
         this.right = right;
-        if (null == forwardComputeOperations || forwardComputeOperations.length == 0) {
-            this.forwardComputeOperations = new LinkedList<>();
-        } else {
-            List<ForwardComputeOperation>temp = new LinkedList<>();
+        int count = 0;
+        if (null != forwardComputeOperations) {
             for (int i = 0; i < forwardComputeOperations.length; i++) {
                 if (null != forwardComputeOperations[i]) {
-                    temp.add(forwardComputeOperations[i]);
+                    count++;
                 }
             }
-            this.forwardComputeOperations = Collections.unmodifiableList(temp);
+        }
+        this.inputs = new ForwardComputeOperation[count];
+        for (int i = 0, j = 0; j < count; i++) {
+            if (null != forwardComputeOperations[i]) {
+                inputs[j++] = forwardComputeOperations[i];
+            }
         }
     }
 
@@ -49,22 +50,78 @@ abstract class ForwardComputeOperation {
         return result;
     }
 
-    private void collectComputeNodes(Map<Long, ForwardComputeOperation> state) {
-        if(state.containsKey(id)) {
-            return;
+    @Override
+    public final ForwardComputeOperation[] inputs() {
+        return inputs;
+    }
+
+    @Override
+    public final int getPlanMark() {
+        return planMark;
+    }
+
+    @Override
+    public final void setPlanMark(int mark) {
+        this.planMark = mark;
+    }
+
+    ExecutionPlan<ForwardComputeOperation> getPlan() {
+        ExecutionPlan<ForwardComputeOperation> current = plan;
+        if (null == current) {
+            current = ExecutionPlan.compile(this, ForwardComputeOperation[]::new, true);
+            plan = current;
         }
-        state.put(id, this);
-        forwardComputeOperations.forEach(op -> op.collectComputeNodes(state));
+        return current;
+    }
+
+    /**
+     * Runs the graph below this operation one operation at a time from now on.
+     */
+    final void runSequentially() {
+        plan = getPlan().asSequential();
+    }
+
+    /**
+     * Marks the result as placed by {@link MemoryPlanner}, its gradient is then cleared by the backward pass.
+     */
+    final void setMemoryPlanned() {
+        this.memoryPlanned = true;
+    }
+
+    final boolean isMemoryPlanned() {
+        return memoryPlanned;
+    }
+
+    /**
+     * Makes this operation part of a fused chain, from then on only the last operation of the chain does any work.
+     */
+    final void setFusedChain(FusedElementWiseChain fusedChain) {
+        this.fusedChain = fusedChain;
+    }
+
+    final FusedElementWiseChain getFusedChain() {
+        return fusedChain;
     }
 
     public final void forward() {
-        Map<Long, ForwardComputeOperation> computeNodeMap = new TreeMap<>();
-        collectComputeNodes(computeNodeMap);
-        computeNodeMap.forEach((k, v) -> v.perform());
+        GraphScheduler.run(getPlan(), ForwardComputeOperation::execute);
+    }
+
+    private void execute() {
+        if (null == fusedChain) {
+            perform();
+        } else if (fusedChain.isTail(this)) {
+            fusedChain.forward();
+        }
     }
 
     protected final void zeroGradIndividual() {
-        if(null == result) {
+        if(null == result || !result.getRequiresGradient() || memoryPlanned) {
+            return;
+        }
+        StridedStorage gradient = result.getGradientStorage();
+        if (null != gradient) {
+            gradient.fill(0);
             return;
         }
         int numRows = result.numRows();
@@ -77,18 +134,19 @@ abstract class ForwardComputeOperation {
     }
 
     public final void zeroGradAndforward() {
-        Map<Long, ForwardComputeOperation> computeNodeMap = new TreeMap<>();
-        collectComputeNodes(computeNodeMap);
-        computeNodeMap.forEach((k, v) -> {
-            v.zeroGradIndividual();
-            v.perform();
-        });
+        GraphScheduler.run(getPlan(), ForwardComputeOperation::zeroGradAndPerform);
+    }
+
+    private void zeroGradAndPerform() {
+        zeroGradIndividual();
+        execute();
     }
 
     public final void zeroGrad() {
-        Map<Long, ForwardComputeOperation> computeNodeMap = new TreeMap<>();
-        collectComputeNodes(computeNodeMap);
-        computeNodeMap.forEach((k, v) -> v.zeroGradIndividual());
+        final ForwardComputeOperation[] nodes = getPlan().nodes();
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i].zeroGradIndividual();
+        }
     }
 
     protected abstract void perform();
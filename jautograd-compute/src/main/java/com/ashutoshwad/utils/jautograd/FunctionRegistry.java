@@ -1,7 +1,7 @@
 package com.ashutoshwad.utils.jautograd;
 
 class FunctionRegistry {
-    private static final double EPSILON = 1e-9;
+    static final double EPSILON = 1e-9;
 
     private static double nanGuard(double x) {
         if (Math.abs(x) < 1e-12) {
@@ -131,6 +131,20 @@ class FunctionRegistry {
         return oGrad * swishGrad;
     };
 
+    //Losses of a residual, prediction - target, and their derivatives with respect to the residual
+    public static final UnaryCalcFunction SQUARED_ERROR = d -> d * d;
+    public static final UnaryCalcFunction SQUARED_ERROR_GRAD = d -> 2 * d;
+    public static final UnaryCalcFunction ABSOLUTE_ERROR = Math::abs;
+    public static final UnaryCalcFunction ABSOLUTE_ERROR_GRAD = Math::signum;
+
+    public static UnaryCalcFunction huber(double delta) {
+        return d -> (Math.abs(d) <= delta) ? 0.5 * d * d : delta * (Math.abs(d) - 0.5 * delta);
+    }
+
+    public static UnaryCalcFunction huberGrad(double delta) {
+        return d -> Math.max(-delta, Math.min(delta, d));
+    }
+
     @FunctionalInterface
     public static interface UnaryCalcFunction {
         public double result(double input);
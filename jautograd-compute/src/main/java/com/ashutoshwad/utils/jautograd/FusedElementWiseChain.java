@@ -0,0 +1,261 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * A chain of elementwise operations run as one kernel, see {@link ElementWiseFusion}.
+ * Every step takes the result of the step before it (the source of the chain for the first step) and, for binary
+ * steps, one operand from outside the chain. The forward kernel keeps the running value of an element in a register
+ * from the source to the last result and only writes the last result. The backward kernel recomputes the chain for
+ * each element, a few function calls, and carries the gradient back through it the same way, so only the gradients of
+ * the operands from outside the chain are written.
+ */
+final class FusedElementWiseChain {
+    private final ForwardComputeOperation tail;
+    private final BackwardComputeOperation tailBackward;
+    private final Matrix source;
+    private final Matrix result;
+    private final int length;
+    private final Matrix[] sides;
+    private final boolean[] chainIsLeft;
+    private final FunctionRegistry.UnaryCalcFunction[] unaryFunctions;
+    private final FunctionRegistry.BinaryCalcFunction[] binaryFunctions;
+    private final FunctionRegistry.UnaryGradientFunction[] unaryGradients;
+    private final FunctionRegistry.BinaryGradientFunction[] chainGradients;
+    private final FunctionRegistry.BinaryGradientFunction[] sideGradients;
+
+    /**
+     * @param operations  the elementwise operations of the chain, in order.
+     * @param chainIsLeft for every operation whether the chain comes in as its left operand, true for the first one.
+     */
+    FusedElementWiseChain(ForwardComputeOperation[] operations, boolean[] chainIsLeft) {
+        this.length = operations.length;
+        this.tail = operations[length - 1];
+        this.result = tail.getResult();
+        this.tailBackward = result.getRequiresGradient() ? result.backwardComputeOperation : null;
+        this.source = operations[0].getLeft();
+        this.chainIsLeft = chainIsLeft;
+        this.sides = new Matrix[length];
+        this.unaryFunctions = new FunctionRegistry.UnaryCalcFunction[length];
+        this.binaryFunctions = new FunctionRegistry.BinaryCalcFunction[length];
+        this.unaryGradients = new FunctionRegistry.UnaryGradientFunction[length];
+        this.chainGradients = new FunctionRegistry.BinaryGradientFunction[length];
+        this.sideGradients = new FunctionRegistry.BinaryGradientFunction[length];
+        for (int s = 0; s < length; s++) {
+            final ForwardComputeOperation operation = operations[s];
+            final BackwardComputeOperation backward = (null == tailBackward) ? null : operation.getResult().backwardComputeOperation;
+            if (operation instanceof ElementWiseUnaryForwardOperation unary) {
+                unaryFunctions[s] = unary.getForwardFunction();
+                if (null != backward) {
+                    unaryGradients[s] = ((ElementWiseUnaryBackwardOperation) backward).getBackwardFunction();
+                }
+                continue;
+            }
+            binaryFunctions[s] = ((ElementWiseBinaryForwardOperation) operation).getForwardFunction();
+            sides[s] = chainIsLeft[s] ? operation.getRight() : operation.getLeft();
+            if (null != backward) {
+                ElementWiseBinaryBackwardOperation binary = (ElementWiseBinaryBackwardOperation) backward;
+                chainGradients[s] = chainIsLeft[s] ? binary.getLeftBackwardFunction() : binary.getRightBackwardFunction();
+                sideGradients[s] = chainIsLeft[s] ? binary.getRightBackwardFunction() : binary.getLeftBackwardFunction();
+            }
+        }
+    }
+
+    boolean isTail(ForwardComputeOperation operation) {
+        return tail == operation;
+    }
+
+    boolean isTail(BackwardComputeOperation operation) {
+        return tailBackward == operation;
+    }
+
+    /**
+     * @return the matrices from outside the chain it reads, the source first.
+     */
+    Matrix[] operands() {
+        int count = 1;
+        for (Matrix side : sides) {
+            if (null != side) {
+                count++;
+            }
+        }
+        final Matrix[] operands = new Matrix[count];
+        operands[0] = source;
+        for (int s = 0, i = 1; s < length; s++) {
+            if (null != sides[s]) {
+                operands[i++] = sides[s];
+            }
+        }
+        return operands;
+    }
+
+    /**
+     * @return the gradient buffers the fused backward kernel adds into, see {@link ExecutionPlan.Node#writeTargets()}.
+     */
+    Object[] gradientTargets() {
+        final Matrix[] operands = operands();
+        final Object[] targets = new Object[operands.length];
+        for (int i = 0; i < operands.length; i++) {
+            targets[i] = BackwardComputeOperation.gradientTarget(operands[i]);
+        }
+        return targets;
+    }
+
+    void forward() {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        final int totalElements = result.numRows() * result.numCols();
+        final int numTasks = CostModel.elementwiseTasks(totalElements, length, operands().length + 1, details.numThreads());
+        RangePartitioner.run(details, totalElements, numTasks, new ForwardJob(source.getValueStorage(), sideValues(), result.getValueStorage()));
+    }
+
+    void backward() {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        final Matrix[] operands = operands();
+        final int totalElements = result.numRows() * result.numCols();
+        final int numTasks = CostModel.elementwiseTasks(totalElements, 3 * length, 2 * operands.length + 1, details.numThreads());
+        final int numChunks = RangePartitioner.numChunks(numTasks);
+        final GradientAccumulator sourceAccumulator = accumulator(source, operands, numChunks);
+        final GradientAccumulator[] sideAccumulators = new GradientAccumulator[length];
+        for (int s = 0; s < length; s++) {
+            sideAccumulators[s] = (null == sides[s]) ? null : accumulator(sides[s], operands, numChunks);
+        }
+        RangePartitioner.run(details, totalElements, numTasks,
+                new BackwardJob(source.getValueStorage(), sideValues(), result.getGradientStorage(), sourceAccumulator, sideAccumulators));
+        if (null != sourceAccumulator) {
+            sourceAccumulator.merge();
+        }
+        for (GradientAccumulator accumulator : sideAccumulators) {
+            if (null != accumulator) {
+                accumulator.merge();
+            }
+        }
+    }
+
+    private StridedStorage[] sideValues() {
+        final StridedStorage[] values = new StridedStorage[length];
+        for (int s = 0; s < length; s++) {
+            values[s] = (null == sides[s]) ? null : sides[s].getValueStorage();
+        }
+        return values;
+    }
+
+    /**
+     * Operands seen through different windows of one buffer (a matrix and its transpose, say) would be written by
+     * different workers at the same cell, those go through a staged accumulator.
+     */
+    private static GradientAccumulator accumulator(Matrix operand, Matrix[] operands, int numChunks) {
+        if (!operand.getRequiresGradient()) {
+            return null;
+        }
+        boolean aliased = false;
+        for (Matrix other : operands) {
+            aliased |= GradientAccumulator.aliases(operand, other);
+        }
+        return GradientAccumulator.create(operand, numChunks, aliased);
+    }
+
+    private static double valueAt(StridedStorage storage, int row, int column) {
+        return storage.data()[storage.offset() + row * storage.rowStride() + column * storage.colStride()];
+    }
+
+    /**
+     * Runs the chain for one element, recording the value after every step in trace (trace[0] is the source) and
+     * the outside operand of every binary step in sideTrace when they are not null.
+     */
+    private double evaluate(StridedStorage in, StridedStorage[] sideValues, int row, int column, double[] trace, double[] sideTrace) {
+        double value = valueAt(in, row, column);
+        if (null != trace) {
+            trace[0] = value;
+        }
+        for (int s = 0; s < length; s++) {
+            if (null == sideValues[s]) {
+                value = unaryFunctions[s].result(value);
+            } else {
+                final double side = valueAt(sideValues[s], row, column);
+                value = chainIsLeft[s] ? binaryFunctions[s].result(value, side) : binaryFunctions[s].result(side, value);
+                if (null != sideTrace) {
+                    sideTrace[s] = side;
+                }
+            }
+            if (null != trace) {
+                trace[s + 1] = value;
+            }
+        }
+        return value;
+    }
+
+    private class ForwardJob implements RangePartitioner.RangeJob {
+        private final StridedStorage in;
+        private final StridedStorage[] sideValues;
+        private final StridedStorage o;
+
+        public ForwardJob(StridedStorage in, StridedStorage[] sideValues, StridedStorage o) {
+            this.in = in;
+            this.sideValues = sideValues;
+            this.o = o;
+        }
+
+        @Override
+        public void run(int chunk, int from, int to) {
+            final int numCols = o.numCols();
+            final double[] oData = o.data();
+            for (int i = from; i < to; ) {
+                final int row = i / numCols;
+                final int colFrom = i - row * numCols;
+                final int colTo = Math.min(numCols, colFrom + (to - i));
+                int oIndex = o.offset() + row * o.rowStride() + colFrom * o.colStride();
+                for (int column = colFrom; column < colTo; column++, oIndex += o.colStride()) {
+                    oData[oIndex] = evaluate(in, sideValues, row, column, null, null);
+                }
+                i += colTo - colFrom;
+            }
+        }
+    }
+
+    private class BackwardJob implements RangePartitioner.RangeJob {
+        private final StridedStorage in;
+        private final StridedStorage[] sideValues;
+        private final StridedStorage oGrad;
+        private final GradientAccumulator sourceAccumulator;
+        private final GradientAccumulator[] sideAccumulators;
+
+        public BackwardJob(StridedStorage in, StridedStorage[] sideValues, StridedStorage oGrad,
+                           GradientAccumulator sourceAccumulator, GradientAccumulator[] sideAccumulators) {
+            this.in = in;
+            this.sideValues = sideValues;
+            this.oGrad = oGrad;
+            this.sourceAccumulator = sourceAccumulator;
+            this.sideAccumulators = sideAccumulators;
+        }
+
+        @Override
+        public void run(int chunk, int from, int to) {
+            final int numCols = oGrad.numCols();
+            final double[] trace = new double[length + 1];
+            final double[] sideTrace = new double[length];
+            for (int i = from; i < to; ) {
+                final int row = i / numCols;
+                final int colFrom = i - row * numCols;
+                final int colTo = Math.min(numCols, colFrom + (to - i));
+                for (int column = colFrom; column < colTo; column++) {
+                    evaluate(in, sideValues, row, column, trace, sideTrace);
+                    double gradient = valueAt(oGrad, row, column);
+                    for (int s = length - 1; s >= 0; s--) {
+                        if (null == sideValues[s]) {
+                            gradient = unaryGradients[s].result(trace[s], trace[s + 1], gradient);
+                            continue;
+                        }
+                        final double left = chainIsLeft[s] ? trace[s] : sideTrace[s];
+                        final double right = chainIsLeft[s] ? sideTrace[s] : trace[s];
+                        if (null != sideAccumulators[s]) {
+                            sideAccumulators[s].add(chunk, row, column, sideGradients[s].result(left, right, trace[s + 1], gradient));
+                        }
+                        gradient = chainGradients[s].result(left, right, trace[s + 1], gradient);
+                    }
+                    if (null != sourceAccumulator) {
+                        sourceAccumulator.add(chunk, row, column, gradient);
+                    }
+                }
+                i += colTo - colFrom;
+            }
+        }
+    }
+}
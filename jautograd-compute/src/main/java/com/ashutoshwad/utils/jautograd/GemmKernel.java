@@ -0,0 +1,259 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * Cache blocked matrix multiplication over {@link StridedStorage}, computes C += A x B for a band of rows of C.
+ * The loop order follows the usual Goto/BLIS layout: a KC x NC block of B and an MC x KC block of A are packed into
+ * contiguous panels sized to stay in cache, and an MR x NR register tile of C is computed from the packed panels.
+ * Since packing reads the operands through their strides, transposed operands need no separate code path, and since it
+ * widens {@link BufferStorage} operands to double, narrower precisions are multiplied and accumulated in double precision.
+ */
+final class GemmKernel {
+    static final int MR = 4;
+    static final int NR = 4;
+    static final int MC = 128;
+    static final int KC = 256;
+    static final int NC = 512;
+
+    /**
+     * Below roughly this many multiply-adds the packing overhead outweighs the gains of blocking.
+     */
+    static final long BLOCKED_THRESHOLD = 32L * 32 * 32;
+
+    private record Workspace(double[] packedA, double[] packedB) {}
+    private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(() -> new Workspace(new double[MC * KC], new double[KC * NC]));
+
+    private GemmKernel() {
+    }
+
+    public static boolean isWorthBlocking(int m, int n, int k) {
+        return (long) m * n * k >= BLOCKED_THRESHOLD;
+    }
+
+    /**
+     * Computes C (+)= A x B, splitting the rows of C into bands aligned to the micro kernel height and running them with
+     * {@link RangePartitioner}. Every element of C is owned by exactly one band, so the bands need no synchronization
+     * between them.
+     */
+    public static void multiplyRowBands(ExecutorFactory.Details details, int numTasks,
+                                        ElementWindow a, ElementWindow b, StridedStorage c, boolean accumulate) {
+        RangePartitioner.run(details, c.numRows(), numTasks, MR, (chunk, from, to) -> multiply(a, b, c, from, to, accumulate));
+    }
+
+    /**
+     * Computes rows [rowFrom, rowTo) of C as A x B. If accumulate is false the rows are overwritten, otherwise the
+     * product is added to what is already there. C must not overlap A or B.
+     */
+    public static void multiply(ElementWindow a, ElementWindow b, StridedStorage c, int rowFrom, int rowTo, boolean accumulate) {
+        final int n = c.numCols();
+        final int k = a.numCols();
+        if (!accumulate) {
+            c.slice(rowFrom, rowTo - rowFrom, 0, n).fill(0);
+        }
+        if (rowFrom >= rowTo || k == 0) {
+            return;
+        }
+        Workspace workspace = WORKSPACE.get();
+        final double[] packedA = workspace.packedA();
+        final double[] packedB = workspace.packedB();
+
+        for (int jc = 0; jc < n; jc += NC) {
+            final int nc = Math.min(NC, n - jc);
+            for (int pc = 0; pc < k; pc += KC) {
+                final int kc = Math.min(KC, k - pc);
+                packB(b, pc, kc, jc, nc, packedB);
+                for (int ic = rowFrom; ic < rowTo; ic += MC) {
+                    final int mc = Math.min(MC, rowTo - ic);
+                    packA(a, ic, mc, pc, kc, packedA);
+                    for (int jr = 0; jr < nc; jr += NR) {
+                        final int nr = Math.min(NR, nc - jr);
+                        for (int ir = 0; ir < mc; ir += MR) {
+                            final int mr = Math.min(MR, mc - ir);
+                            microKernel(kc, packedA, ir * kc, packedB, jr * kc, c, ic + ir, jc + jr, mr, nr);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void packA(ElementWindow a, int row, int mc, int col, int kc, double[] packed) {
+        if (a instanceof StridedStorage strided) {
+            packA(strided, row, mc, col, kc, packed);
+        } else {
+            packA((BufferStorage) a, row, mc, col, kc, packed);
+        }
+    }
+
+    private static void packB(ElementWindow b, int row, int kc, int col, int nc, double[] packed) {
+        if (b instanceof StridedStorage strided) {
+            packB(strided, row, kc, col, nc, packed);
+        } else {
+            packB((BufferStorage) b, row, kc, col, nc, packed);
+        }
+    }
+
+    /**
+     * Packs rows [row, row + mc) and columns [col, col + kc) of A into panels of MR rows, stored column by column so the
+     * micro kernel reads MR consecutive values per step of k. The last panel is zero padded.
+     */
+    private static void packA(StridedStorage a, int row, int mc, int col, int kc, double[] packed) {
+        final double[] data = a.data();
+        final int rowStride = a.rowStride();
+        final int colStride = a.colStride();
+        int dest = 0;
+        for (int ir = 0; ir < mc; ir += MR) {
+            final int mr = Math.min(MR, mc - ir);
+            final int base = a.offset() + (row + ir) * rowStride + col * colStride;
+            for (int p = 0; p < kc; p++) {
+                final int source = base + p * colStride;
+                int i = 0;
+                for (; i < mr; i++) {
+                    packed[dest++] = data[source + i * rowStride];
+                }
+                for (; i < MR; i++) {
+                    packed[dest++] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Packs rows [row, row + kc) and columns [col, col + nc) of B into panels of NR columns, stored row by row so the
+     * micro kernel reads NR consecutive values per step of k. The last panel is zero padded.
+     */
+    private static void packB(StridedStorage b, int row, int kc, int col, int nc, double[] packed) {
+        final double[] data = b.data();
+        final int rowStride = b.rowStride();
+        final int colStride = b.colStride();
+        int dest = 0;
+        for (int jr = 0; jr < nc; jr += NR) {
+            final int nr = Math.min(NR, nc - jr);
+            final int base = b.offset() + row * rowStride + (col + jr) * colStride;
+            for (int p = 0; p < kc; p++) {
+                final int source = base + p * rowStride;
+                int j = 0;
+                for (; j < nr; j++) {
+                    packed[dest++] = data[source + j * colStride];
+                }
+                for (; j < NR; j++) {
+                    packed[dest++] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #packA(StridedStorage, int, int, int, int, double[])}, widening the values to double.
+     */
+    private static void packA(BufferStorage a, int row, int mc, int col, int kc, double[] packed) {
+        final ElementBuffer buffer = a.buffer();
+        final long rowStride = a.rowStride();
+        final long colStride = a.colStride();
+        int dest = 0;
+        for (int ir = 0; ir < mc; ir += MR) {
+            final int mr = Math.min(MR, mc - ir);
+            final long base = a.offset() + (row + ir) * rowStride + col * colStride;
+            for (int p = 0; p < kc; p++) {
+                final long source = base + p * colStride;
+                int i = 0;
+                for (; i < mr; i++) {
+                    packed[dest++] = buffer.get(source + i * rowStride);
+                }
+                for (; i < MR; i++) {
+                    packed[dest++] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #packB(StridedStorage, int, int, int, int, double[])}, widening the values to double.
+     */
+    private static void packB(BufferStorage b, int row, int kc, int col, int nc, double[] packed) {
+        final ElementBuffer buffer = b.buffer();
+        final long rowStride = b.rowStride();
+        final long colStride = b.colStride();
+        int dest = 0;
+        for (int jr = 0; jr < nc; jr += NR) {
+            final int nr = Math.min(NR, nc - jr);
+            final long base = b.offset() + row * rowStride + (col + jr) * colStride;
+            for (int p = 0; p < kc; p++) {
+                final long source = base + p * rowStride;
+                int j = 0;
+                for (; j < nr; j++) {
+                    packed[dest++] = buffer.get(source + j * colStride);
+                }
+                for (; j < NR; j++) {
+                    packed[dest++] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the product of one MR x kc panel of A and one kc x NR panel of B to the tile of C at (row, col), keeping the
+     * whole MR x NR tile in registers for the duration of the k loop.
+     */
+    private static void microKernel(int kc, double[] packedA, int aIndex, double[] packedB, int bIndex,
+                                    StridedStorage c, int row, int col, int mr, int nr) {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+        for (int p = 0; p < kc; p++) {
+            final double a0 = packedA[aIndex];
+            final double a1 = packedA[aIndex + 1];
+            final double a2 = packedA[aIndex + 2];
+            final double a3 = packedA[aIndex + 3];
+            final double b0 = packedB[bIndex];
+            final double b1 = packedB[bIndex + 1];
+            final double b2 = packedB[bIndex + 2];
+            final double b3 = packedB[bIndex + 3];
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+            aIndex += MR;
+            bIndex += NR;
+        }
+        final double[] data = c.data();
+        final int rowStride = c.rowStride();
+        final int colStride = c.colStride();
+        final int base = c.offset() + row * rowStride + col * colStride;
+        if (mr == MR && nr == NR) {
+            int index = base;
+            data[index] += c00; data[index + colStride] += c01; data[index + 2 * colStride] += c02; data[index + 3 * colStride] += c03;
+            index += rowStride;
+            data[index] += c10; data[index + colStride] += c11; data[index + 2 * colStride] += c12; data[index + 3 * colStride] += c13;
+            index += rowStride;
+            data[index] += c20; data[index + colStride] += c21; data[index + 2 * colStride] += c22; data[index + 3 * colStride] += c23;
+            index += rowStride;
+            data[index] += c30; data[index + colStride] += c31; data[index + 2 * colStride] += c32; data[index + 3 * colStride] += c33;
+            return;
+        }
+        //Edge tile, only its first mr rows and nr columns fall inside the output
+        addEdgeRow(data, base, colStride, nr, c00, c01, c02, c03);
+        if (mr > 1) {
+            addEdgeRow(data, base + rowStride, colStride, nr, c10, c11, c12, c13);
+        }
+        if (mr > 2) {
+            addEdgeRow(data, base + 2 * rowStride, colStride, nr, c20, c21, c22, c23);
+        }
+        if (mr > 3) {
+            addEdgeRow(data, base + 3 * rowStride, colStride, nr, c30, c31, c32, c33);
+        }
+    }
+
+    private static void addEdgeRow(double[] data, int index, int colStride, int nr, double c0, double c1, double c2, double c3) {
+        data[index] += c0;
+        if (nr > 1) {
+            data[index + colStride] += c1;
+        }
+        if (nr > 2) {
+            data[index + 2 * colStride] += c2;
+        }
+        if (nr > 3) {
+            data[index + 3 * colStride] += c3;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * Collects the gradient contributions that parallel backward workers make to one operand, without locks.
+ * Workers always own disjoint sets of elements of the operand as the kernel sees it, the only question is whether
+ * those elements are also disjoint in memory:
+ * <ul>
+ *     <li>Direct: the operand is a non-overlapping strided window, every worker adds straight into the buffer.</li>
+ *     <li>Partial: the operand is a broadcast, every worker reduces into its own small buffer with one cell per
+ *     distinct element, and the buffers are added to the operand once all workers are done. Workers are identified
+ *     by their {@link RangePartitioner} chunk, so the buffers are merged in the same order on every run.</li>
+ *     <li>Buffered: the operand keeps its gradient in a non-overlapping {@link BufferStorage}, e.g. off the heap,
+ *     every worker adds straight into the buffer through its accessors.</li>
+ *     <li>Staged: anything else (views without strided storage, or a window that aliases the other operand),
+ *     workers write into one dense buffer shaped like the operand, which is then applied through
+ *     {@link AbstractMatrix#accumulateGradient(int, int, double)} from a single thread.</li>
+ * </ul>
+ * {@link #merge()} must be called by the coordinating thread after all workers have finished.
+ */
+abstract class GradientAccumulator {
+
+    public abstract void add(int worker, int row, int column, double value);
+
+    public abstract void merge();
+
+    /**
+     * @param aliased true if other writers in the same kernel may hit the same memory through a different window,
+     *                which forces the staged strategy.
+     */
+    public static GradientAccumulator create(Matrix target, int numWorkers, boolean aliased) {
+        StridedStorage storage = target.getGradientStorage();
+        if (null == storage && !aliased) {
+            BufferStorage buffer = target.getGradientBufferStorage();
+            if (null != buffer && !buffer.isOverlapping()) {
+                return new Buffered(buffer);
+            }
+        }
+        if (null == storage || aliased) {
+            return new Staged(target);
+        }
+        if (storage.isOverlapping()) {
+            return new Partial(storage, numWorkers);
+        }
+        return new Direct(storage);
+    }
+
+    /**
+     * Same as {@link #create(Matrix, int, boolean)} for a target written in the same kernel as other, whose
+     * accumulator is otherAccumulator or null. The target is staged if the other side writes its gradient in place
+     * and the two gradients are different windows over the same memory.
+     */
+    public static GradientAccumulator create(Matrix target, int numWorkers, Matrix other, GradientAccumulator otherAccumulator) {
+        final boolean aliased = null != otherAccumulator && otherAccumulator.writesInPlace() && aliases(target, other);
+        return create(target, numWorkers, aliased);
+    }
+
+    /**
+     * @return true if both matrices keep gradients, in the same buffer on or off the heap but through different
+     * windows, so different workers could write the same cell through one and the other.
+     */
+    static boolean aliases(Matrix target, Matrix other) {
+        if (null == other || !target.getRequiresGradient() || !other.getRequiresGradient()) {
+            return false;
+        }
+        final StridedStorage storage = target.getGradientStorage();
+        if (null != storage) {
+            return storage.sharesData(other.getGradientStorage()) && !storage.equals(other.getGradientStorage());
+        }
+        final BufferStorage buffer = target.getGradientBufferStorage();
+        final BufferStorage otherBuffer = other.getGradientBufferStorage();
+        return null != buffer && null != otherBuffer && buffer.buffer() == otherBuffer.buffer() && !buffer.equals(otherBuffer);
+    }
+
+    /**
+     * @return true if this accumulator writes the gradient buffer straight away, so a kernel may bypass it and write
+     * the buffer itself.
+     */
+    public boolean isDirect() {
+        return false;
+    }
+
+    /**
+     * @return true if workers write the gradient of the operand itself while the kernel runs, directly or through
+     * its buffer, instead of leaving it to {@link #merge()}.
+     */
+    boolean writesInPlace() {
+        return isDirect();
+    }
+
+    /**
+     * @return storage shaped like the operand that the given worker may add into straight away instead of calling
+     * {@link #add}, or null if it has to call add. For a broadcast this is the worker's own buffer, so a kernel can
+     * reduce the broadcast gradient with plain strided loops and have it merged once.
+     */
+    public StridedStorage storageFor(int worker) {
+        return null;
+    }
+
+    private static final class Direct extends GradientAccumulator {
+        private final StridedStorage storage;
+
+        private Direct(StridedStorage storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public void add(int worker, int row, int column, double value) {
+            storage.add(row, column, value);
+        }
+
+        @Override
+        public void merge() {
+            //Already in place
+        }
+
+        @Override
+        public boolean isDirect() {
+            return true;
+        }
+
+        @Override
+        public StridedStorage storageFor(int worker) {
+            return storage;
+        }
+    }
+
+    private static final class Partial extends GradientAccumulator {
+        private final StridedStorage storage;
+        private final int distinctRows;
+        private final int distinctCols;
+        private final double[][] partials;
+
+        private Partial(StridedStorage storage, int numWorkers) {
+            this.storage = storage;
+            this.distinctRows = (storage.rowStride() == 0) ? 1 : storage.numRows();
+            this.distinctCols = (storage.colStride() == 0) ? 1 : storage.numCols();
+            this.partials = new double[numWorkers][];
+        }
+
+        private double[] partial(int worker) {
+            double[] partial = partials[worker];
+            if (null == partial) {
+                partial = new double[distinctRows * distinctCols];
+                partials[worker] = partial;
+            }
+            return partial;
+        }
+
+        @Override
+        public void add(int worker, int row, int column, double value) {
+            int distinctRow = (distinctRows == 1) ? 0 : row;
+            int distinctCol = (distinctCols == 1) ? 0 : column;
+            partial(worker)[distinctRow * distinctCols + distinctCol] += value;
+        }
+
+        @Override
+        public StridedStorage storageFor(int worker) {
+            return new StridedStorage(partial(worker), 0, (distinctRows == 1) ? 0 : distinctCols, (distinctCols == 1) ? 0 : 1,
+                    storage.numRows(), storage.numCols());
+        }
+
+        @Override
+        public void merge() {
+            for (double[] partial : partials) {
+                if (null == partial) {
+                    continue;
+                }
+                for (int row = 0; row < distinctRows; row++) {
+                    for (int col = 0; col < distinctCols; col++) {
+                        storage.add(row, col, partial[row * distinctCols + col]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Buffered extends GradientAccumulator {
+        private final BufferStorage storage;
+
+        private Buffered(BufferStorage storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public void add(int worker, int row, int column, double value) {
+            storage.add(row, column, value);
+        }
+
+        @Override
+        public void merge() {
+            //Already in place
+        }
+
+        @Override
+        boolean writesInPlace() {
+            return true;
+        }
+    }
+
+    private static final class Staged extends GradientAccumulator {
+        private final Matrix target;
+        private final double[] staging;
+        private final int numCols;
+
+        private Staged(Matrix target) {
+            this.target = target;
+            this.numCols = target.numCols();
+            this.staging = new double[target.numRows() * numCols];
+        }
+
+        @Override
+        public void add(int worker, int row, int column, double value) {
+            staging[row * numCols + column] += value;
+        }
+
+        @Override
+        public void merge() {
+            for (int i = 0; i < staging.length; i++) {
+                if (staging[i] != 0) {
+                    target.accumulateGradient(i / numCols, i % numCols, staging[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.ashutoshwad.utils.jautograd;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+
+/**
+ * Runs the nodes of an {@link ExecutionPlan}, starting every node as soon as the nodes it depends on are done, so
+ * independent branches of a graph run at the same time.
+ * Every thread keeps running the first node it makes ready itself and hands any further ready nodes to the graph
+ * pool, a straight chain of nodes therefore stays on one thread. The calling thread takes part in the run and
+ * returns once every node has finished, or rethrows the first failure once every node that had already started has
+ * finished. Nodes that become ready after a failure are skipped.
+ */
+final class GraphScheduler<T extends ExecutionPlan.Node<T>> {
+    private final ExecutionPlan<T> plan;
+    private final Consumer<T> action;
+    private final ExecutorService executorService;
+    private final AtomicIntegerArray pending;
+    private final AtomicInteger active;
+    private final CountDownLatch done;
+    private volatile Throwable failure;
+
+    private GraphScheduler(ExecutionPlan<T> plan, Consumer<T> action, ExecutorService executorService) {
+        this.plan = plan;
+        this.action = action;
+        this.executorService = executorService;
+        this.pending = new AtomicIntegerArray(plan.size());
+        for (int i = 0; i < plan.size(); i++) {
+            pending.set(i, plan.predecessorCount(i));
+        }
+        //The calling thread counts as active until it is done handing out the roots
+        this.active = new AtomicInteger(1);
+        this.done = new CountDownLatch(1);
+    }
+
+    public static <T extends ExecutionPlan.Node<T>> void run(ExecutionPlan<T> plan, Consumer<T> action) {
+        ExecutorFactory.Details details = ExecutorFactory.getGraphDetails();
+        if (plan.isSequential() || details.numThreads() < 2) {
+            final T[] nodes = plan.nodes();
+            for (int i = 0; i < nodes.length; i++) {
+                action.accept(nodes[i]);
+            }
+            return;
+        }
+        new GraphScheduler<>(plan, action, details.executorService()).execute();
+    }
+
+    private void execute() {
+        int first = -1;
+        for (int i = 0; i < plan.size() && null == failure; i++) {
+            if (plan.predecessorCount(i) != 0) {
+                continue;
+            }
+            if (first < 0) {
+                first = i;
+            } else {
+                submit(i);
+            }
+        }
+        runFrom(first);
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Worker was interrupted", e);
+        }
+        if (null != failure) {
+            throw new RuntimeException("Worker failed to execute", failure);
+        }
+    }
+
+    private void submit(int index) {
+        active.incrementAndGet();
+        try {
+            executorService.execute(() -> runFrom(index));
+        } catch (RuntimeException e) {
+            fail(e);
+            finish();
+        }
+    }
+
+    private void fail(Throwable t) {
+        if (null == failure) {
+            failure = t;
+        }
+    }
+
+    /**
+     * Ends a run of nodes. Every ready node is either running or handed to a run, so once the last run ends every
+     * node has finished, or a node failed and nothing is still writing to the graph.
+     */
+    private void finish() {
+        if (active.decrementAndGet() == 0) {
+            done.countDown();
+        }
+    }
+
+    private void runFrom(int index) {
+        try {
+            runChain(index);
+        } finally {
+            finish();
+        }
+    }
+
+    private void runChain(int index) {
+        while (index >= 0 && null == failure) {
+            try {
+                action.accept(plan.nodes()[index]);
+            } catch (Throwable t) {
+                fail(t);
+                return;
+            }
+            int next = -1;
+            for (int position = plan.successorStart(index); position < plan.successorEnd(index); position++) {
+                final int successor = plan.successor(position);
+                if (pending.decrementAndGet(successor) != 0) {
+                    continue;
+                }
+                if (next < 0) {
+                    next = successor;
+                } else {
+                    submit(successor);
+                }
+            }
+            index = next;
+        }
+    }
+}
@@ -63,7 +63,7 @@ public class HorizontalConcatView extends Matrix  {
         IndexTuple tup = mapCols(column);
         return matrices[tup.matrixNum].getValue(row, tup.columnIndex);
     }
-    public synchronized void setValue(int row, int column, double value) {
+    public void setValue(int row, int column, double value) {
         IndexTuple tup = mapCols(column);
         matrices[tup.matrixNum].setValue(row, tup.columnIndex, value);
     }
@@ -71,11 +71,11 @@ public class HorizontalConcatView extends Matrix  {
         IndexTuple tup = mapCols(column);
         return matrices[tup.matrixNum].getGradient(row, tup.columnIndex);
     }
-    public synchronized void setGradient(int row, int column, double value) {
+    public void setGradient(int row, int column, double value) {
         IndexTuple tup = mapCols(column);
         matrices[tup.matrixNum].setGradient(row, tup.columnIndex, value);
     }
-    public synchronized void accumulateGradient(int row, int column, double value) {
+    public void accumulateGradient(int row, int column, double value) {
         IndexTuple tup = mapCols(column);
         matrices[tup.matrixNum].accumulateGradient(row, tup.columnIndex, value);
     }
@@ -85,4 +85,8 @@ public class HorizontalConcatView extends Matrix  {
     public int numCols() {
         return numCols;
     }
+
+    Matrix[] getViewSources() {
+        return matrices;
+    }
 }
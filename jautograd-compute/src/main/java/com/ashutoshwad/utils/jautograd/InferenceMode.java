@@ -0,0 +1,43 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * A scope in which matrix operations do not record anything for the backward pass.
+ * Results built inside the scope get a value buffer only, no gradient buffer and no backward operation, which is what
+ * running a trained model needs. Explicitly created trainable matrices still get their gradient buffers.
+ * <pre>{@code
+ * try (InferenceMode ignored = InferenceMode.enable()) {
+ *     Matrix prediction = input.matmul(weights).add(bias).sigmoid();
+ * }
+ * }</pre>
+ * The scope is per thread and may be nested, it must be closed by the thread that enabled it.
+ */
+public final class InferenceMode implements AutoCloseable {
+    private static final ThreadLocal<int[]> DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+    private final Thread owner;
+    private boolean closed;
+
+    private InferenceMode() {
+        this.owner = Thread.currentThread();
+    }
+
+    public static InferenceMode enable() {
+        DEPTH.get()[0]++;
+        return new InferenceMode();
+    }
+
+    public static boolean isEnabled() {
+        return DEPTH.get()[0] > 0;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        if (Thread.currentThread() != owner) {
+            throw new IllegalStateException("Inference mode must be closed by the thread that enabled it");
+        }
+        closed = true;
+        DEPTH.get()[0]--;
+    }
+}
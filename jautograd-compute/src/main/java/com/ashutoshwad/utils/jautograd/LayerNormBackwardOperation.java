@@ -0,0 +1,83 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * Gradient of {@link LayerNormForwardOperation} in closed form. With y the normalized group of n elements, g its
+ * gradient and s the cached inverse standard deviation, the source gets {@code s * (g - mean(g) - y * mean(g * y))},
+ * which needs only y and s, not the source or its mean.
+ */
+public class LayerNormBackwardOperation extends BackwardComputeOperation {
+    private final int axis;
+    private final LayerNormForwardOperation forward;
+
+    LayerNormBackwardOperation(Matrix source, int axis, LayerNormForwardOperation forward, BackwardComputeOperation... backwardComputeOperations) {
+        super(source, null, backwardComputeOperations);
+        this.axis = axis;
+        this.forward = forward;
+    }
+
+    @Override
+    protected void perform() {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        final AxisGroups groups = AxisGroups.of(getResult(), axis);
+        final int numTasks = CostModel.elementwiseTasks((long) groups.numGroups() * groups.groupLength(), 1, 4, details.numThreads());
+        final GradientAccumulator accumulator = GradientAccumulator.create(getLeft(), RangePartitioner.numChunks(numTasks), false);
+        RangePartitioner.run(details, groups.numGroups(), numTasks,
+                new LayerNormBackwardOperation.WorkerJob(getLeft(), getResult(), groups, forward.getInverseStd(), accumulator));
+        accumulator.merge();
+    }
+
+    private static class WorkerJob implements RangePartitioner.RangeJob {
+        private final Matrix source;
+        private final Matrix result;
+        private final AxisGroups groups;
+        private final double[] inverseStd;
+        private final GradientAccumulator accumulator;
+
+        public WorkerJob(Matrix source, Matrix result, AxisGroups groups, double[] inverseStd, GradientAccumulator accumulator) {
+            this.source = source;
+            this.result = result;
+            this.groups = groups;
+            this.inverseStd = inverseStd;
+            this.accumulator = accumulator;
+        }
+
+        @Override
+        public void run(int chunk, int from, int to) {
+            final int length = groups.groupLength();
+            final StridedStorage o = result.getValueStorage();
+            final StridedStorage oGrad = result.getGradientStorage();
+            final StridedStorage inGrad = source.getGradientStorage();
+            final double[] oData = o.data();
+            final double[] oGradData = oGrad.data();
+            final int oStride = groups.stride(o);
+            final int oGradStride = groups.stride(oGrad);
+            final boolean direct = accumulator.isDirect() && groups.isLinear(inGrad);
+            for (int group = from; group < to; group++) {
+                final int oStart = groups.start(o, group);
+                final int oGradStart = groups.start(oGrad, group);
+                double sumGradient = 0;
+                double dot = 0;
+                for (int e = 0, oIndex = oStart, gIndex = oGradStart; e < length; e++, oIndex += oStride, gIndex += oGradStride) {
+                    sumGradient += oGradData[gIndex];
+                    dot += oData[oIndex] * oGradData[gIndex];
+                }
+                final double meanGradient = sumGradient / length;
+                final double meanDot = dot / length;
+                final double scale = inverseStd[group];
+                if (direct) {
+                    final double[] inGradData = inGrad.data();
+                    final int inGradStride = groups.stride(inGrad);
+                    for (int e = 0, oIndex = oStart, gIndex = oGradStart, inIndex = groups.start(inGrad, group); e < length;
+                         e++, oIndex += oStride, gIndex += oGradStride, inIndex += inGradStride) {
+                        inGradData[inIndex] += scale * (oGradData[gIndex] - meanGradient - oData[oIndex] * meanDot);
+                    }
+                    continue;
+                }
+                for (int e = 0, oIndex = oStart, gIndex = oGradStart; e < length; e++, oIndex += oStride, gIndex += oGradStride) {
+                    accumulator.add(chunk, groups.row(group, e), groups.column(group, e),
+                            scale * (oGradData[gIndex] - meanGradient - oData[oIndex] * meanDot));
+                }
+            }
+        }
+    }
+}
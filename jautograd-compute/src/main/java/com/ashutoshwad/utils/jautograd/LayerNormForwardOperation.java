@@ -0,0 +1,92 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * Normalizes every group (see {@link AxisGroups}) to zero mean and unit variance, {@code (x - mean) / sqrt(var + EPSILON)}
+ * with the population variance. Mean and variance come from a single pass with Welford's update, which does not
+ * lose precision to cancellation the way summing x and x^2 does. The inverse standard deviation of every group is kept
+ * for {@link LayerNormBackwardOperation}.
+ */
+class LayerNormForwardOperation extends ForwardComputeOperation {
+    private final int axis;
+    private final double[] inverseStd;
+
+    LayerNormForwardOperation(Matrix source, int axis, ForwardComputeOperation... forwardComputeOperations) {
+        super(source, null, forwardComputeOperations);
+        this.axis = axis;
+        this.inverseStd = new double[AxisGroups.of(source, axis).numGroups()];
+    }
+
+    /**
+     * @return 1 / sqrt(var + EPSILON) of every group as of the last forward pass.
+     */
+    double[] getInverseStd() {
+        return inverseStd;
+    }
+
+    @Override
+    protected void perform() {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        final AxisGroups groups = AxisGroups.of(getLeft(), axis);
+        final int numTasks = CostModel.elementwiseTasks((long) groups.numGroups() * groups.groupLength(), 1, 3, details.numThreads());
+        RangePartitioner.run(details, groups.numGroups(), numTasks, new LayerNormForwardOperation.WorkerJob(getLeft(), getResult(), groups));
+    }
+
+    private class WorkerJob implements RangePartitioner.RangeJob {
+        private final Matrix source;
+        private final Matrix result;
+        private final AxisGroups groups;
+
+        public WorkerJob(Matrix source, Matrix result, AxisGroups groups) {
+            this.source = source;
+            this.result = result;
+            this.groups = groups;
+        }
+
+        @Override
+        public void run(int chunk, int from, int to) {
+            final int length = groups.groupLength();
+            final StridedStorage in = source.getValueStorage();
+            final StridedStorage o = result.getValueStorage();
+            if (groups.isLinear(in)) {
+                final double[] inData = in.data();
+                final double[] oData = o.data();
+                final int inStride = groups.stride(in);
+                final int oStride = groups.stride(o);
+                for (int group = from; group < to; group++) {
+                    final int inStart = groups.start(in, group);
+                    double mean = 0;
+                    double m2 = 0;
+                    for (int e = 0, inIndex = inStart; e < length; e++, inIndex += inStride) {
+                        final double delta = inData[inIndex] - mean;
+                        mean += delta / (e + 1);
+                        m2 += delta * (inData[inIndex] - mean);
+                    }
+                    final double scale = 1 / Math.sqrt(m2 / length + Matrix.EPSILON);
+                    inverseStd[group] = scale;
+                    for (int e = 0, inIndex = inStart, oIndex = groups.start(o, group); e < length; e++, inIndex += inStride, oIndex += oStride) {
+                        oData[oIndex] = (inData[inIndex] - mean) * scale;
+                    }
+                }
+                return;
+            }
+
+            for (int group = from; group < to; group++) {
+                double mean = 0;
+                double m2 = 0;
+                for (int e = 0; e < length; e++) {
+                    final double value = source.getValue(groups.row(group, e), groups.column(group, e));
+                    final double delta = value - mean;
+                    mean += delta / (e + 1);
+                    m2 += delta * (value - mean);
+                }
+                final double scale = 1 / Math.sqrt(m2 / length + Matrix.EPSILON);
+                inverseStd[group] = scale;
+                for (int e = 0; e < length; e++) {
+                    final int row = groups.row(group, e);
+                    final int column = groups.column(group, e);
+                    result.setValue(row, column, (source.getValue(row, column) - mean) * scale);
+                }
+            }
+        }
+    }
+}
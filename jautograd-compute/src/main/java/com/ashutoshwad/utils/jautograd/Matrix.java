@@ -1,5 +1,6 @@
 package com.ashutoshwad.utils.jautograd;
 
+import java.nio.file.Path;
 import java.util.Random;
 import java.util.function.Supplier;
 
@@ -9,22 +10,30 @@ public class Matrix extends AbstractMatrix {
 
     private record OperationTuple(Matrix a,
                                   Matrix b,
-                                  double[][] value,
-                                  double[][] gradient,
+                                  StridedStorage value,
+                                  StridedStorage gradient,
                                   boolean requiresGradient,
                                   ForwardComputeOperation forwardComputeOperation,
                                   BackwardComputeOperation backwardComputeOperation) {}
 
+    /**
+     * @return whether a result computed from operands with the given requirement has to support the backward pass,
+     * which is never the case in {@link InferenceMode}.
+     */
+    static boolean recordsGradient(boolean requiresGradient) {
+        return requiresGradient && !InferenceMode.isEnabled();
+    }
+
     private OperationTuple commonElementwiseBinaryOperationSteps(Matrix other, FunctionRegistry.BinaryCalcFunction calcFunction, FunctionRegistry.BinaryGradientFunction lGrad, FunctionRegistry.BinaryGradientFunction rGrad) {
         int numRows = Math.max(numRows(), other.numRows());
         int numCols = Math.max(numCols(), other.numCols());
         Matrix a = BroadcastView.broadcast(this, numRows, numCols);
         Matrix b = BroadcastView.broadcast(other, numRows, numCols);
-        double[][] value = new double[numRows][numCols];
-        double[][] gradient = null;
-        boolean requiresGradient = this.requiresGradient || other.requiresGradient;
+        StridedStorage value = StridedStorage.allocate(numRows, numCols);
+        StridedStorage gradient = null;
+        boolean requiresGradient = recordsGradient(this.requiresGradient || other.requiresGradient);
         if (requiresGradient) {
-            gradient = new double[numRows][numCols];
+            gradient = StridedStorage.allocate(numRows, numCols);
         }
         ForwardComputeOperation forwardComputeOperation = new ElementWiseBinaryForwardOperation(a, b, calcFunction, a.forwardComputeOperation, b.forwardComputeOperation);
         BackwardComputeOperation backwardComputeOperation = null;
@@ -35,10 +44,11 @@ public class Matrix extends AbstractMatrix {
     }
 
     private OperationTuple commonElementwiseUnaryOperationSteps(FunctionRegistry.UnaryCalcFunction calcFunction, FunctionRegistry.UnaryGradientFunction gradFunc) {
-        double[][] value = new double[this.numRows()][this.numCols()];
-        double[][] gradient = null;
+        final boolean requiresGradient = recordsGradient(this.requiresGradient);
+        StridedStorage value = StridedStorage.allocate(this.numRows(), this.numCols());
+        StridedStorage gradient = null;
         if (requiresGradient) {
-            gradient = new double[this.numRows()][this.numCols()];
+            gradient = StridedStorage.allocate(this.numRows(), this.numCols());
         }
         ForwardComputeOperation forwardComputeOperation = new ElementWiseUnaryForwardOperation(this, calcFunction, this.forwardComputeOperation);
         BackwardComputeOperation backwardComputeOperation = null;
@@ -85,11 +95,11 @@ public class Matrix extends AbstractMatrix {
         int numRows = numRows();
         int numCols = b.numCols();
         Matrix a = this;
-        double[][] value = new double[numRows][numCols];
-        double[][] gradient = null;
-        boolean requiresGradient = this.requiresGradient || b.requiresGradient;
+        StridedStorage value = StridedStorage.allocate(numRows, numCols);
+        StridedStorage gradient = null;
+        boolean requiresGradient = recordsGradient(this.requiresGradient || b.requiresGradient);
         if (requiresGradient) {
-            gradient = new double[numRows][numCols];
+            gradient = StridedStorage.allocate(numRows, numCols);
         }
         ForwardComputeOperation forwardComputeOperation = new MatrixMultiplicationForwardOperation(a, b, a.forwardComputeOperation, b.forwardComputeOperation);
         BackwardComputeOperation backwardComputeOperation = null;
@@ -158,13 +168,14 @@ public class Matrix extends AbstractMatrix {
 
     /*Matrix reduction methods start here*/
     public Matrix sum() {
-        double[][] value = new double[1][1];
+        final boolean requiresGradient = recordsGradient(this.requiresGradient);
+        StridedStorage value = StridedStorage.allocate(1, 1);
         ForwardComputeOperation fop = new SumForwardOperation(this, this.forwardComputeOperation);
 
-        double[][] gradient = null;
+        StridedStorage gradient = null;
         BackwardComputeOperation bop = null;
         if (requiresGradient) {
-            gradient = new double[1][1];
+            gradient = StridedStorage.allocate(1, 1);
             bop = new SumBackwardOperation(this, this.backwardComputeOperation);
         }
 
@@ -177,6 +188,7 @@ public class Matrix extends AbstractMatrix {
      * @return The resultant matrix
      */
     public Matrix sum(final int axis) {
+        final boolean requiresGradient = recordsGradient(this.requiresGradient);
         if (axis == 0 && this.numRows() == 1) {
             return this;
         }
@@ -188,27 +200,27 @@ public class Matrix extends AbstractMatrix {
         }
 
         if(axis == 0) {
-            double[][] value = new double[1][this.numCols()];
+            StridedStorage value = StridedStorage.allocate(1, this.numCols());
             ForwardComputeOperation fop = new SumForwardByAxisOperation(this, axis, this.forwardComputeOperation);
 
-            double[][] gradient = null;
+            StridedStorage gradient = null;
             BackwardComputeOperation bop = null;
 
             if (requiresGradient) {
-                gradient = new double[1][this.numCols()];
+                gradient = StridedStorage.allocate(1, this.numCols());
                 bop = new SumBackwardByAxisOperation(this, axis, this.backwardComputeOperation);
             }
 
             return new Matrix(value, gradient, requiresGradient, fop, bop);
         } else {
-            double[][] value = new double[this.numRows()][1];
+            StridedStorage value = StridedStorage.allocate(this.numRows(), 1);
             ForwardComputeOperation fop = new SumForwardByAxisOperation(this, axis, this.forwardComputeOperation);
 
-            double[][] gradient = null;
+            StridedStorage gradient = null;
             BackwardComputeOperation bop = null;
 
             if (requiresGradient) {
-                gradient = new double[this.numRows()][1];
+                gradient = StridedStorage.allocate(this.numRows(), 1);
                 bop = new SumBackwardByAxisOperation(this, axis, this.backwardComputeOperation);
             }
 
@@ -217,14 +229,15 @@ public class Matrix extends AbstractMatrix {
     }
 
     public Matrix max() {
-        double[][] value = new double[1][1];
-        ForwardComputeOperation fop = new MaxForwardOperation(this, this.forwardComputeOperation);
+        final boolean requiresGradient = recordsGradient(this.requiresGradient);
+        StridedStorage value = StridedStorage.allocate(1, 1);
+        MaxForwardOperation fop = new MaxForwardOperation(this, this.forwardComputeOperation);
 
-        double[][] gradient = null;
+        StridedStorage gradient = null;
         BackwardComputeOperation bop = null;
         if (requiresGradient) {
-            gradient = new double[1][1];
-            bop = new MaxBackwardOperation(this, this.backwardComputeOperation);
+            gradient = StridedStorage.allocate(1, 1);
+            bop = new MaxBackwardOperation(this, fop.getLocations(), this.backwardComputeOperation);
         }
 
         return new Matrix(value, gradient, requiresGradient, fop, bop);
@@ -236,6 +249,7 @@ public class Matrix extends AbstractMatrix {
      * @return The resultant matrix
      */
     public Matrix max(final int axis) {
+        final boolean requiresGradient = recordsGradient(this.requiresGradient);
         if (axis == 0 && this.numRows() == 1) {
             return this;
         }
@@ -247,28 +261,28 @@ public class Matrix extends AbstractMatrix {
         }
 
         if(axis == 0) {
-            double[][] value = new double[1][this.numCols()];
-            ForwardComputeOperation fop = new MaxForwardByAxisOperation(this, axis, this.forwardComputeOperation);
+            StridedStorage value = StridedStorage.allocate(1, this.numCols());
+            MaxForwardByAxisOperation fop = new MaxForwardByAxisOperation(this, axis, this.forwardComputeOperation);
 
-            double[][] gradient = null;
+            StridedStorage gradient = null;
             BackwardComputeOperation bop = null;
 
             if (requiresGradient) {
-                gradient = new double[1][this.numCols()];
-                bop = new MaxBackwardByAxisOperation(this, axis, this.backwardComputeOperation);
+                gradient = StridedStorage.allocate(1, this.numCols());
+                bop = new MaxBackwardByAxisOperation(this, axis, fop.getLocations(), this.backwardComputeOperation);
             }
 
             return new Matrix(value, gradient, requiresGradient, fop, bop);
         } else {
-            double[][] value = new double[this.numRows()][1];
-            ForwardComputeOperation fop = new MaxForwardByAxisOperation(this, axis, this.forwardComputeOperation);
+            StridedStorage value = StridedStorage.allocate(this.numRows(), 1);
+            MaxForwardByAxisOperation fop = new MaxForwardByAxisOperation(this, axis, this.forwardComputeOperation);
 
-            double[][] gradient = null;
+            StridedStorage gradient = null;
             BackwardComputeOperation bop = null;
 
             if (requiresGradient) {
-                gradient = new double[this.numRows()][1];
-                bop = new MaxBackwardByAxisOperation(this, axis, this.backwardComputeOperation);
+                gradient = StridedStorage.allocate(this.numRows(), 1);
+                bop = new MaxBackwardByAxisOperation(this, axis, fop.getLocations(), this.backwardComputeOperation);
             }
 
             return new Matrix(value, gradient, requiresGradient, fop, bop);
@@ -276,14 +290,15 @@ public class Matrix extends AbstractMatrix {
     }
 
     public Matrix min() {
-        double[][] value = new double[1][1];
-        ForwardComputeOperation fop = new MinForwardOperation(this, this.forwardComputeOperation);
+        final boolean requiresGradient = recordsGradient(this.requiresGradient);
+        StridedStorage value = StridedStorage.allocate(1, 1);
+        MinForwardOperation fop = new MinForwardOperation(this, this.forwardComputeOperation);
 
-        double[][] gradient = null;
+        StridedStorage gradient = null;
         BackwardComputeOperation bop = null;
         if (requiresGradient) {
-            gradient = new double[1][1];
-            bop = new MinBackwardOperation(this, this.backwardComputeOperation);
+            gradient = StridedStorage.allocate(1, 1);
+            bop = new MinBackwardOperation(this, fop.getLocations(), this.backwardComputeOperation);
         }
 
         return new Matrix(value, gradient, requiresGradient, fop, bop);
@@ -295,6 +310,7 @@ public class Matrix extends AbstractMatrix {
      * @return The resultant matrix
      */
     public Matrix min(final int axis) {
+        final boolean requiresGradient = recordsGradient(this.requiresGradient);
         if (axis == 0 && this.numRows() == 1) {
             return this;
         }
@@ -306,28 +322,28 @@ public class Matrix extends AbstractMatrix {
         }
 
         if(axis == 0) {
-            double[][] value = new double[1][this.numCols()];
-            ForwardComputeOperation fop = new MinForwardByAxisOperation(this, axis, this.forwardComputeOperation);
+            StridedStorage value = StridedStorage.allocate(1, this.numCols());
+            MinForwardByAxisOperation fop = new MinForwardByAxisOperation(this, axis, this.forwardComputeOperation);
 
-            double[][] gradient = null;
+            StridedStorage gradient = null;
             BackwardComputeOperation bop = null;
 
             if (requiresGradient) {
-                gradient = new double[1][this.numCols()];
-                bop = new MinBackwardByAxisOperation(this, axis, this.backwardComputeOperation);
+                gradient = StridedStorage.allocate(1, this.numCols());
+                bop = new MinBackwardByAxisOperation(this, axis, fop.getLocations(), this.backwardComputeOperation);
             }
 
             return new Matrix(value, gradient, requiresGradient, fop, bop);
         } else {
-            double[][] value = new double[this.numRows()][1];
-            ForwardComputeOperation fop = new MinForwardByAxisOperation(this, axis, this.forwardComputeOperation);
+            StridedStorage value = StridedStorage.allocate(this.numRows(), 1);
+            MinForwardByAxisOperation fop = new MinForwardByAxisOperation(this, axis, this.forwardComputeOperation);
 
-            double[][] gradient = null;
+            StridedStorage gradient = null;
             BackwardComputeOperation bop = null;
 
             if (requiresGradient) {
-                gradient = new double[this.numRows()][1];
-                bop = new MinBackwardByAxisOperation(this, axis, this.backwardComputeOperation);
+                gradient = StridedStorage.allocate(this.numRows(), 1);
+                bop = new MinBackwardByAxisOperation(this, axis, fop.getLocations(), this.backwardComputeOperation);
             }
 
             return new Matrix(value, gradient, requiresGradient, fop, bop);
@@ -361,27 +377,162 @@ public class Matrix extends AbstractMatrix {
     }
 
     public Matrix softmax() {
-        Matrix maxVal = max();
-        Matrix shifted = sub(maxVal);
-        Matrix shiftedExp = shifted.exp();
-        Matrix sum = shiftedExp.sum();
-        return shiftedExp.div(sum.add(create(EPSILON)));
+        return softmaxAlong(AxisGroups.ALL);
     }
 
+    /**
+     * Softmax across a given axis, 0 normalizes every column and 1 normalizes every row.
+     */
     public Matrix softmax(int axis) {
-        Matrix maxVal = max(axis);
-        Matrix shifted = sub(maxVal);
-        Matrix shiftedExp = shifted.exp();
-        Matrix sum = shiftedExp.sum(axis);
-        return shiftedExp.div(sum.add(create(EPSILON)));
+        if (axis != 0 && axis !=1) {
+            throw new IllegalArgumentException("Axis must be either 0 for rows or 1 for columns. Found: " + axis);
+        }
+        return softmaxAlong(axis);
+    }
+
+    private Matrix softmaxAlong(int axis) {
+        final boolean requiresGradient = recordsGradient(this.requiresGradient);
+        StridedStorage value = StridedStorage.allocate(this.numRows(), this.numCols());
+        ForwardComputeOperation fop = new SoftmaxForwardOperation(this, axis, this.forwardComputeOperation);
+
+        StridedStorage gradient = null;
+        BackwardComputeOperation bop = null;
+        if (requiresGradient) {
+            gradient = StridedStorage.allocate(this.numRows(), this.numCols());
+            bop = new SoftmaxBackwardOperation(this, axis, this.backwardComputeOperation);
+        }
+
+        return new Matrix(value, gradient, requiresGradient, fop, bop);
     }
 
     public Matrix layerNorm() {
-        return sub(mean()).div(variance().add(create(EPSILON)).sqrt());
+        return layerNormAlong(AxisGroups.ALL);
     }
 
+    /**
+     * Layer normalization across a given axis, 0 normalizes every column and 1 normalizes every row.
+     */
     public Matrix layerNorm(int axis) {
-        return sub(mean(axis)).div(variance(axis).add(create(EPSILON)).sqrt());
+        if (axis != 0 && axis !=1) {
+            throw new IllegalArgumentException("Axis must be either 0 for rows or 1 for columns. Found: " + axis);
+        }
+        return layerNormAlong(axis);
+    }
+
+    /**
+     * Layer normalization across a given axis followed by a learnable elementwise gain and bias, each broadcast
+     * along the axis, e.g. of shape (1, numCols) for axis 1.
+     */
+    public Matrix layerNorm(int axis, Matrix gain, Matrix bias) {
+        return layerNorm(axis).mul(gain).add(bias);
+    }
+
+    private Matrix layerNormAlong(int axis) {
+        final boolean requiresGradient = recordsGradient(this.requiresGradient);
+        StridedStorage value = StridedStorage.allocate(this.numRows(), this.numCols());
+        LayerNormForwardOperation fop = new LayerNormForwardOperation(this, axis, this.forwardComputeOperation);
+
+        StridedStorage gradient = null;
+        BackwardComputeOperation bop = null;
+        if (requiresGradient) {
+            gradient = StridedStorage.allocate(this.numRows(), this.numCols());
+            bop = new LayerNormBackwardOperation(this, axis, fop, this.backwardComputeOperation);
+        }
+
+        return new Matrix(value, gradient, requiresGradient, fop, bop);
+    }
+
+    /* Matrix loss methods start here */
+    /**
+     * Mean cross entropy of the softmax of every row of this matrix of logits against the class index of the row,
+     * computed without materializing the softmax. Targets is a column of class indices and gets no gradient.
+     */
+    public Matrix softmaxCrossEntropy(Matrix targets) {
+        final boolean requiresGradient = recordsGradient(this.requiresGradient);
+        StridedStorage value = StridedStorage.allocate(1, 1);
+        SoftmaxCrossEntropyForwardOperation fop = new SoftmaxCrossEntropyForwardOperation(this, targets, this.forwardComputeOperation, targets.forwardComputeOperation);
+
+        StridedStorage gradient = null;
+        BackwardComputeOperation bop = null;
+        if (requiresGradient) {
+            gradient = StridedStorage.allocate(1, 1);
+            bop = new SoftmaxCrossEntropyBackwardOperation(this, targets, fop, this.backwardComputeOperation);
+        }
+
+        return new Matrix(value, gradient, requiresGradient, fop, bop);
+    }
+
+    public Matrix softmaxCrossEntropy(int... targets) {
+        if (targets.length != this.numRows()) {
+            throw new IllegalArgumentException("Expected one target per row, " + this.numRows() + ", found: " + targets.length);
+        }
+        final Matrix targetMatrix = create(targets.length, 1);
+        for (int i = 0; i < targets.length; i++) {
+            targetMatrix.setValue(i, 0, targets[i]);
+        }
+        return softmaxCrossEntropy(targetMatrix);
+    }
+
+    /**
+     * Mean binary cross entropy of the sigmoid of this matrix of logits against targets of the same shape, computed
+     * from the logits so that it stays finite for large logits. Targets get no gradient.
+     */
+    public Matrix binaryCrossEntropyWithLogits(Matrix targets) {
+        final boolean requiresGradient = recordsGradient(this.requiresGradient);
+        StridedStorage value = StridedStorage.allocate(1, 1);
+        ForwardComputeOperation fop = new BinaryCrossEntropyWithLogitsForwardOperation(this, targets, this.forwardComputeOperation, targets.forwardComputeOperation);
+
+        StridedStorage gradient = null;
+        BackwardComputeOperation bop = null;
+        if (requiresGradient) {
+            gradient = StridedStorage.allocate(1, 1);
+            bop = new BinaryCrossEntropyWithLogitsBackwardOperation(this, targets, this.backwardComputeOperation);
+        }
+
+        return new Matrix(value, gradient, requiresGradient, fop, bop);
+    }
+
+    /**
+     * Mean squared error against a target of the same shape.
+     */
+    public Matrix mse(Matrix target) {
+        return meanLoss(target, FunctionRegistry.SQUARED_ERROR, FunctionRegistry.SQUARED_ERROR_GRAD);
+    }
+
+    /**
+     * Mean absolute error against a target of the same shape.
+     */
+    public Matrix mae(Matrix target) {
+        return meanLoss(target, FunctionRegistry.ABSOLUTE_ERROR, FunctionRegistry.ABSOLUTE_ERROR_GRAD);
+    }
+
+    public Matrix huber(Matrix target) {
+        return huber(target, 1);
+    }
+
+    /**
+     * Mean Huber loss against a target of the same shape, quadratic for residuals up to delta and linear beyond.
+     */
+    public Matrix huber(Matrix target, double delta) {
+        if (!(delta > 0)) {
+            throw new IllegalArgumentException("Delta must be positive, found: " + delta);
+        }
+        return meanLoss(target, FunctionRegistry.huber(delta), FunctionRegistry.huberGrad(delta));
+    }
+
+    private Matrix meanLoss(Matrix target, FunctionRegistry.UnaryCalcFunction residualLoss, FunctionRegistry.UnaryCalcFunction residualGradient) {
+        final boolean requiresGradient = recordsGradient(this.requiresGradient || target.requiresGradient);
+        StridedStorage value = StridedStorage.allocate(1, 1);
+        ForwardComputeOperation fop = new MeanLossForwardOperation(this, target, residualLoss, this.forwardComputeOperation, target.forwardComputeOperation);
+
+        StridedStorage gradient = null;
+        BackwardComputeOperation bop = null;
+        if (requiresGradient) {
+            gradient = StridedStorage.allocate(1, 1);
+            bop = new MeanLossBackwardOperation(this, target, residualGradient, this.backwardComputeOperation, target.backwardComputeOperation);
+        }
+
+        return new Matrix(value, gradient, requiresGradient, fop, bop);
     }
 
     /* Matrix training dropout methods start here */
@@ -485,24 +636,57 @@ public class Matrix extends AbstractMatrix {
     }
 
     public void zeroGrad() {
+        if(InferenceMode.isEnabled()) {
+            return;
+        }
         if(null!=forwardComputeOperation) {
             forwardComputeOperation.zeroGrad();
         }
     }
 
     public void backward() {
-        for (int row = 0; row < numRows(); row++) {
-            for (int col = 0; col < numCols(); col++) {
-                setGradient(row, col, 1);
+        if(!requiresGradient) {
+            throw new IllegalArgumentException("This matrix does not require gradients, cannot run backward");
+        }
+        StridedStorage gradient = getGradientStorage();
+        if (null != gradient) {
+            gradient.fill(1);
+        } else {
+            for (int row = 0; row < numRows(); row++) {
+                for (int col = 0; col < numCols(); col++) {
+                    setGradient(row, col, 1);
+                }
             }
         }
         if(null!=backwardComputeOperation) {
             backwardComputeOperation.backward();
         }
     }
+    /**
+     * Runs every chain of elementwise operations below this matrix, such as {@code x.matmul(w).add(b).swish()}, as a
+     * single pass over memory forward and backward instead of one pass per operation.
+     * Results inside a chain are no longer computed, so this assumes that nothing outside the graph below this matrix
+     * uses them, unless they are retained. Call this before {@link #planMemory(Matrix...)}.
+     * @param retained intermediate results whose values and gradients should stay readable.
+     */
+    public void fuseElementwise(Matrix... retained) {
+        ElementWiseFusion.fuse(this, retained);
+    }
+
+    /**
+     * Lets the intermediate results below this matrix share buffers whenever their lifetimes in a forward and backward
+     * pass do not overlap, so the graph needs about as much memory as is live at any one time.
+     * Afterwards only this matrix, the retained ones and matrices not computed by the graph keep their values and
+     * gradients once a pass is done, intermediate values hold nothing useful until the next forward, and the graph
+     * runs one operation at a time (each operation still uses all threads).
+     * @param retained intermediate results whose values and gradients should stay readable.
+     */
+    public void planMemory(Matrix... retained) {
+        MemoryPlanner.plan(this, retained);
+    }
     /*Matrix specific static methods start*/
 
-    protected Matrix(double[][] value, double[][] gradient, boolean requiresGradient, ForwardComputeOperation forwardComputeOperation, BackwardComputeOperation backwardComputeOperation) {
+    protected Matrix(StridedStorage value, StridedStorage gradient, boolean requiresGradient, ForwardComputeOperation forwardComputeOperation, BackwardComputeOperation backwardComputeOperation) {
         super(value, gradient, requiresGradient, forwardComputeOperation, backwardComputeOperation);
         if(null!=forwardComputeOperation) {
             forwardComputeOperation.setResult(this);
@@ -521,6 +705,10 @@ public class Matrix extends AbstractMatrix {
         super(null, null, requiresGradient, forwardComputeOperation, backwardComputeOperation);
     }
 
+    private Matrix(BufferStorage value, StridedStorage gradient, BufferStorage bufferGradient, boolean requiresGradient) {
+        super(value, gradient, bufferGradient, requiresGradient);
+    }
+
     public static Matrix create(double val) {
         return create(val, false);
     }
@@ -542,31 +730,105 @@ public class Matrix extends AbstractMatrix {
     }
 
     public static Matrix create(int rows, int columns, Supplier<Double> valueSupplier, boolean trainable) {
+        return create(rows, columns, valueSupplier, trainable, Precision.FLOAT64);
+    }
+
+    /**
+     * Creates a matrix whose values are kept in the given precision, e.g. FLOAT32 to halve the memory of a parameter.
+     * Values are widened to double when read, so operations on the matrix compute and accumulate in double precision,
+     * and its gradient is kept in double precision.
+     */
+    public static Matrix create(int rows, int columns, Supplier<Double> valueSupplier, boolean trainable, Precision precision) {
         if (rows <= 0) {
             throw new IllegalArgumentException("A matrix cannot have 0 or less than 0 rows.");
         } if (columns <= 0) {
             throw new IllegalArgumentException("A matrix cannot have 0 or less than 0 columns.");
-        } double[][] value = new double[rows][columns];
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < columns; j++) {
-                value[i][j] = valueSupplier.get();
+        } if (precision != Precision.FLOAT64) {
+            BufferStorage value = BufferStorage.allocate(precision, rows, columns);
+            ElementBuffer buffer = value.buffer();
+            for (long i = 0; i < buffer.length(); i++) {
+                buffer.set(i, valueSupplier.get());
             }
+            return new Matrix(value, trainable ? StridedStorage.allocate(rows, columns) : null, null, trainable);
+        } StridedStorage value = StridedStorage.allocate(rows, columns);
+        double[] data = value.data();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = valueSupplier.get();
         }
-        double[][] gradient = null;
+        StridedStorage gradient = null;
         if (trainable) {
-            gradient = new double[rows][columns];
-            for (int i = 0; i < rows; i++) {
-                for (int j = 0; j < columns; j++) {
-                    gradient[i][j] = 0;
-                }
-            }
+            gradient = StridedStorage.allocate(rows, columns);
         }
         return new Matrix(value, gradient, trainable, null, null);
     }
 
+    public static Matrix createOffHeap(OffHeapArena arena, int rows, int columns, Supplier<Double> valueSupplier, boolean trainable) {
+        return createOffHeap(arena, rows, columns, valueSupplier, trainable, Precision.FLOAT64);
+    }
+
+    /**
+     * Creates a matrix whose value, and gradient if trainable, live outside the Java heap in memory owned by the arena,
+     * which keeps very large parameters away from the garbage collector. The gradient is kept in double precision.
+     * The matrix can be used like any other until the arena is closed.
+     */
+    public static Matrix createOffHeap(OffHeapArena arena, int rows, int columns, Supplier<Double> valueSupplier, boolean trainable, Precision precision) {
+        if (rows <= 0) {
+            throw new IllegalArgumentException("A matrix cannot have 0 or less than 0 rows.");
+        } if (columns <= 0) {
+            throw new IllegalArgumentException("A matrix cannot have 0 or less than 0 columns.");
+        }
+        final long length = (long) rows * columns;
+        BufferStorage value = BufferStorage.of(arena.allocate(precision, length), rows, columns);
+        ElementBuffer buffer = value.buffer();
+        for (long i = 0; i < length; i++) {
+            buffer.set(i, valueSupplier.get());
+        }
+        BufferStorage gradient = trainable ? BufferStorage.of(arena.allocate(Precision.FLOAT64, length), rows, columns) : null;
+        return new Matrix(value, null, gradient, trainable);
+    }
+
+    /**
+     * Creates a matrix whose value is the content of a file, mapped into memory by the arena, so it is paged in as it is
+     * read instead of being loaded up front and can be larger than RAM. Writes, including optimizer updates, go
+     * straight to the file. An empty or missing file is created filled with zeros, otherwise it must hold exactly
+     * rows x columns values of the precision, row by row, little endian. The gradient of a trainable matrix is kept
+     * off the heap in the arena, not in the file.
+     */
+    public static Matrix createMapped(OffHeapArena arena, Path file, int rows, int columns, boolean trainable, Precision precision) {
+        if (rows <= 0) {
+            throw new IllegalArgumentException("A matrix cannot have 0 or less than 0 rows.");
+        } if (columns <= 0) {
+            throw new IllegalArgumentException("A matrix cannot have 0 or less than 0 columns.");
+        }
+        final long length = (long) rows * columns;
+        BufferStorage value = BufferStorage.of(arena.map(file, precision, length), rows, columns);
+        BufferStorage gradient = trainable ? BufferStorage.of(arena.allocate(Precision.FLOAT64, length), rows, columns) : null;
+        return new Matrix(value, null, gradient, trainable);
+    }
+
+    /**
+     * Creates a sparse matrix from COO triplets: element (rows[i], columns[i]) is values[i], in any order, and values
+     * given for the same element are added up. Every other element is zero. See {@link SparseMatrix}.
+     */
+    public static SparseMatrix createSparse(int rows, int columns, int[] rowIndices, int[] columnIndices, double[] values, boolean trainable) {
+        return SparseMatrix.fromCoordinates(rows, columns, rowIndices, columnIndices, values, trainable);
+    }
+
+    /**
+     * Creates a sparse matrix from CSR arrays, which it keeps without copying: the non-zeros of row r are
+     * values[rowPointers[r] .. rowPointers[r + 1]) at columns columnIndices[...], increasing within every row.
+     */
+    public static SparseMatrix createSparseCsr(int rows, int columns, int[] rowPointers, int[] columnIndices, double[] values, boolean trainable) {
+        return new SparseMatrix(rows, columns, rowPointers, columnIndices, values, trainable);
+    }
+
     public static Matrix createXavierGlorotInitializedMatrix(int rows, int columns, boolean trainable) {
+        return createXavierGlorotInitializedMatrix(rows, columns, trainable, Precision.FLOAT64);
+    }
+
+    public static Matrix createXavierGlorotInitializedMatrix(int rows, int columns, boolean trainable, Precision precision) {
         final double scale = Math.sqrt(6.0 / (rows + columns));
-        return create(rows, columns, () -> ((random.nextDouble() * 2 - 1) * scale), trainable);
+        return create(rows, columns, () -> ((random.nextDouble() * 2 - 1) * scale), trainable, precision);
     }
 
     /*Matrix specific static methods end*/
@@ -1,11 +1,5 @@
 package com.ashutoshwad.utils.jautograd;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-
 public class MatrixMultiplicationBackwardOperation extends BackwardComputeOperation {
     MatrixMultiplicationBackwardOperation(Matrix left,
                                        Matrix right,
@@ -16,90 +10,178 @@ public class MatrixMultiplicationBackwardOperation extends BackwardComputeOperat
     @Override
     protected void perform() {
         ExecutorFactory.Details details = ExecutorFactory.getDetails();
-        int numThreads = details.numThreads();
-        ExecutorService executorService = details.executorService();
+        final Matrix left = getLeft();
+        final Matrix right = getRight();
+        final Matrix result = getResult();
+        //Each side is one product of the same size as the forward one
+        int numTasks = CostModel.matmulTasks(result.numRows(), result.numCols(), left.numCols(), details.numThreads());
+        if (performBlocked(details, numTasks)) {
+            return;
+        }
 
-        List<Future<?>> futures = new ArrayList<>(numThreads);
+        //The two sides run one after the other, so they may write into the same buffer
+        if (left.getRequiresGradient()) {
+            final GradientAccumulator accumulator = GradientAccumulator.create(left, RangePartitioner.numChunks(numTasks), false);
+            RangePartitioner.runLong(details, left.numElements(), numTasks,
+                    new MatrixMultiplicationBackwardOperation.WorkerJobLeft(left, right, result, accumulator));
+            accumulator.merge();
+        }
+        if (right.getRequiresGradient()) {
+            final GradientAccumulator accumulator = GradientAccumulator.create(right, RangePartitioner.numChunks(numTasks), false);
+            RangePartitioner.runLong(details, right.numElements(), numTasks,
+                    new MatrixMultiplicationBackwardOperation.WorkerJobRight(left, right, result, accumulator));
+            accumulator.merge();
+        }
+    }
 
+    /**
+     * Computes dLeft += dResult x right^T and dRight += left^T x dResult with the blocked GEMM kernel, the transposes
+     * being plain stride swaps. Returns false without doing anything if the operands are too small or not backed by
+     * strided storage in some precision.
+     */
+    private boolean performBlocked(ExecutorFactory.Details details, int numTasks) {
         final Matrix left = getLeft();
         final Matrix right = getRight();
         final Matrix result = getResult();
-        for (int i = 0; i < numThreads; i++) {
-            if(left.getRequiresGradient()) {
-                futures.add(executorService.submit(new MatrixMultiplicationBackwardOperation.WorkerJobLeft(left, right, result, i, numThreads)));
-            }
-            if(right.getRequiresGradient()) {
-                futures.add(executorService.submit(new MatrixMultiplicationBackwardOperation.WorkerJobRight(left, right, result, i, numThreads)));
-            }
+        final ElementWindow l = left.getValueWindow();
+        final ElementWindow r = right.getValueWindow();
+        final StridedStorage oGrad = result.getGradientStorage();
+        final StridedStorage lGrad = left.getRequiresGradient() ? left.getGradientStorage() : null;
+        final StridedStorage rGrad = right.getRequiresGradient() ? right.getGradientStorage() : null;
+        if (null == l || null == r || null == oGrad
+                || (left.getRequiresGradient() && (null == lGrad || lGrad.isOverlapping()))
+                || (right.getRequiresGradient() && (null == rGrad || rGrad.isOverlapping()))
+                || !GemmKernel.isWorthBlocking(result.numRows(), result.numCols(), left.numCols())) {
+            return false;
         }
-
-        ExecutorUtils.awaitFutures(futures);
+        //One product after the other, so both gradients may land in one buffer
+        if (null != lGrad) {
+            GemmKernel.multiplyRowBands(details, numTasks, oGrad, r.transpose(), lGrad, true);
+        }
+        if (null != rGrad) {
+            GemmKernel.multiplyRowBands(details, numTasks, l.transpose(), oGrad, rGrad, true);
+        }
+        return true;
     }
 
-    private class WorkerJobLeft implements Runnable {
+    private class WorkerJobLeft implements RangePartitioner.LongRangeJob {
         private final Matrix left;
         private final Matrix right;
         private final Matrix result;
-        private final int start;
-        private final int stride;
+        private final GradientAccumulator accumulator;
 
-        public WorkerJobLeft(Matrix left, Matrix right, Matrix result, int start, int stride) {
+        public WorkerJobLeft(Matrix left, Matrix right, Matrix result, GradientAccumulator accumulator) {
             this.left = left;
             this.right = right;
             this.result = result;
-            this.start = start;
-            this.stride = stride;
+            this.accumulator = accumulator;
         }
 
         @Override
-        public void run() {
-            final int numRows = left.numRows();
+        public void run(int chunk, long from, long to) {
             final int numCols = left.numCols();
-            final int totalElements = numRows * numCols;
-            for (int i = start; i < totalElements; i+=stride) {
-                final int lRow = i / numCols;
-                final int lCol = i % numCols;
+
+            final StridedStorage r = right.getValueStorage();
+            final StridedStorage oGrad = result.getGradientStorage();
+            final StridedStorage lGrad = left.getGradientStorage();
+            if (accumulator.isDirect() && null != r && null != oGrad) {
+                final double[] rData = r.data();
+                final double[] oGradData = oGrad.data();
+                final double[] lGradData = lGrad.data();
+                final int resCols = result.numCols();
+                for (long i = from; i < to; ) {
+                    final int lRow = (int) (i / numCols);
+                    final int colFrom = (int) (i - (long) lRow * numCols);
+                    final int colTo = (int) Math.min(numCols, colFrom + (to - i));
+                    final int oStart = oGrad.offset() + lRow * oGrad.rowStride();
+                    int lGradIndex = lGrad.offset() + lRow * lGrad.rowStride() + colFrom * lGrad.colStride();
+                    for (int lCol = colFrom; lCol < colTo; lCol++, lGradIndex += lGrad.colStride()) {
+                        int oIndex = oStart;
+                        int rIndex = r.offset() + lCol * r.rowStride();
+                        double temp = 0;
+                        for (int resCol = 0; resCol < resCols; resCol++) {
+                            temp += oGradData[oIndex] * rData[rIndex];
+                            oIndex += oGrad.colStride();
+                            rIndex += r.colStride();
+                        }
+                        lGradData[lGradIndex] += temp;
+                    }
+                    i += colTo - colFrom;
+                }
+                return;
+            }
+
+            for (long i = from; i < to; i++) {
+                final int lRow = (int) (i / numCols);
+                final int lCol = (int) (i % numCols);
 
                 double temp = 0;
                 //lRow is selected output row and lCol is selected weight row
                 for (int resCol = 0; resCol < result.numCols(); resCol++) {
                     temp += result.getGradient(lRow, resCol) * right.getValue(lCol, resCol);
                 }
-                left.accumulateGradient(lRow, lCol, temp);
+                accumulator.add(chunk, lRow, lCol, temp);
             }
         }
     }
 
-    private class WorkerJobRight implements Runnable {
+    private class WorkerJobRight implements RangePartitioner.LongRangeJob {
         private final Matrix left;
         private final Matrix right;
         private final Matrix result;
-        private final int start;
-        private final int stride;
+        private final GradientAccumulator accumulator;
 
-        public WorkerJobRight(Matrix left, Matrix right, Matrix result, int start, int stride) {
+        public WorkerJobRight(Matrix left, Matrix right, Matrix result, GradientAccumulator accumulator) {
             this.left = left;
             this.right = right;
             this.result = result;
-            this.start = start;
-            this.stride = stride;
+            this.accumulator = accumulator;
         }
 
         @Override
-        public void run() {
-            final int numRows = right.numRows();
+        public void run(int chunk, long from, long to) {
             final int numCols = right.numCols();
-            final int totalElements = numRows * numCols;
-            for (int i = start; i < totalElements; i+=stride) {
-                final int rRow = i / numCols;
-                final int rCol = i % numCols;
+
+            final StridedStorage l = left.getValueStorage();
+            final StridedStorage oGrad = result.getGradientStorage();
+            final StridedStorage rGrad = right.getGradientStorage();
+            if (accumulator.isDirect() && null != l && null != oGrad) {
+                final double[] lData = l.data();
+                final double[] oGradData = oGrad.data();
+                final double[] rGradData = rGrad.data();
+                final int resRows = result.numRows();
+                for (long i = from; i < to; ) {
+                    final int rRow = (int) (i / numCols);
+                    final int colFrom = (int) (i - (long) rRow * numCols);
+                    final int colTo = (int) Math.min(numCols, colFrom + (to - i));
+                    final int lStart = l.offset() + rRow * l.colStride();
+                    int rGradIndex = rGrad.offset() + rRow * rGrad.rowStride() + colFrom * rGrad.colStride();
+                    for (int rCol = colFrom; rCol < colTo; rCol++, rGradIndex += rGrad.colStride()) {
+                        int oIndex = oGrad.offset() + rCol * oGrad.colStride();
+                        int lIndex = lStart;
+                        double temp = 0;
+                        for (int resRow = 0; resRow < resRows; resRow++) {
+                            temp += oGradData[oIndex] * lData[lIndex];
+                            oIndex += oGrad.rowStride();
+                            lIndex += l.rowStride();
+                        }
+                        rGradData[rGradIndex] += temp;
+                    }
+                    i += colTo - colFrom;
+                }
+                return;
+            }
+
+            for (long i = from; i < to; i++) {
+                final int rRow = (int) (i / numCols);
+                final int rCol = (int) (i % numCols);
 
                 double temp = 0;
                 //rRow is selected input column and rCol is selected output column
                 for (int resRow = 0; resRow < result.numRows(); resRow++) {
                     temp += result.getGradient(resRow, rCol) * left.getValue(resRow, rRow);
                 }
-                right.accumulateGradient(rRow, rCol, temp);
+                accumulator.add(chunk, rRow, rCol, temp);
             }
         }
     }
@@ -1,11 +1,5 @@
 package com.ashutoshwad.utils.jautograd;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-
 class MatrixMultiplicationForwardOperation extends ForwardComputeOperation {
     MatrixMultiplicationForwardOperation(Matrix left,
                                       Matrix right,
@@ -16,38 +10,67 @@ class MatrixMultiplicationForwardOperation extends ForwardComputeOperation {
     @Override
     protected void perform() {
         ExecutorFactory.Details details = ExecutorFactory.getDetails();
-        int numThreads = details.numThreads();
-        ExecutorService executorService = details.executorService();
+        int numTasks = CostModel.matmulTasks(getResult().numRows(), getResult().numCols(), getLeft().numCols(), details.numThreads());
 
-        List<Future<?>> futures = new ArrayList<>(numThreads);
-        for (int i = 0; i < numThreads; i++) {
-            futures.add(executorService.submit(new MatrixMultiplicationForwardOperation.WorkerJob(getLeft(), getRight(), getResult(), i, numThreads)));
+        final ElementWindow l = getLeft().getValueWindow();
+        final ElementWindow r = getRight().getValueWindow();
+        final StridedStorage o = getResult().getValueStorage();
+        final int numRows = getResult().numRows();
+        if (null != l && null != r && null != o && GemmKernel.isWorthBlocking(numRows, getResult().numCols(), getLeft().numCols())) {
+            GemmKernel.multiplyRowBands(details, numTasks, l, r, o, false);
+            return;
         }
-        ExecutorUtils.awaitFutures(futures);
+
+        RangePartitioner.run(details, numRows * getResult().numCols(), numTasks,
+                new MatrixMultiplicationForwardOperation.WorkerJob(getLeft(), getRight(), getResult()));
     }
 
-    private class WorkerJob implements Runnable {
+    private class WorkerJob implements RangePartitioner.RangeJob {
         private final Matrix left;
         private final Matrix right;
         private final Matrix result;
-        private final int start;
-        private final int stride;
 
-        public WorkerJob(Matrix left, Matrix right, Matrix result, int start, int stride) {
+        public WorkerJob(Matrix left, Matrix right, Matrix result) {
             this.left = left;
             this.right = right;
             this.result = result;
-            this.start = start;
-            this.stride = stride;
         }
 
         @Override
-        public void run() {
-            int numRows = result.numRows();
+        public void run(int chunk, int from, int to) {
             final int numCols = result.numCols();
-            final int totalElements = numRows * numCols;
 
-            for (int i = start; i < totalElements; i+=stride) {
+            final StridedStorage l = left.getValueStorage();
+            final StridedStorage r = right.getValueStorage();
+            final StridedStorage o = result.getValueStorage();
+            if (null != l && null != r && null != o) {
+                final double[] lData = l.data();
+                final double[] rData = r.data();
+                final double[] oData = o.data();
+                final int hiddenDimension = left.numCols();
+                for (int i = from; i < to; ) {
+                    final int row = i / numCols;
+                    final int colFrom = i - row * numCols;
+                    final int colTo = Math.min(numCols, colFrom + (to - i));
+                    final int lStart = l.offset() + row * l.rowStride();
+                    int oIndex = o.offset() + row * o.rowStride() + colFrom * o.colStride();
+                    for (int column = colFrom; column < colTo; column++, oIndex += o.colStride()) {
+                        int lIndex = lStart;
+                        int rIndex = r.offset() + column * r.colStride();
+                        double accumulator = 0;
+                        for (int hIndex = 0; hIndex < hiddenDimension; hIndex++) {
+                            accumulator += lData[lIndex] * rData[rIndex];
+                            lIndex += l.colStride();
+                            rIndex += r.rowStride();
+                        }
+                        oData[oIndex] = accumulator;
+                    }
+                    i += colTo - colFrom;
+                }
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
                 int row = i / numCols;
                 int column = i % numCols;
 
@@ -3,50 +3,26 @@ package com.ashutoshwad.utils.jautograd;
 class MaxForwardByAxisOperation extends ForwardComputeOperation {
     private final Matrix source;
     private final int axis;
+    private ExtremeLocations locations;
     public MaxForwardByAxisOperation(Matrix source, int axis, ForwardComputeOperation... forwardComputeOperations) {
-        super(null, null, forwardComputeOperations);
+        super(source, null, forwardComputeOperations);
         this.source = source;
         this.axis = axis;
     }
 
-    @Override
-    protected void perform() {
-        if(axis == 0) {
-            maxAcrossRows();
-        } else {
-            maxAcrossCols();
-        }
-    }
-
-    private void maxAcrossRows() {
-        Matrix result = getResult();
-        for (int col = 0; col < result.numCols(); col++) {
-            double max = 0;
-            for (int row = 0; row < source.numRows(); row++) {
-                double sourceVal = source.getValue(row, col);
-                if(row == 0) {
-                    max = sourceVal;
-                } else {
-                    max = Math.max(max, sourceVal);
-                }
-            }
-            result.setValue(0, col, max);
+    /**
+     * @return where the max of every group sits in the source as of the last forward pass, which from now on every
+     * forward pass records.
+     */
+    ExtremeLocations getLocations() {
+        if (null == locations) {
+            locations = new ExtremeLocations(AxisGroups.of(source, axis).numGroups());
         }
+        return locations;
     }
 
-    private void maxAcrossCols() {
-        Matrix result = getResult();
-        for (int row = 0; row < result.numRows(); row++) {
-            double max = 0;
-            for (int col = 0; col < source.numCols(); col++) {
-                double sourceVal = source.getValue(row, col);
-                if(col == 0) {
-                    max = sourceVal;
-                } else {
-                    max = Math.max(max, sourceVal);
-                }
-            }
-            result.setValue(row, 0, max);
-        }
+    @Override
+    protected void perform() {
+        Reductions.reduce(source, axis, Reductions.Kind.MAX, getResult(), locations);
     }
 }
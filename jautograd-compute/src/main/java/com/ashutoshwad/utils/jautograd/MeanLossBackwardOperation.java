@@ -0,0 +1,97 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * Gradient of {@link MeanLossForwardOperation}. The prediction gets {@code loss'(residual) / n} scaled by the gradient
+ * of the loss and the target, when it requires one, gets the negation.
+ */
+public class MeanLossBackwardOperation extends BackwardComputeOperation {
+    private final FunctionRegistry.UnaryCalcFunction residualGradient;
+
+    MeanLossBackwardOperation(Matrix prediction, Matrix target, FunctionRegistry.UnaryCalcFunction residualGradient,
+                              BackwardComputeOperation... backwardComputeOperations) {
+        super(prediction, target, backwardComputeOperations);
+        this.residualGradient = residualGradient;
+    }
+
+    @Override
+    protected void perform() {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        final Matrix prediction = getLeft();
+        final Matrix target = getRight();
+        final int totalElements = prediction.numRows() * prediction.numCols();
+        final int numTasks = CostModel.elementwiseTasks(totalElements, 1, 4, details.numThreads());
+        final int numChunks = RangePartitioner.numChunks(numTasks);
+        final GradientAccumulator predictionAccumulator = prediction.requiresGradient ? GradientAccumulator.create(prediction, numChunks, false) : null;
+        //A different window over the buffer the prediction writes to directly could hit the same cells from another worker
+        final GradientAccumulator targetAccumulator = target.requiresGradient ? GradientAccumulator.create(target, numChunks, prediction, predictionAccumulator) : null;
+        final double scale = getResult().getGradient(0, 0) / totalElements;
+        RangePartitioner.run(details, totalElements, numTasks,
+                new MeanLossBackwardOperation.WorkerJob(prediction, target, scale, predictionAccumulator, targetAccumulator));
+        if (null != predictionAccumulator) {
+            predictionAccumulator.merge();
+        }
+        if (null != targetAccumulator) {
+            targetAccumulator.merge();
+        }
+    }
+
+    private class WorkerJob implements RangePartitioner.RangeJob {
+        private final Matrix prediction;
+        private final Matrix target;
+        private final double scale;
+        private final GradientAccumulator predictionAccumulator;
+        private final GradientAccumulator targetAccumulator;
+
+        public WorkerJob(Matrix prediction, Matrix target, double scale, GradientAccumulator predictionAccumulator, GradientAccumulator targetAccumulator) {
+            this.prediction = prediction;
+            this.target = target;
+            this.scale = scale;
+            this.predictionAccumulator = predictionAccumulator;
+            this.targetAccumulator = targetAccumulator;
+        }
+
+        @Override
+        public void run(int chunk, int from, int to) {
+            final int numCols = prediction.numCols();
+            final StridedStorage p = prediction.getValueStorage();
+            final StridedStorage t = target.getValueStorage();
+            final StridedStorage pGrad = (null != predictionAccumulator) ? prediction.getGradientStorage() : null;
+            final StridedStorage tGrad = (null != targetAccumulator) ? target.getGradientStorage() : null;
+            final boolean directGradients = (null == predictionAccumulator || predictionAccumulator.isDirect())
+                    && (null == targetAccumulator || targetAccumulator.isDirect());
+            if (null != p && null != t && directGradients) {
+                final double[] pData = p.data();
+                final double[] tData = t.data();
+                for (int i = from; i < to; ) {
+                    final int row = i / numCols;
+                    final int colFrom = i - row * numCols;
+                    final int colTo = Math.min(numCols, colFrom + (to - i));
+                    for (int column = colFrom; column < colTo; column++) {
+                        final double gradient = scale * residualGradient.result(pData[p.offset() + row * p.rowStride() + column * p.colStride()]
+                                - tData[t.offset() + row * t.rowStride() + column * t.colStride()]);
+                        if (null != pGrad) {
+                            pGrad.data()[pGrad.offset() + row * pGrad.rowStride() + column * pGrad.colStride()] += gradient;
+                        }
+                        if (null != tGrad) {
+                            tGrad.data()[tGrad.offset() + row * tGrad.rowStride() + column * tGrad.colStride()] -= gradient;
+                        }
+                    }
+                    i += colTo - colFrom;
+                }
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                final int row = i / numCols;
+                final int column = i % numCols;
+                final double gradient = scale * residualGradient.result(prediction.getValue(row, column) - target.getValue(row, column));
+                if (null != predictionAccumulator) {
+                    predictionAccumulator.add(chunk, row, column, gradient);
+                }
+                if (null != targetAccumulator) {
+                    targetAccumulator.add(chunk, row, column, -gradient);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * Mean over all elements of a loss of the residual {@code prediction - target}, e.g. the squared error for MSE, in a
+ * single pass that produces a 1x1 result instead of a graph with a node per element.
+ */
+class MeanLossForwardOperation extends ForwardComputeOperation {
+    private final FunctionRegistry.UnaryCalcFunction residualLoss;
+
+    MeanLossForwardOperation(Matrix prediction, Matrix target, FunctionRegistry.UnaryCalcFunction residualLoss,
+                             ForwardComputeOperation... forwardComputeOperations) {
+        super(prediction, target, forwardComputeOperations);
+        if (target.numRows() != prediction.numRows() || target.numCols() != prediction.numCols()) {
+            throw new IllegalArgumentException("Target must have the shape of the prediction [" + prediction.numRows() + "," + prediction.numCols()
+                    + "], found: [" + target.numRows() + "," + target.numCols() + "]");
+        }
+        this.residualLoss = residualLoss;
+    }
+
+    @Override
+    protected void perform() {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        final Matrix prediction = getLeft();
+        final int totalElements = prediction.numRows() * prediction.numCols();
+        final int numTasks = CostModel.elementwiseTasks(totalElements, 1, 2, details.numThreads());
+        final double[] partials = new double[RangePartitioner.numChunks(numTasks)];
+        RangePartitioner.run(details, totalElements, numTasks, new MeanLossForwardOperation.WorkerJob(prediction, getRight(), partials));
+        double loss = 0;
+        for (double partial : partials) {
+            loss += partial;
+        }
+        getResult().setValue(0, 0, loss / totalElements);
+    }
+
+    private class WorkerJob implements RangePartitioner.RangeJob {
+        private final Matrix prediction;
+        private final Matrix target;
+        private final double[] partials;
+
+        public WorkerJob(Matrix prediction, Matrix target, double[] partials) {
+            this.prediction = prediction;
+            this.target = target;
+            this.partials = partials;
+        }
+
+        @Override
+        public void run(int chunk, int from, int to) {
+            final int numCols = prediction.numCols();
+            final StridedStorage p = prediction.getValueStorage();
+            final StridedStorage t = target.getValueStorage();
+            double loss = 0;
+            if (null != p && null != t) {
+                final double[] pData = p.data();
+                final double[] tData = t.data();
+                for (int i = from; i < to; ) {
+                    final int row = i / numCols;
+                    final int colFrom = i - row * numCols;
+                    final int colTo = Math.min(numCols, colFrom + (to - i));
+                    int pIndex = p.offset() + row * p.rowStride() + colFrom * p.colStride();
+                    int tIndex = t.offset() + row * t.rowStride() + colFrom * t.colStride();
+                    for (int column = colFrom; column < colTo; column++, pIndex += p.colStride(), tIndex += t.colStride()) {
+                        loss += residualLoss.result(pData[pIndex] - tData[tIndex]);
+                    }
+                    i += colTo - colFrom;
+                }
+            } else {
+                for (int i = from; i < to; i++) {
+                    final int row = i / numCols;
+                    final int column = i % numCols;
+                    loss += residualLoss.result(prediction.getValue(row, column) - target.getValue(row, column));
+                }
+            }
+            partials[chunk] = loss;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.ashutoshwad.utils.jautograd;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Lets the intermediate results of a graph share their buffers.
+ * A training step runs the forward plan of a root followed by its backward plan, which puts every operation at a
+ * fixed position of one timeline. A value is needed from the operation that computes it until the last operation,
+ * forward or backward, that reads it. A gradient is needed from the first backward operation that adds into it until
+ * the backward operation of its own matrix has read it. Buffers with lifetimes that do not overlap are placed in the
+ * same slab, best fit in order of first use, so a graph holds roughly the largest set of buffers that is ever live at
+ * once instead of all of them.
+ *
+ * Operands read through a view without strided storage are traced through the matrices the view is made of. Should
+ * that ever fail, every buffer that may sit behind the view is kept alive across the operation.
+ *
+ * Once planned, the values and gradients of intermediate results are only meaningful while the step uses them,
+ * gradients are cleared by the first operation that adds into them instead of by zeroGrad, and the plans of the root
+ * run serially, since sharing slabs orders operations in ways the parallel scheduler does not know about.
+ */
+final class MemoryPlanner {
+    /**
+     * @param bufferElements the number of elements the planned buffers had on their own.
+     * @param slabElements   the number of elements of the slabs they share now.
+     */
+    record Summary(int numBuffers, int numSlabs, long bufferElements, long slabElements) {}
+
+    private static final class Buffer {
+        private final Matrix owner;
+        private final int producedAt;
+        private final int size;
+        private int start;
+        private int end;
+        private int slab;
+
+        private Buffer(Matrix owner, int producedAt, int start) {
+            this.owner = owner;
+            this.producedAt = producedAt;
+            this.size = owner.numRows() * owner.numCols();
+            this.start = start;
+            this.end = start;
+        }
+
+        private void use(int position) {
+            if (start < 0) {
+                start = position;
+            }
+            end = Math.max(end, position);
+        }
+    }
+
+    private final Map<double[], Buffer> values = new IdentityHashMap<>();
+    private final Map<double[], Buffer> gradients = new IdentityHashMap<>();
+    private final List<Buffer> valueBuffers = new ArrayList<>();
+    private final List<Buffer> gradientBuffers = new ArrayList<>();
+
+    private MemoryPlanner() {
+    }
+
+    /**
+     * Places the intermediate results below root into shared slabs. The root and the retained matrices keep their
+     * own buffers.
+     */
+    public static Summary plan(Matrix root, Matrix... retained) {
+        final ForwardComputeOperation rootForward = root.forwardComputeOperation;
+        if (null == rootForward) {
+            return new Summary(0, 0, 0, 0);
+        }
+        final BackwardComputeOperation rootBackward = root.getRequiresGradient() ? root.backwardComputeOperation : null;
+        final ForwardComputeOperation[] forward = rootForward.getPlan().nodes();
+        final BackwardComputeOperation[] backward = (null == rootBackward) ? new BackwardComputeOperation[0] : rootBackward.getPlan().nodes();
+
+        final Map<double[], Boolean> kept = new IdentityHashMap<>();
+        keep(kept, root);
+        for (Matrix matrix : retained) {
+            keep(kept, matrix);
+        }
+
+        MemoryPlanner planner = new MemoryPlanner();
+        final Map<Matrix, Integer> producedAt = new IdentityHashMap<>();
+        for (int i = 0; i < forward.length; i++) {
+            final Matrix result = forward[i].getResult();
+            if (null == result) {
+                continue;
+            }
+            if (forward[i].isMemoryPlanned()) {
+                throw new IllegalArgumentException("The memory of this graph has already been planned");
+            }
+            producedAt.put(result, i);
+            planner.addResult(result, i, kept);
+        }
+
+        for (int i = 0; i < forward.length; i++) {
+            final FusedElementWiseChain chain = forward[i].getFusedChain();
+            if (null != chain) {
+                if (chain.isTail(forward[i])) {
+                    for (Matrix operand : chain.operands()) {
+                        planner.readValue(operand, i, i);
+                    }
+                }
+                continue;
+            }
+            planner.readValue(forward[i].getLeft(), i, i);
+            planner.readValue(forward[i].getRight(), i, i);
+        }
+        for (int j = 0; j < backward.length; j++) {
+            final BackwardComputeOperation op = backward[j];
+            final Matrix result = op.getResult();
+            if (null == result) {
+                continue;
+            }
+            final int position = forward.length + j;
+            final int before = producedAt.getOrDefault(result, forward.length);
+            final FusedElementWiseChain chain = op.getFusedChain();
+            if (null != chain) {
+                //The fused kernel recomputes the chain from its operands, the results inside the chain are never touched
+                if (chain.isTail(op)) {
+                    planner.useGradient(result, position, before);
+                    for (Matrix operand : chain.operands()) {
+                        planner.readValue(operand, position, before);
+                        planner.useGradient(operand, position, before);
+                    }
+                }
+                continue;
+            }
+            planner.readValue(op.getLeft(), position, before);
+            planner.readValue(op.getRight(), position, before);
+            planner.readValue(result, position, before);
+            planner.useGradient(result, position, before);
+            planner.useGradient(op.getLeft(), position, before);
+            planner.useGradient(op.getRight(), position, before);
+        }
+
+        final Summary summary = planner.apply(forward, backward);
+        rootForward.runSequentially();
+        if (null != rootBackward) {
+            rootBackward.runSequentially();
+        }
+        return summary;
+    }
+
+    private static void keep(Map<double[], Boolean> kept, Matrix matrix) {
+        final StridedStorage value = matrix.getValueStorage();
+        if (null == value && null != matrix.getBufferStorage()) {
+            return;
+        }
+        if (null == value) {
+            throw new IllegalArgumentException("Cannot keep a view without strided storage out of a memory plan, keep the matrices it is made of instead");
+        }
+        kept.put(value.data(), Boolean.TRUE);
+    }
+
+    private void addResult(Matrix result, int position, Map<double[], Boolean> kept) {
+        final StridedStorage value = result.getValueStorage();
+        if (kept.containsKey(value.data())) {
+            return;
+        }
+        Buffer buffer = new Buffer(result, position, position);
+        values.put(value.data(), buffer);
+        valueBuffers.add(buffer);
+        final StridedStorage gradient = result.getGradientStorage();
+        if (null != gradient) {
+            buffer = new Buffer(result, position, -1);
+            gradients.put(gradient.data(), buffer);
+            gradientBuffers.add(buffer);
+        }
+    }
+
+    /**
+     * @param before the forward position of the operation, every result an operand can be made of is computed earlier.
+     */
+    private void readValue(Matrix matrix, int position, int before) {
+        if (null == matrix) {
+            return;
+        }
+        final StridedStorage value = matrix.getValueStorage();
+        if (null == value) {
+            if (null != matrix.getBufferStorage()) {
+                //Only leaves are kept in a narrower precision or off the heap and the planner never moves them
+                return;
+            }
+            final Matrix[] sources = matrix.getViewSources();
+            if (null != sources) {
+                for (Matrix source : sources) {
+                    readValue(source, position, before);
+                }
+                return;
+            }
+            for (Buffer buffer : valueBuffers) {
+                if (buffer.producedAt >= before) {
+                    break;
+                }
+                buffer.use(position);
+            }
+            return;
+        }
+        final Buffer buffer = values.get(value.data());
+        if (null != buffer) {
+            buffer.use(position);
+        }
+    }
+
+    private void useGradient(Matrix matrix, int position, int before) {
+        if (null == matrix || !matrix.getRequiresGradient()) {
+            return;
+        }
+        final StridedStorage gradient = matrix.getGradientStorage();
+        if (null == gradient) {
+            if (null != matrix.getGradientBufferStorage()) {
+                return;
+            }
+            final Matrix[] sources = matrix.getViewSources();
+            if (null != sources) {
+                for (Matrix source : sources) {
+                    useGradient(source, position, before);
+                }
+                return;
+            }
+            for (Buffer buffer : gradientBuffers) {
+                if (buffer.producedAt >= before) {
+                    break;
+                }
+                buffer.use(position);
+            }
+            return;
+        }
+        final Buffer buffer = gradients.get(gradient.data());
+        if (null != buffer) {
+            buffer.use(position);
+        }
+    }
+
+    private Summary apply(ForwardComputeOperation[] forward, BackwardComputeOperation[] backward) {
+        final List<Buffer> ordered = new ArrayList<>(valueBuffers);
+        final List<Buffer> usedGradients = new ArrayList<>();
+        for (Buffer buffer : gradientBuffers) {
+            if (buffer.start >= 0) {
+                usedGradients.add(buffer);
+            }
+        }
+        usedGradients.sort(Comparator.comparingInt(buffer -> buffer.start));
+        ordered.addAll(usedGradients);
+
+        int[] capacities = new int[16];
+        int numSlabs = 0;
+        long bufferElements = 0;
+        final PriorityQueue<Buffer> live = new PriorityQueue<>(Comparator.comparingInt(buffer -> buffer.end));
+        final TreeMap<Integer, ArrayDeque<Integer>> free = new TreeMap<>();
+        for (Buffer buffer : ordered) {
+            while (!live.isEmpty() && live.peek().end < buffer.start) {
+                final int slab = live.poll().slab;
+                free.computeIfAbsent(capacities[slab], capacity -> new ArrayDeque<>()).add(slab);
+            }
+            Map.Entry<Integer, ArrayDeque<Integer>> fit = free.ceilingEntry(buffer.size);
+            if (null == fit) {
+                fit = free.lastEntry();
+            }
+            if (null == fit) {
+                if (numSlabs == capacities.length) {
+                    capacities = Arrays.copyOf(capacities, numSlabs * 2);
+                }
+                buffer.slab = numSlabs++;
+            } else {
+                buffer.slab = fit.getValue().poll();
+                if (fit.getValue().isEmpty()) {
+                    free.remove(fit.getKey());
+                }
+            }
+            capacities[buffer.slab] = Math.max(capacities[buffer.slab], buffer.size);
+            bufferElements += buffer.size;
+            live.add(buffer);
+        }
+
+        final double[][] slabs = new double[numSlabs][];
+        long slabElements = 0;
+        for (int i = 0; i < numSlabs; i++) {
+            slabs[i] = new double[capacities[i]];
+            slabElements += capacities[i];
+        }
+        for (Buffer buffer : valueBuffers) {
+            buffer.owner.bindValueStorage(storage(slabs[buffer.slab], buffer.owner));
+            forward[buffer.producedAt].setMemoryPlanned();
+        }
+        final Map<BackwardComputeOperation, List<StridedStorage>> toClear = new IdentityHashMap<>();
+        for (Buffer buffer : usedGradients) {
+            final StridedStorage gradient = storage(slabs[buffer.slab], buffer.owner);
+            buffer.owner.bindGradientStorage(gradient);
+            toClear.computeIfAbsent(backward[buffer.start - forward.length], op -> new ArrayList<>()).add(gradient);
+        }
+        for (Map.Entry<BackwardComputeOperation, List<StridedStorage>> entry : toClear.entrySet()) {
+            entry.getKey().setGradientsToClear(entry.getValue().toArray(new StridedStorage[0]));
+        }
+        return new Summary(ordered.size(), numSlabs, bufferElements, slabElements);
+    }
+
+    private static StridedStorage storage(double[] slab, Matrix owner) {
+        return new StridedStorage(slab, 0, owner.numCols(), 1, owner.numRows(), owner.numCols());
+    }
+}
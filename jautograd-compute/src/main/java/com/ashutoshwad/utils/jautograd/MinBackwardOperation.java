@@ -1,37 +1,17 @@
 package com.ashutoshwad.utils.jautograd;
 
-import java.util.ArrayList;
-import java.util.List;
-
 class MinBackwardOperation extends BackwardComputeOperation {
     private final Matrix source;
+    private final ExtremeLocations locations;
 
-    public MinBackwardOperation(Matrix source, BackwardComputeOperation... backwardComputeOperations) {
-        super(null, null, backwardComputeOperations);
+    public MinBackwardOperation(Matrix source, ExtremeLocations locations, BackwardComputeOperation... backwardComputeOperations) {
+        super(source, null, backwardComputeOperations);
         this.source = source;
+        this.locations = locations;
     }
 
     @Override
     protected void perform() {
-        Matrix result = getResult();
-        final double min = result.getValue();
-        final double resultGradient = result.getGradient();
-        int counter = 0;
-
-        List<int[]> minPositions = new ArrayList<>();
-
-        for (int row = 0; row < source.numRows(); row++) {
-            for (int col = 0; col < source.numCols(); col++) {
-                if(Math.abs(source.getValue(row, col) - min) < Matrix.EPSILON) {
-                    counter++;
-                    minPositions.add(new int[]{row, col});
-                }
-            }
-        }
-        final double revisedGradient = resultGradient / counter;
-
-        for (int[]pos : minPositions) {
-            source.accumulateGradient(pos[0], pos[1], revisedGradient);
-        }
+        Reductions.addGradientToExtremes(source, AxisGroups.ALL, getResult(), locations);
     }
 }
@@ -3,50 +3,26 @@ package com.ashutoshwad.utils.jautograd;
 class MinForwardByAxisOperation extends ForwardComputeOperation {
     private final Matrix source;
     private final int axis;
+    private ExtremeLocations locations;
     public MinForwardByAxisOperation(Matrix source, int axis, ForwardComputeOperation... forwardComputeOperations) {
-        super(null, null, forwardComputeOperations);
+        super(source, null, forwardComputeOperations);
         this.source = source;
         this.axis = axis;
     }
 
-    @Override
-    protected void perform() {
-        if(axis == 0) {
-            minAcrossRows();
-        } else {
-            minAcrossCols();
-        }
-    }
-
-    private void minAcrossRows() {
-        Matrix result = getResult();
-        for (int col = 0; col < result.numCols(); col++) {
-            double min = 0;
-            for (int row = 0; row < source.numRows(); row++) {
-                double sourceVal = source.getValue(row, col);
-                if(row == 0) {
-                    min = sourceVal;
-                } else {
-                    min = Math.min(min, sourceVal);
-                }
-            }
-            result.setValue(0, col, min);
+    /**
+     * @return where the min of every group sits in the source as of the last forward pass, which from now on every
+     * forward pass records.
+     */
+    ExtremeLocations getLocations() {
+        if (null == locations) {
+            locations = new ExtremeLocations(AxisGroups.of(source, axis).numGroups());
         }
+        return locations;
     }
 
-    private void minAcrossCols() {
-        Matrix result = getResult();
-        for (int row = 0; row < result.numRows(); row++) {
-            double min = 0;
-            for (int col = 0; col < source.numCols(); col++) {
-                double sourceVal = source.getValue(row, col);
-                if(col == 0) {
-                    min = sourceVal;
-                } else {
-                    min = Math.min(min, sourceVal);
-                }
-            }
-            result.setValue(row, 0, min);
-        }
+    @Override
+    protected void perform() {
+        Reductions.reduce(source, axis, Reductions.Kind.MIN, getResult(), locations);
     }
 }
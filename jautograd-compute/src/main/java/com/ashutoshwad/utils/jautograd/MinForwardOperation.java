@@ -2,25 +2,24 @@ package com.ashutoshwad.utils.jautograd;
 
 class MinForwardOperation extends ForwardComputeOperation {
     private final Matrix source;
+    private ExtremeLocations locations;
     public MinForwardOperation(Matrix source, ForwardComputeOperation... forwardComputeOperations) {
-        super(null, null, forwardComputeOperations);
+        super(source, null, forwardComputeOperations);
         this.source = source;
     }
 
+    /**
+     * @return where the min sits in the source as of the last forward pass, which from now on every forward pass records.
+     */
+    ExtremeLocations getLocations() {
+        if (null == locations) {
+            locations = new ExtremeLocations(1);
+        }
+        return locations;
+    }
+
     @Override
     protected void perform() {
-        Matrix result = getResult();
-        double min = 0;
-        for (int row = 0; row < source.numRows(); row++) {
-            for (int col = 0; col < source.numCols(); col++) {
-                double sourceVal = source.getValue(row, col);
-                if(row == 0 && col == 0) {
-                    min = sourceVal;
-                } else {
-                    min = Math.min(min, sourceVal);
-                }
-            }
-        }
-        result.setValue(0, 0, min);
+        getResult().setValue(0, 0, Reductions.reduce(source, Reductions.Kind.MIN, locations));
     }
 }
@@ -0,0 +1,188 @@
+package com.ashutoshwad.utils.jautograd;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Owns the memory of matrices created outside the Java heap with
+ * {@link Matrix#createOffHeap(OffHeapArena, int, int, java.util.function.Supplier, boolean, Precision)}, so very large
+ * parameters add nothing for the garbage collector to trace or copy. Everything allocated in an arena is freed
+ * together when it is closed, after which reading or writing those matrices fails with an IndexOutOfBoundsException.
+ * The arena must not be closed while an operation may still be using its matrices.
+ * Buffers larger than a direct buffer can address are made of several chunks, so a matrix may hold more than 2^31
+ * elements.
+ * An arena also owns the mappings of matrices backed by files, created with
+ * {@link Matrix#createMapped(OffHeapArena, Path, int, int, boolean, Precision)}, which are unmapped when it is closed.
+ */
+public final class OffHeapArena implements AutoCloseable {
+    private static final MethodHandle INVOKE_CLEANER = findCleaner();
+    private static final int DEFAULT_CHUNK_SHIFT = 30;
+
+    private final int chunkBytesShift;
+    private final List<ElementBuffer> buffers;
+    private final List<ByteBuffer> memory;
+    private final List<MappedByteBuffer> mappings;
+    private long allocatedBytes;
+    private long mappedBytes;
+    private boolean closed;
+
+    public OffHeapArena() {
+        this(DEFAULT_CHUNK_SHIFT);
+    }
+
+    /**
+     * @param chunkBytesShift buffers are allocated in chunks of at most 2^chunkBytesShift bytes.
+     */
+    OffHeapArena(int chunkBytesShift) {
+        this.chunkBytesShift = chunkBytesShift;
+        this.buffers = new ArrayList<>();
+        this.memory = new ArrayList<>();
+        this.mappings = new ArrayList<>();
+    }
+
+    /**
+     * Where the bytes of every chunk of a buffer come from.
+     */
+    private interface ChunkSource {
+        ByteBuffer bytes(long position, int length) throws IOException;
+    }
+
+    synchronized ElementBuffer allocate(Precision precision, long length) {
+        try {
+            return chunks(precision, length, ByteOrder.nativeOrder(), (position, bytes) -> {
+                final ByteBuffer allocated = ByteBuffer.allocateDirect(bytes);
+                memory.add(allocated);
+                allocatedBytes += bytes;
+                return allocated;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Maps length values of the file, which must either be empty, in which case it is extended with zeros, or hold
+     * exactly that many values. Values are stored little endian whatever the platform, so files can be moved between
+     * machines.
+     */
+    synchronized ElementBuffer map(Path file, Precision precision, long length) {
+        final long bytes = length * precision.bytesPerElement();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final long size = channel.size();
+            if (size != 0 && size != bytes) {
+                throw new IllegalArgumentException("File " + file + " holds " + size + " bytes, expected " + bytes
+                        + " for " + length + " values of " + precision);
+            }
+            //The mappings stay valid once the channel is closed
+            return chunks(precision, length, ByteOrder.LITTLE_ENDIAN, (position, chunkBytes) -> {
+                final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, position, chunkBytes);
+                mappings.add(mapped);
+                mappedBytes += chunkBytes;
+                return mapped;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map " + file, e);
+        }
+    }
+
+    private ElementBuffer chunks(Precision precision, long length, ByteOrder order, ChunkSource source) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("This arena has been closed");
+        }
+        final int chunkShift = chunkBytesShift - Integer.numberOfTrailingZeros(precision.bytesPerElement());
+        final long chunkLength = 1L << chunkShift;
+        final ElementBuffer[] chunks = new ElementBuffer[Math.toIntExact(Math.max(1, (length + chunkLength - 1) / chunkLength))];
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            final long elements = Math.min(chunkLength, length - chunk * chunkLength);
+            final ByteBuffer bytes = source.bytes(chunk * chunkLength * precision.bytesPerElement(), (int) (elements * precision.bytesPerElement()));
+            chunks[chunk] = ElementBuffer.wrap(precision, bytes, order);
+        }
+        final ElementBuffer buffer = ElementBuffer.chunked(chunks, chunkShift);
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * Writes every change made to mapped matrices so far back to their files.
+     */
+    public synchronized void force() {
+        for (MappedByteBuffer mapped : mappings) {
+            mapped.force();
+        }
+    }
+
+    /**
+     * @return the bytes currently allocated by this arena, not counting mapped files.
+     */
+    public synchronized long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return the bytes of files currently mapped by this arena.
+     */
+    public synchronized long mappedBytes() {
+        return mappedBytes;
+    }
+
+    public synchronized boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Frees everything allocated in this arena and unmaps its files. Changes to mapped files are kept by the operating
+     * system either way, call {@link #force()} first to be sure they are on disk. If the JDK does not allow freeing
+     * direct buffers explicitly, the memory is returned once the garbage collector finds the buffers unreachable instead.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (ElementBuffer buffer : buffers) {
+            buffer.release();
+        }
+        if (null != INVOKE_CLEANER) {
+            final List<ByteBuffer> direct = new ArrayList<>(memory);
+            direct.addAll(mappings);
+            for (ByteBuffer allocated : direct) {
+                try {
+                    INVOKE_CLEANER.invokeExact(allocated);
+                } catch (Throwable e) {
+                    throw new IllegalStateException("Could not free off heap memory", e);
+                }
+            }
+        }
+        buffers.clear();
+        memory.clear();
+        mappings.clear();
+        allocatedBytes = 0;
+        mappedBytes = 0;
+    }
+
+    private static MethodHandle findCleaner() {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * How the values of a matrix are kept in memory. Narrower precisions only change what is stored, values are widened
+ * to double whenever they are read, so every kernel still computes and accumulates in double precision and the
+ * results and gradients of operations are always FLOAT64.
+ */
+public enum Precision {
+    FLOAT64(8),
+    FLOAT32(4),
+    /**
+     * The upper half of a float: the range of FLOAT32 with 8 bits of mantissa.
+     */
+    BFLOAT16(2),
+    /**
+     * IEEE 754 half precision: 5 bits of exponent and 10 bits of mantissa.
+     */
+    FLOAT16(2);
+
+    private final int bytesPerElement;
+
+    Precision(int bytesPerElement) {
+        this.bytesPerElement = bytesPerElement;
+    }
+
+    public int bytesPerElement() {
+        return bytesPerElement;
+    }
+
+    /**
+     * @return the value as it reads back after being stored in this precision, rounded to the nearest representable
+     * value with ties to even.
+     */
+    public double round(double value) {
+        return switch (this) {
+            case FLOAT64 -> value;
+            case FLOAT32 -> (float) value;
+            case BFLOAT16, FLOAT16 -> decode(encode(value));
+        };
+    }
+
+    /**
+     * Bits of the value in one of the 16 bit precisions.
+     */
+    short encode(double value) {
+        final float f = toOddFloat(value);
+        return (this == BFLOAT16) ? toBFloat16(f) : toFloat16(f);
+    }
+
+    double decode(short bits) {
+        return (this == BFLOAT16) ? Float.intBitsToFloat((bits & 0xFFFF) << 16) : fromFloat16(bits);
+    }
+
+    /**
+     * The value as a float rounded to odd: truncated, with the lowest bit of the mantissa set if anything was cut off.
+     * Rounding that to 16 bits gives the same as rounding the double directly, rounding to the nearest float first
+     * could land on a halfway point that was not there and round the wrong way.
+     */
+    private static float toOddFloat(double value) {
+        float f = (float) value;
+        if (Float.isNaN(f) || f == value) {
+            return f;
+        }
+        if (Math.abs(f) > Math.abs(value)) {
+            f = Math.nextAfter(f, 0.0);
+        }
+        return Float.intBitsToFloat(Float.floatToRawIntBits(f) | 1);
+    }
+
+    private static short toBFloat16(float value) {
+        final int bits = Float.floatToRawIntBits(value);
+        if (Float.isNaN(value)) {
+            return (short) ((bits >>> 16) | 0x40);
+        }
+        return (short) ((bits + 0x7FFF + ((bits >>> 16) & 1)) >>> 16);
+    }
+
+    private static short toFloat16(float value) {
+        final int bits = Float.floatToRawIntBits(value);
+        final int sign = (bits >>> 16) & 0x8000;
+        final int exponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+        if (exponent == 0xFF) {
+            return (short) (sign | 0x7C00 | ((mantissa != 0) ? 0x200 : 0));
+        }
+        final int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1F) {
+            return (short) (sign | 0x7C00);
+        }
+        if (halfExponent <= 0) {
+            //Subnormal, the implicit leading bit becomes part of the mantissa
+            if (halfExponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            final int shift = 14 - halfExponent;
+            return (short) (sign | roundShift(mantissa, shift));
+        }
+        //A carry out of the mantissa correctly bumps the exponent, up to infinity
+        return (short) (sign | ((halfExponent << 10) + roundShift(mantissa, 13)));
+    }
+
+    private static int roundShift(int value, int shift) {
+        final int result = value >>> shift;
+        final int remainder = value & ((1 << shift) - 1);
+        final int halfway = 1 << (shift - 1);
+        return (remainder > halfway || (remainder == halfway && (result & 1) != 0)) ? result + 1 : result;
+    }
+
+    private static double fromFloat16(short bits) {
+        final int sign = (bits & 0x8000) << 16;
+        final int exponent = (bits >>> 10) & 0x1F;
+        final int mantissa = bits & 0x3FF;
+        if (exponent == 0) {
+            final double subnormal = Math.scalb((double) mantissa, -24);
+            return (sign != 0) ? -subnormal : subnormal;
+        }
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+}
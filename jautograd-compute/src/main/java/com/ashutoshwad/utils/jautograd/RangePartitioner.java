@@ -0,0 +1,118 @@
+package com.ashutoshwad.utils.jautograd;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits a range of indices into contiguous chunks and runs them on the compute pool.
+ * Every chunk covers neighbouring elements, so workers do not share cache lines of the output except at chunk
+ * boundaries. An operation asking for n tasks is cut into a few chunks per task, and the chunks are forked as a
+ * binary tree on the {@link ForkJoinPool}, so threads that finish early steal the remaining chunks of slower ones.
+ * Chunks have fixed boundaries and indices, which lets a job keep per chunk state (see {@link GradientAccumulator})
+ * and combine it in a fixed order no matter which thread ran which chunk.
+ */
+final class RangePartitioner {
+    static final int CHUNKS_PER_TASK = 4;
+
+    /**
+     * Work on the indices [from, to) of one chunk. Different chunks may run on different threads at the same time.
+     */
+    interface RangeJob {
+        void run(int chunk, int from, int to);
+    }
+
+    /**
+     * Same as {@link RangeJob} for ranges that may not fit in an int, such as the elements of a matrix with more than
+     * 2^31 of them.
+     */
+    interface LongRangeJob {
+        void run(int chunk, long from, long to);
+    }
+
+    private RangePartitioner() {
+    }
+
+    /**
+     * @return the number of chunks {@link #run} cuts a range into for the given number of tasks.
+     */
+    public static int numChunks(int numTasks) {
+        return (numTasks <= 1) ? 1 : numTasks * CHUNKS_PER_TASK;
+    }
+
+    /**
+     * Runs the job over [0, total), on the calling thread if numTasks is 1, otherwise in {@link #numChunks(int)}
+     * chunks on the compute pool. Returns once all chunks are done.
+     */
+    public static void run(ExecutorFactory.Details details, int total, int numTasks, RangeJob job) {
+        run(details, total, numTasks, 1, job);
+    }
+
+    /**
+     * Same as {@link #run(ExecutorFactory.Details, int, int, RangeJob)}, with every chunk boundary except the end of
+     * the range falling on a multiple of alignment.
+     */
+    public static void run(ExecutorFactory.Details details, int total, int numTasks, int alignment, RangeJob job) {
+        runLong(details, total, numTasks, alignment, (chunk, from, to) -> job.run(chunk, (int) from, (int) to));
+    }
+
+    /**
+     * Same as {@link #run(ExecutorFactory.Details, int, int, RangeJob)} over [0, total) for a long total.
+     */
+    public static void runLong(ExecutorFactory.Details details, long total, int numTasks, LongRangeJob job) {
+        runLong(details, total, numTasks, 1, job);
+    }
+
+    private static void runLong(ExecutorFactory.Details details, long total, int numTasks, int alignment, LongRangeJob job) {
+        final int numChunks = numChunks(numTasks);
+        if (numChunks == 1 || total <= alignment) {
+            job.run(0, 0, total);
+            return;
+        }
+        ForkJoinPool pool = (ForkJoinPool) details.executorService();
+        pool.invoke(new ChunkTask(job, total, numChunks, alignment, 0, numChunks));
+    }
+
+    private static long boundary(long total, int numChunks, int alignment, int chunk) {
+        if (chunk >= numChunks) {
+            return total;
+        }
+        //total * chunk could overflow a long, so split total into whole chunks and the rest
+        long index = (total / numChunks) * chunk + (total % numChunks) * chunk / numChunks;
+        return Math.min(total, (index / alignment) * alignment);
+    }
+
+    private static final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final LongRangeJob job;
+        private final long total;
+        private final int numChunks;
+        private final int alignment;
+        private final int chunkFrom;
+        private final int chunkTo;
+
+        private ChunkTask(LongRangeJob job, long total, int numChunks, int alignment, int chunkFrom, int chunkTo) {
+            this.job = job;
+            this.total = total;
+            this.numChunks = numChunks;
+            this.alignment = alignment;
+            this.chunkFrom = chunkFrom;
+            this.chunkTo = chunkTo;
+        }
+
+        @Override
+        protected void compute() {
+            if (chunkTo - chunkFrom == 1) {
+                final long from = boundary(total, numChunks, alignment, chunkFrom);
+                final long to = boundary(total, numChunks, alignment, chunkTo);
+                if (from < to) {
+                    job.run(chunkFrom, from, to);
+                }
+                return;
+            }
+            final int middle = (chunkFrom + chunkTo) >>> 1;
+            invokeAll(new ChunkTask(job, total, numChunks, alignment, chunkFrom, middle),
+                    new ChunkTask(job, total, numChunks, alignment, middle, chunkTo));
+        }
+    }
+}
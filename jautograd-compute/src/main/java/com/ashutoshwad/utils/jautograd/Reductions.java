@@ -0,0 +1,555 @@
+package com.ashutoshwad.utils.jautograd;
+
+import java.util.Arrays;
+
+/**
+ * Parallel kernels shared by the sum, max and min operations, over the whole matrix or along an axis.
+ * <ul>
+ *     <li>The whole matrix is cut into chunks of neighbouring elements, every chunk reduces into its own partial and
+ *     the partials are combined in chunk order, so the result does not depend on which thread ran which chunk.</li>
+ *     <li>Along axis 1 every worker takes a block of rows. Along axis 0 every worker takes a block of columns and
+ *     folds the rows of that block one after the other, so it still reads memory in order.</li>
+ * </ul>
+ * The whole matrix is indexed with longs, so sources kept off the heap may hold more than 2^31 elements.
+ * Sums are added in blocks of {@link #BLOCK} elements, each block vectorized when possible, and the block sums are
+ * added with Neumaier's variant of Kahan summation. The error then grows with the block size instead of the number
+ * of elements, at the cost of a few extra flops per block.
+ */
+final class Reductions {
+    static final int BLOCK = 256;
+    //Column blocks along axis 0 start on a cache line
+    private static final int COLUMN_ALIGNMENT = 8;
+
+    enum Kind {
+        SUM(0),
+        MAX(Double.NEGATIVE_INFINITY),
+        MIN(Double.POSITIVE_INFINITY);
+
+        private final double identity;
+
+        Kind(double identity) {
+            this.identity = identity;
+        }
+
+        double combine(double left, double right) {
+            return switch (this) {
+                case SUM -> left + right;
+                case MAX -> Math.max(left, right);
+                case MIN -> Math.min(left, right);
+            };
+        }
+    }
+
+    private Reductions() {
+    }
+
+    /**
+     * @return the sum, max or min of all elements of the source.
+     */
+    public static double reduce(Matrix source, Kind kind) {
+        return reduce(source, kind, null);
+    }
+
+    /**
+     * Same as {@link #reduce(Matrix, Kind)}, for the max or min also recording where the extreme sits into extremes
+     * unless it is null.
+     */
+    public static double reduce(Matrix source, Kind kind, ExtremeLocations extremes) {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        final long totalElements = source.numElements();
+        final int numTasks = CostModel.elementwiseTasks(totalElements, 1, 1, details.numThreads());
+        final int numChunks = RangePartitioner.numChunks(numTasks);
+        final double[] partials = new double[numChunks];
+        //Chunks that do not run must not count towards the max or min
+        Arrays.fill(partials, kind.identity);
+        if (null == extremes) {
+            RangePartitioner.runLong(details, totalElements, numTasks, (chunk, from, to) -> partials[chunk] = reduceElements(source, kind, from, to));
+        } else {
+            final long[] chunkLocations = extremes.chunkLocations(numChunks);
+            final ExtremeLocations.Ties[] chunkTies = extremes.chunkTies(numChunks);
+            RangePartitioner.runLong(details, totalElements, numTasks,
+                    (chunk, from, to) -> partials[chunk] = locateElements(source, kind, from, to, chunkLocations, 2 * chunk, chunkTies[chunk]));
+        }
+        final Partial total = new Partial(kind);
+        for (double partial : partials) {
+            total.add(partial);
+        }
+        if (null != extremes) {
+            extremes.collectElementTies(numChunks, total.value(), partials);
+        }
+        return total.value();
+    }
+
+    /**
+     * Writes the sum, max or min of every column (axis 0) or every row (axis 1) of the source into the result, a
+     * row or a column.
+     */
+    public static void reduce(Matrix source, int axis, Kind kind, Matrix result) {
+        reduce(source, axis, kind, result, null);
+    }
+
+    /**
+     * Same as {@link #reduce(Matrix, int, Kind, Matrix)}, for the max or min also recording where the extreme of
+     * every group sits into extremes unless it is null.
+     */
+    public static void reduce(Matrix source, int axis, Kind kind, Matrix result, ExtremeLocations extremes) {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        final AxisGroups groups = AxisGroups.of(source, axis);
+        final int numTasks = CostModel.elementwiseTasks((long) groups.numGroups() * groups.groupLength(), 1, 1, details.numThreads());
+        final int numChunks = RangePartitioner.numChunks(numTasks);
+        final ExtremeLocations.Ties[] chunkTies = (null == extremes) ? null : extremes.chunkTies(numChunks);
+        final StridedStorage storage = source.getValueStorage();
+        final StridedStorage resultStorage = result.getValueStorage();
+        if (axis == 0 && null != storage && storage.colStride() == 1 && null != resultStorage && resultStorage.colStride() == 1) {
+            RangePartitioner.run(details, groups.numGroups(), numTasks, COLUMN_ALIGNMENT, (chunk, from, to) -> {
+                if (null == extremes) {
+                    foldRows(kind, storage, from, to, resultStorage.data(), resultStorage.offset() + from);
+                } else {
+                    foldRowsLocating(kind, storage, from, to, resultStorage.data(), resultStorage.offset() + from, extremes.locations(), chunkTies[chunk]);
+                }
+            });
+        } else {
+            RangePartitioner.run(details, groups.numGroups(), numTasks,
+                    (chunk, from, to) -> reduceGroups(source, groups, kind, result, from, to, extremes, (null == chunkTies) ? null : chunkTies[chunk]));
+        }
+        if (null != extremes) {
+            extremes.collectGroupTies(numChunks);
+        }
+    }
+
+    /**
+     * Adds the gradient of the result to every element of the source, from a 1x1 result for {@link AxisGroups#ALL},
+     * a row for axis 0 or a column for axis 1.
+     */
+    public static void addGradient(Matrix source, int axis, Matrix result) {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        final int numTasks = CostModel.elementwiseTasks(source.numElements(), 1, 2, details.numThreads());
+        final GradientAccumulator accumulator = GradientAccumulator.create(source, RangePartitioner.numChunks(numTasks), false);
+        final StridedStorage gradient = accumulator.isDirect() ? source.getGradientStorage() : null;
+        if (axis == AxisGroups.ALL) {
+            //The whole matrix is a single group, so split it by elements instead
+            final double resultValue = result.getGradient(0, 0);
+            RangePartitioner.runLong(details, source.numElements(), numTasks,
+                    (chunk, from, to) -> spreadElements(source, resultValue, accumulator, gradient, chunk, from, to));
+            accumulator.merge();
+            return;
+        }
+        final AxisGroups groups = AxisGroups.of(source, axis);
+        final StridedStorage resultGradient = result.getGradientStorage();
+        if (axis == 0 && null != gradient && gradient.colStride() == 1 && null != resultGradient && resultGradient.colStride() == 1) {
+            RangePartitioner.run(details, groups.numGroups(), numTasks, COLUMN_ALIGNMENT,
+                    (chunk, from, to) -> spreadRows(gradient, from, to, resultGradient.data(), resultGradient.offset() + from));
+            return;
+        }
+        RangePartitioner.run(details, groups.numGroups(), numTasks, (chunk, from, to) -> spreadGroups(source, groups, result, accumulator, gradient, chunk, from, to));
+        accumulator.merge();
+    }
+
+    /**
+     * Adds the gradient of the result to the elements the forward pass recorded in extremes, ties share it equally.
+     * Only the recorded elements are touched, so this costs the number of groups plus the number of ties.
+     */
+    public static void addGradientToExtremes(Matrix source, int axis, Matrix result, ExtremeLocations extremes) {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        //Null for the whole matrix, whose elements may not be countable with an int
+        final AxisGroups groups = (axis == AxisGroups.ALL) ? null : AxisGroups.of(source, axis);
+        final int numGroups = (null == groups) ? 1 : groups.numGroups();
+        final int numTies = extremes.numTies();
+        final int numTasks = CostModel.elementwiseTasks((long) numGroups + numTies, 1, 2, details.numThreads());
+        final GradientAccumulator accumulator = GradientAccumulator.create(source, RangePartitioner.numChunks(numTasks), false);
+        RangePartitioner.run(details, numGroups, numTasks, (chunk, from, to) -> {
+            for (int group = from; group < to; group++) {
+                final long count = extremes.count(group);
+                if (count > 0) {
+                    addToElement(source, groups, group, extremes.first(group), groupGradient(axis, result, group) / count, accumulator, chunk);
+                }
+            }
+        });
+        if (numTies > 0) {
+            RangePartitioner.run(details, numTies, numTasks, (chunk, from, to) -> {
+                for (int tie = from; tie < to; tie++) {
+                    final int group = extremes.tieGroup(tie);
+                    addToElement(source, groups, group, extremes.tieElement(tie), groupGradient(axis, result, group) / extremes.count(group), accumulator, chunk);
+                }
+            });
+        }
+        accumulator.merge();
+    }
+
+    /**
+     * Reduces length elements of data starting at start, stride apart.
+     */
+    static double reduceRun(Kind kind, double[] data, int start, int stride, int length) {
+        final boolean vectorized = SimdKernels.ENABLED && stride == 1;
+        if (kind != Kind.SUM) {
+            if (vectorized) {
+                return (kind == Kind.MAX) ? SimdKernels.max(data, start, length) : SimdKernels.min(data, start, length);
+            }
+            double value = kind.identity;
+            for (int i = 0, index = start; i < length; i++, index += stride) {
+                value = kind.combine(value, data[index]);
+            }
+            return value;
+        }
+        final Partial partial = new Partial(kind);
+        for (int blockFrom = 0; blockFrom < length; blockFrom += BLOCK) {
+            final int blockLength = Math.min(BLOCK, length - blockFrom);
+            final int blockStart = start + blockFrom * stride;
+            if (vectorized) {
+                partial.add(SimdKernels.sum(data, blockStart, blockLength));
+                continue;
+            }
+            double sum = 0;
+            for (int i = 0, index = blockStart; i < blockLength; i++, index += stride) {
+                sum += data[index];
+            }
+            partial.add(sum);
+        }
+        return partial.value();
+    }
+
+    /**
+     * Reduces the elements [from, to) of the source in row major order.
+     */
+    private static double reduceElements(Matrix source, Kind kind, long from, long to) {
+        final int numCols = source.numCols();
+        final StridedStorage storage = source.getValueStorage();
+        final Partial partial = new Partial(kind);
+        for (long i = from; i < to; ) {
+            final int row = (int) (i / numCols);
+            final int colFrom = (int) (i - (long) row * numCols);
+            final int length = (int) Math.min(numCols - colFrom, to - i);
+            if (null != storage) {
+                partial.add(reduceRun(kind, storage.data(), storage.offset() + row * storage.rowStride() + colFrom * storage.colStride(), storage.colStride(), length));
+            } else {
+                for (int col = colFrom; col < colFrom + length; col++) {
+                    partial.add(source.getValue(row, col));
+                }
+            }
+            i += length;
+        }
+        return partial.value();
+    }
+
+    /**
+     * Same as {@link #reduceRun} for the max or min, carrying on from extreme and also recording where it sits: the
+     * first element equal to it goes to locations[at], how many there are to locations[at + 1] and any further one to
+     * ties. The element at start is numbered base.
+     */
+    static double locateRun(Kind kind, double extreme, double[] data, int start, int stride, int length, long base,
+                            int group, long[] locations, int at, ExtremeLocations.Ties ties) {
+        final boolean max = kind == Kind.MAX;
+        long first = locations[at];
+        long count = locations[at + 1];
+        for (int i = 0, index = start; i < length; i++, index += stride) {
+            final double value = data[index];
+            if (max ? value > extreme : value < extreme) {
+                extreme = value;
+                first = base + i;
+                count = 1;
+            } else if (value == extreme) {
+                if (count++ == 0) {
+                    first = base + i;
+                } else {
+                    ties.add(group, base + i);
+                }
+            } else if (value != value) {
+                //NaN wins like it does in Math.max and Math.min, and nothing compares equal to it afterwards
+                extreme = value;
+            }
+        }
+        locations[at] = first;
+        locations[at + 1] = count;
+        return extreme;
+    }
+
+    /**
+     * {@link #locateRun} for a single element read through the accessors.
+     */
+    private static double locate(Kind kind, double extreme, double value, long element, int group, long[] locations, int at, ExtremeLocations.Ties ties) {
+        if ((kind == Kind.MAX) ? value > extreme : value < extreme) {
+            locations[at] = element;
+            locations[at + 1] = 1;
+            return value;
+        }
+        if (value == extreme) {
+            if (locations[at + 1]++ == 0) {
+                locations[at] = element;
+            } else {
+                ties.add(group, element);
+            }
+        }
+        return (value != value) ? value : extreme;
+    }
+
+    /**
+     * Same as {@link #reduceElements} for the max or min, recording where it sits into locations[at] and
+     * locations[at + 1] and ties, see {@link #locateRun}.
+     */
+    private static double locateElements(Matrix source, Kind kind, long from, long to, long[] locations, int at, ExtremeLocations.Ties ties) {
+        final int numCols = source.numCols();
+        final StridedStorage storage = source.getValueStorage();
+        double extreme = kind.identity;
+        locations[at] = -1;
+        locations[at + 1] = 0;
+        for (long i = from; i < to; ) {
+            final int row = (int) (i / numCols);
+            final int colFrom = (int) (i - (long) row * numCols);
+            final int length = (int) Math.min(numCols - colFrom, to - i);
+            if (null != storage) {
+                extreme = locateRun(kind, extreme, storage.data(), storage.offset() + row * storage.rowStride() + colFrom * storage.colStride(),
+                        storage.colStride(), length, i, 0, locations, at, ties);
+            } else {
+                for (int col = colFrom; col < colFrom + length; col++) {
+                    extreme = locate(kind, extreme, source.getValue(row, col), i + (col - colFrom), 0, locations, at, ties);
+                }
+            }
+            i += length;
+        }
+        return extreme;
+    }
+
+    /**
+     * @param extremes where to record the extreme of every group, or null.
+     */
+    private static void reduceGroups(Matrix source, AxisGroups groups, Kind kind, Matrix result, int from, int to,
+                                     ExtremeLocations extremes, ExtremeLocations.Ties ties) {
+        final StridedStorage storage = source.getValueStorage();
+        for (int group = from; group < to; group++) {
+            final double value;
+            if (null != extremes) {
+                final long[] locations = extremes.locations();
+                locations[2 * group] = -1;
+                locations[2 * group + 1] = 0;
+                double extreme = kind.identity;
+                if (null != storage) {
+                    extreme = locateRun(kind, extreme, storage.data(), groups.start(storage, group), groups.stride(storage), groups.groupLength(),
+                            0, group, locations, 2 * group, ties);
+                } else {
+                    for (int element = 0; element < groups.groupLength(); element++) {
+                        extreme = locate(kind, extreme, source.getValue(groups.row(group, element), groups.column(group, element)), element,
+                                group, locations, 2 * group, ties);
+                    }
+                }
+                if (Double.isNaN(extreme)) {
+                    locations[2 * group + 1] = 0;
+                }
+                value = extreme;
+            } else if (null != storage) {
+                value = reduceRun(kind, storage.data(), groups.start(storage, group), groups.stride(storage), groups.groupLength());
+            } else {
+                final Partial partial = new Partial(kind);
+                for (int element = 0; element < groups.groupLength(); element++) {
+                    partial.add(source.getValue(groups.row(group, element), groups.column(group, element)));
+                }
+                value = partial.value();
+            }
+            if (groups.axis() == 0) {
+                result.setValue(0, group, value);
+            } else {
+                result.setValue(group, 0, value);
+            }
+        }
+    }
+
+    /**
+     * Reduces the columns [from, to) of storage over all rows into result[resultOffset...], BLOCK rows at a time.
+     */
+    private static void foldRows(Kind kind, StridedStorage storage, int from, int to, double[] result, int resultOffset) {
+        final int length = to - from;
+        if (length <= 0) {
+            return;
+        }
+        final double[] data = storage.data();
+        final double[] block = new double[length];
+        final double[] compensation = (kind == Kind.SUM) ? new double[length] : null;
+        Arrays.fill(result, resultOffset, resultOffset + length, kind.identity);
+        for (int blockFrom = 0; blockFrom < storage.numRows(); blockFrom += BLOCK) {
+            final int blockTo = Math.min(storage.numRows(), blockFrom + BLOCK);
+            Arrays.fill(block, kind.identity);
+            for (int row = blockFrom; row < blockTo; row++) {
+                final int index = storage.offset() + row * storage.rowStride() + from;
+                if (SimdKernels.ENABLED) {
+                    switch (kind) {
+                        case SUM -> SimdKernels.sumInto(block, 0, data, index, length);
+                        case MAX -> SimdKernels.maxInto(block, 0, data, index, length);
+                        case MIN -> SimdKernels.minInto(block, 0, data, index, length);
+                    }
+                    continue;
+                }
+                for (int col = 0; col < length; col++) {
+                    block[col] = kind.combine(block[col], data[index + col]);
+                }
+            }
+            for (int col = 0; col < length; col++) {
+                if (null == compensation) {
+                    result[resultOffset + col] = kind.combine(result[resultOffset + col], block[col]);
+                    continue;
+                }
+                final double sum = result[resultOffset + col];
+                final double next = sum + block[col];
+                compensation[col] += (Math.abs(sum) >= Math.abs(block[col])) ? (sum - next) + block[col] : (block[col] - next) + sum;
+                result[resultOffset + col] = next;
+            }
+        }
+        if (null != compensation) {
+            for (int col = 0; col < length; col++) {
+                result[resultOffset + col] += compensation[col];
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #foldRows} for the max or min, also recording where the extreme of every column sits, see
+     * {@link #locateRun}. Every row is still read in order, one column after the other.
+     */
+    private static void foldRowsLocating(Kind kind, StridedStorage storage, int from, int to, double[] result, int resultOffset,
+                                         long[] locations, ExtremeLocations.Ties ties) {
+        final int length = to - from;
+        final boolean max = kind == Kind.MAX;
+        final double[] data = storage.data();
+        Arrays.fill(result, resultOffset, resultOffset + length, kind.identity);
+        for (int col = from; col < to; col++) {
+            locations[2 * col] = -1;
+            locations[2 * col + 1] = 0;
+        }
+        for (int row = 0; row < storage.numRows(); row++) {
+            final int index = storage.offset() + row * storage.rowStride() + from;
+            for (int col = 0; col < length; col++) {
+                final double value = data[index + col];
+                final double extreme = result[resultOffset + col];
+                final int at = 2 * (from + col);
+                if (max ? value > extreme : value < extreme) {
+                    result[resultOffset + col] = value;
+                    locations[at] = row;
+                    locations[at + 1] = 1;
+                } else if (value == extreme) {
+                    if (locations[at + 1]++ == 0) {
+                        locations[at] = row;
+                    } else {
+                        ties.add(from + col, row);
+                    }
+                } else if (value != value) {
+                    result[resultOffset + col] = value;
+                }
+            }
+        }
+        for (int col = 0; col < length; col++) {
+            if (Double.isNaN(result[resultOffset + col])) {
+                locations[2 * (from + col) + 1] = 0;
+            }
+        }
+    }
+
+    /**
+     * Adds resultGradient[resultOffset...] to the columns [from, to) of every row of the gradient.
+     */
+    private static void spreadRows(StridedStorage gradient, int from, int to, double[] resultGradient, int resultOffset) {
+        final double[] data = gradient.data();
+        for (int row = 0; row < gradient.numRows(); row++) {
+            final int index = gradient.offset() + row * gradient.rowStride() + from;
+            if (SimdKernels.ENABLED) {
+                SimdKernels.sumInto(data, index, resultGradient, resultOffset, to - from);
+                continue;
+            }
+            for (int col = 0; col < to - from; col++) {
+                data[index + col] += resultGradient[resultOffset + col];
+            }
+        }
+    }
+
+    /**
+     * Adds the gradient of the result to the elements [from, to) of the source in row major order.
+     */
+    private static void spreadElements(Matrix source, double resultGradient, GradientAccumulator accumulator,
+                                       StridedStorage gradient, int chunk, long from, long to) {
+        final int numCols = source.numCols();
+        for (long i = from; i < to; ) {
+            final int row = (int) (i / numCols);
+            final int colFrom = (int) (i - (long) row * numCols);
+            final int length = (int) Math.min(numCols - colFrom, to - i);
+            if (null != gradient) {
+                addScalar(gradient.data(), gradient.offset() + row * gradient.rowStride() + colFrom * gradient.colStride(), gradient.colStride(), length, resultGradient);
+            } else {
+                for (int col = colFrom; col < colFrom + length; col++) {
+                    accumulator.add(chunk, row, col, resultGradient);
+                }
+            }
+            i += length;
+        }
+    }
+
+    /**
+     * Adds the gradient of every group in [from, to) to its elements.
+     */
+    private static void spreadGroups(Matrix source, AxisGroups groups, Matrix result, GradientAccumulator accumulator,
+                                     StridedStorage gradient, int chunk, int from, int to) {
+        for (int group = from; group < to; group++) {
+            final double groupGradient = (groups.axis() == 0) ? result.getGradient(0, group) : result.getGradient(group, 0);
+            if (null != gradient) {
+                addScalar(gradient.data(), groups.start(gradient, group), groups.stride(gradient), groups.groupLength(), groupGradient);
+                continue;
+            }
+            for (int element = 0; element < groups.groupLength(); element++) {
+                accumulator.add(chunk, groups.row(group, element), groups.column(group, element), groupGradient);
+            }
+        }
+    }
+
+    private static double groupGradient(int axis, Matrix result, int group) {
+        return switch (axis) {
+            case 0 -> result.getGradient(0, group);
+            case 1 -> result.getGradient(group, 0);
+            default -> result.getGradient(0, 0);
+        };
+    }
+
+    /**
+     * @param groups the groups of the source, or null if the whole matrix is the group.
+     */
+    private static void addToElement(Matrix source, AxisGroups groups, int group, long element, double gradient,
+                                     GradientAccumulator accumulator, int chunk) {
+        final int numCols = source.numCols();
+        final int row = (null == groups) ? (int) (element / numCols) : groups.row(group, (int) element);
+        final int col = (null == groups) ? (int) (element % numCols) : groups.column(group, (int) element);
+        accumulator.add(chunk, row, col, gradient);
+    }
+
+    private static void addScalar(double[] data, int start, int stride, int length, double value) {
+        if (SimdKernels.ENABLED && stride == 1) {
+            SimdKernels.addScalar(data, start, length, value);
+            return;
+        }
+        for (int i = 0, index = start; i < length; i++, index += stride) {
+            data[index] += value;
+        }
+    }
+
+    /**
+     * Running value of a reduction, compensated with Neumaier's algorithm for sums.
+     */
+    private static final class Partial {
+        private final Kind kind;
+        private double value;
+        private double compensation;
+
+        private Partial(Kind kind) {
+            this.kind = kind;
+            this.value = kind.identity;
+        }
+
+        private void add(double next) {
+            if (kind != Kind.SUM) {
+                value = kind.combine(value, next);
+                return;
+            }
+            final double sum = value + next;
+            compensation += (Math.abs(value) >= Math.abs(next)) ? (value - sum) + next : (next - sum) + value;
+            value = sum;
+        }
+
+        private double value() {
+            return (kind == Kind.SUM) ? value + compensation : value;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * Entry point for the optional vectorized kernels. The actual implementation lives in {@link VectorApiKernels} and
+ * is only touched when the {@code jdk.incubator.vector} module is present at runtime (run the JVM with
+ * {@code --add-modules jdk.incubator.vector}), so callers can always go through this class and use the scalar loops
+ * whenever {@link #ENABLED} is false or a function has no vectorized form.
+ * Setting the system property {@code jautograd.simd=false} turns the vectorized kernels off.
+ *
+ * All methods work on contiguous ranges of {@code length} elements starting at the given offsets.
+ */
+final class SimdKernels {
+    public static final boolean ENABLED = detect();
+
+    private SimdKernels() {
+    }
+
+    private static boolean detect() {
+        if (!Boolean.parseBoolean(System.getProperty("jautograd.simd", "true"))) {
+            return false;
+        }
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    }
+
+    public static boolean supports(FunctionRegistry.BinaryCalcFunction function) {
+        return ENABLED && VectorApiKernels.supports(function);
+    }
+
+    public static boolean supports(FunctionRegistry.UnaryCalcFunction function) {
+        return ENABLED && VectorApiKernels.supports(function);
+    }
+
+    public static boolean supports(FunctionRegistry.UnaryGradientFunction function) {
+        return ENABLED && VectorApiKernels.supports(function);
+    }
+
+    public static boolean supports(FunctionRegistry.BinaryGradientFunction left, FunctionRegistry.BinaryGradientFunction right) {
+        return ENABLED && (null == left || VectorApiKernels.supports(left)) && (null == right || VectorApiKernels.supports(right));
+    }
+
+    public static void forward(FunctionRegistry.BinaryCalcFunction function, double[] left, int leftOffset, double[] right, int rightOffset, double[] result, int resultOffset, int length) {
+        VectorApiKernels.forward(function, left, leftOffset, right, rightOffset, result, resultOffset, length);
+    }
+
+    public static void forward(FunctionRegistry.UnaryCalcFunction function, double[] input, int inputOffset, double[] result, int resultOffset, int length) {
+        VectorApiKernels.forward(function, input, inputOffset, result, resultOffset, length);
+    }
+
+    /**
+     * inputGradient += function(input, result, resultGradient)
+     */
+    public static void backward(FunctionRegistry.UnaryGradientFunction function, double[] input, int inputOffset, double[] result, int resultOffset,
+                                double[] resultGradient, int resultGradientOffset, double[] inputGradient, int inputGradientOffset, int length) {
+        VectorApiKernels.backward(function, input, inputOffset, result, resultOffset, resultGradient, resultGradientOffset, inputGradient, inputGradientOffset, length);
+    }
+
+    /**
+     * leftGradient += leftFunction(...) and rightGradient += rightFunction(...), a null gradient array skips that side.
+     */
+    public static void backward(FunctionRegistry.BinaryGradientFunction leftFunction, FunctionRegistry.BinaryGradientFunction rightFunction,
+                                double[] left, int leftOffset, double[] right, int rightOffset, double[] result, int resultOffset,
+                                double[] resultGradient, int resultGradientOffset,
+                                double[] leftGradient, int leftGradientOffset, double[] rightGradient, int rightGradientOffset, int length) {
+        VectorApiKernels.backward(leftFunction, rightFunction, left, leftOffset, right, rightOffset, result, resultOffset,
+                resultGradient, resultGradientOffset, leftGradient, leftGradientOffset, rightGradient, rightGradientOffset, length);
+    }
+
+    public static double sum(double[] data, int offset, int length) {
+        return VectorApiKernels.sum(data, offset, length);
+    }
+
+    public static double max(double[] data, int offset, int length) {
+        return VectorApiKernels.max(data, offset, length);
+    }
+
+    public static double min(double[] data, int offset, int length) {
+        return VectorApiKernels.min(data, offset, length);
+    }
+
+    /**
+     * accumulator[i] += data[i]
+     */
+    public static void sumInto(double[] accumulator, int accumulatorOffset, double[] data, int offset, int length) {
+        VectorApiKernels.sumInto(accumulator, accumulatorOffset, data, offset, length);
+    }
+
+    /**
+     * accumulator[i] = max(accumulator[i], data[i])
+     */
+    public static void maxInto(double[] accumulator, int accumulatorOffset, double[] data, int offset, int length) {
+        VectorApiKernels.maxInto(accumulator, accumulatorOffset, data, offset, length);
+    }
+
+    /**
+     * accumulator[i] = min(accumulator[i], data[i])
+     */
+    public static void minInto(double[] accumulator, int accumulatorOffset, double[] data, int offset, int length) {
+        VectorApiKernels.minInto(accumulator, accumulatorOffset, data, offset, length);
+    }
+
+    /**
+     * data[i] += value
+     */
+    public static void addScalar(double[] data, int offset, int length, double value) {
+        VectorApiKernels.addScalar(data, offset, length, value);
+    }
+}
@@ -0,0 +1,71 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * Gradient of {@link SoftmaxForwardOperation} as the closed form Jacobian vector product: with y the softmax of a
+ * group and g the gradient of y, the source gets {@code y * (g - sum(g * y))}. Only y is needed, not the source.
+ */
+public class SoftmaxBackwardOperation extends BackwardComputeOperation {
+    private final int axis;
+
+    SoftmaxBackwardOperation(Matrix source, int axis, BackwardComputeOperation... backwardComputeOperations) {
+        super(source, null, backwardComputeOperations);
+        this.axis = axis;
+    }
+
+    @Override
+    protected void perform() {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        final AxisGroups groups = AxisGroups.of(getResult(), axis);
+        final int numTasks = CostModel.elementwiseTasks((long) groups.numGroups() * groups.groupLength(), 1, 4, details.numThreads());
+        final GradientAccumulator accumulator = GradientAccumulator.create(getLeft(), RangePartitioner.numChunks(numTasks), false);
+        RangePartitioner.run(details, groups.numGroups(), numTasks, new SoftmaxBackwardOperation.WorkerJob(getLeft(), getResult(), groups, accumulator));
+        accumulator.merge();
+    }
+
+    private static class WorkerJob implements RangePartitioner.RangeJob {
+        private final Matrix source;
+        private final Matrix result;
+        private final AxisGroups groups;
+        private final GradientAccumulator accumulator;
+
+        public WorkerJob(Matrix source, Matrix result, AxisGroups groups, GradientAccumulator accumulator) {
+            this.source = source;
+            this.result = result;
+            this.groups = groups;
+            this.accumulator = accumulator;
+        }
+
+        @Override
+        public void run(int chunk, int from, int to) {
+            final int length = groups.groupLength();
+            final StridedStorage o = result.getValueStorage();
+            final StridedStorage oGrad = result.getGradientStorage();
+            final StridedStorage inGrad = source.getGradientStorage();
+            final double[] oData = o.data();
+            final double[] oGradData = oGrad.data();
+            final int oStride = groups.stride(o);
+            final int oGradStride = groups.stride(oGrad);
+            final boolean direct = accumulator.isDirect() && groups.isLinear(inGrad);
+            for (int group = from; group < to; group++) {
+                final int oStart = groups.start(o, group);
+                final int oGradStart = groups.start(oGrad, group);
+                double dot = 0;
+                for (int e = 0, oIndex = oStart, gIndex = oGradStart; e < length; e++, oIndex += oStride, gIndex += oGradStride) {
+                    dot += oData[oIndex] * oGradData[gIndex];
+                }
+                if (direct) {
+                    final double[] inGradData = inGrad.data();
+                    final int inGradStride = groups.stride(inGrad);
+                    for (int e = 0, oIndex = oStart, gIndex = oGradStart, inIndex = groups.start(inGrad, group); e < length;
+                         e++, oIndex += oStride, gIndex += oGradStride, inIndex += inGradStride) {
+                        inGradData[inIndex] += oData[oIndex] * (oGradData[gIndex] - dot);
+                    }
+                    continue;
+                }
+                for (int e = 0, oIndex = oStart, gIndex = oGradStart; e < length; e++, oIndex += oStride, gIndex += oGradStride) {
+                    accumulator.add(chunk, groups.row(group, e), groups.column(group, e), oData[oIndex] * (oGradData[gIndex] - dot));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * Gradient of {@link SoftmaxCrossEntropyForwardOperation}, {@code (softmax - onehot(target)) / numRows} scaled by the
+ * gradient of the loss. The softmax is recomputed from the cached log-sum-exp, one exp per logit. Targets get no
+ * gradient.
+ */
+public class SoftmaxCrossEntropyBackwardOperation extends BackwardComputeOperation {
+    private final SoftmaxCrossEntropyForwardOperation forward;
+
+    SoftmaxCrossEntropyBackwardOperation(Matrix logits, Matrix targets, SoftmaxCrossEntropyForwardOperation forward, BackwardComputeOperation... backwardComputeOperations) {
+        super(logits, targets, backwardComputeOperations);
+        this.forward = forward;
+    }
+
+    @Override
+    protected void perform() {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        final Matrix logits = getLeft();
+        final int numTasks = CostModel.elementwiseTasks((long) logits.numRows() * logits.numCols(), 1, 2, details.numThreads());
+        final GradientAccumulator accumulator = GradientAccumulator.create(logits, RangePartitioner.numChunks(numTasks), false);
+        final double scale = getResult().getGradient(0, 0) / logits.numRows();
+        RangePartitioner.run(details, logits.numRows(), numTasks,
+                new SoftmaxCrossEntropyBackwardOperation.WorkerJob(logits, getRight(), forward.getLogSumExp(), scale, accumulator));
+        accumulator.merge();
+    }
+
+    private static class WorkerJob implements RangePartitioner.RangeJob {
+        private final Matrix logits;
+        private final Matrix targets;
+        private final double[] logSumExp;
+        private final double scale;
+        private final GradientAccumulator accumulator;
+
+        public WorkerJob(Matrix logits, Matrix targets, double[] logSumExp, double scale, GradientAccumulator accumulator) {
+            this.logits = logits;
+            this.targets = targets;
+            this.logSumExp = logSumExp;
+            this.scale = scale;
+            this.accumulator = accumulator;
+        }
+
+        @Override
+        public void run(int chunk, int from, int to) {
+            final int numCols = logits.numCols();
+            final StridedStorage in = logits.getValueStorage();
+            final StridedStorage inGrad = logits.getGradientStorage();
+            final boolean direct = null != in && accumulator.isDirect();
+            for (int row = from; row < to; row++) {
+                final int target = SoftmaxCrossEntropyForwardOperation.target(targets, row, numCols);
+                final double lse = logSumExp[row];
+                if (direct) {
+                    final double[] inData = in.data();
+                    final double[] inGradData = inGrad.data();
+                    int index = in.offset() + row * in.rowStride();
+                    int gradIndex = inGrad.offset() + row * inGrad.rowStride();
+                    for (int col = 0; col < numCols; col++, index += in.colStride(), gradIndex += inGrad.colStride()) {
+                        inGradData[gradIndex] += scale * Math.exp(inData[index] - lse);
+                    }
+                    inGradData[inGrad.offset() + row * inGrad.rowStride() + target * inGrad.colStride()] -= scale;
+                    continue;
+                }
+                for (int col = 0; col < numCols; col++) {
+                    final double probability = Math.exp(logits.getValue(row, col) - lse);
+                    accumulator.add(chunk, row, col, scale * (probability - ((col == target) ? 1 : 0)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * Mean cross entropy of the softmax of every row of the logits against the class index of the row in targets, a
+ * column of whole numbers. Every row is read once: log-sum-exp is computed online, rescaling the running sum whenever
+ * a new maximum shows up, and the loss of the row is {@code logSumExp - logit[target]}. The log-sum-exp of every row
+ * is kept for {@link SoftmaxCrossEntropyBackwardOperation}.
+ */
+class SoftmaxCrossEntropyForwardOperation extends ForwardComputeOperation {
+    private final double[] logSumExp;
+
+    SoftmaxCrossEntropyForwardOperation(Matrix logits, Matrix targets, ForwardComputeOperation... forwardComputeOperations) {
+        super(logits, targets, forwardComputeOperations);
+        if (targets.numRows() != logits.numRows() || targets.numCols() != 1) {
+            throw new IllegalArgumentException("Targets must be a column with one class index per row of the logits, found: ["
+                    + targets.numRows() + "," + targets.numCols() + "] for logits of " + logits.numRows() + " rows");
+        }
+        this.logSumExp = new double[logits.numRows()];
+    }
+
+    /**
+     * @return log(sum(exp(logits))) of every row as of the last forward pass.
+     */
+    double[] getLogSumExp() {
+        return logSumExp;
+    }
+
+    /**
+     * @return the class index stored in the given row of targets, checked against the number of classes.
+     */
+    static int target(Matrix targets, int row, int numClasses) {
+        final double value = targets.getValue(row, 0);
+        final int target = (int) value;
+        if (target != value || target < 0 || target >= numClasses) {
+            throw new IllegalArgumentException("Target of row " + row + " must be a class index between 0 and " + (numClasses - 1) + ", found: " + value);
+        }
+        return target;
+    }
+
+    @Override
+    protected void perform() {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        final Matrix logits = getLeft();
+        final int numTasks = CostModel.elementwiseTasks((long) logits.numRows() * logits.numCols(), 1, 1, details.numThreads());
+        final double[] partials = new double[RangePartitioner.numChunks(numTasks)];
+        RangePartitioner.run(details, logits.numRows(), numTasks, new SoftmaxCrossEntropyForwardOperation.WorkerJob(logits, getRight(), partials));
+        double loss = 0;
+        for (double partial : partials) {
+            loss += partial;
+        }
+        getResult().setValue(0, 0, loss / logits.numRows());
+    }
+
+    private class WorkerJob implements RangePartitioner.RangeJob {
+        private final Matrix logits;
+        private final Matrix targets;
+        private final double[] partials;
+
+        public WorkerJob(Matrix logits, Matrix targets, double[] partials) {
+            this.logits = logits;
+            this.targets = targets;
+            this.partials = partials;
+        }
+
+        @Override
+        public void run(int chunk, int from, int to) {
+            final int numCols = logits.numCols();
+            final StridedStorage in = logits.getValueStorage();
+            double loss = 0;
+            for (int row = from; row < to; row++) {
+                final int target = target(targets, row, numCols);
+                double max = Double.NEGATIVE_INFINITY;
+                double sum = 0;
+                if (null != in) {
+                    final double[] inData = in.data();
+                    for (int col = 0, index = in.offset() + row * in.rowStride(); col < numCols; col++, index += in.colStride()) {
+                        final double value = inData[index];
+                        if (value > max) {
+                            sum = sum * Math.exp(max - value) + 1;
+                            max = value;
+                        } else {
+                            sum += Math.exp(value - max);
+                        }
+                    }
+                } else {
+                    for (int col = 0; col < numCols; col++) {
+                        final double value = logits.getValue(row, col);
+                        if (value > max) {
+                            sum = sum * Math.exp(max - value) + 1;
+                            max = value;
+                        } else {
+                            sum += Math.exp(value - max);
+                        }
+                    }
+                }
+                logSumExp[row] = max + Math.log(sum);
+                loss += logSumExp[row] - logits.getValue(row, target);
+            }
+            partials[chunk] = loss;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * Numerically stable softmax of every group (see {@link AxisGroups}) in one operation.
+ * The first pass over a group finds its maximum, the second writes {@code exp(x - max)} to the result while summing
+ * it, and the result is then scaled by the reciprocal of the sum while it is still in cache. The maximum contributes
+ * exp(0) = 1 to the sum, so the sum is at least 1 and needs no epsilon.
+ */
+class SoftmaxForwardOperation extends ForwardComputeOperation {
+    private final int axis;
+
+    SoftmaxForwardOperation(Matrix source, int axis, ForwardComputeOperation... forwardComputeOperations) {
+        super(source, null, forwardComputeOperations);
+        this.axis = axis;
+    }
+
+    @Override
+    protected void perform() {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        final AxisGroups groups = AxisGroups.of(getLeft(), axis);
+        final int numTasks = CostModel.elementwiseTasks((long) groups.numGroups() * groups.groupLength(), 2, 3, details.numThreads());
+        RangePartitioner.run(details, groups.numGroups(), numTasks, new SoftmaxForwardOperation.WorkerJob(getLeft(), getResult(), groups));
+    }
+
+    private static class WorkerJob implements RangePartitioner.RangeJob {
+        private final Matrix source;
+        private final Matrix result;
+        private final AxisGroups groups;
+
+        public WorkerJob(Matrix source, Matrix result, AxisGroups groups) {
+            this.source = source;
+            this.result = result;
+            this.groups = groups;
+        }
+
+        @Override
+        public void run(int chunk, int from, int to) {
+            final int length = groups.groupLength();
+            final StridedStorage in = source.getValueStorage();
+            final StridedStorage o = result.getValueStorage();
+            if (groups.isLinear(in)) {
+                final double[] inData = in.data();
+                final double[] oData = o.data();
+                final int inStride = groups.stride(in);
+                final int oStride = groups.stride(o);
+                for (int group = from; group < to; group++) {
+                    final int inStart = groups.start(in, group);
+                    final int oStart = groups.start(o, group);
+                    double max = Double.NEGATIVE_INFINITY;
+                    for (int e = 0, inIndex = inStart; e < length; e++, inIndex += inStride) {
+                        max = Math.max(max, inData[inIndex]);
+                    }
+                    double sum = 0;
+                    for (int e = 0, inIndex = inStart, oIndex = oStart; e < length; e++, inIndex += inStride, oIndex += oStride) {
+                        final double value = Math.exp(inData[inIndex] - max);
+                        oData[oIndex] = value;
+                        sum += value;
+                    }
+                    final double scale = 1 / sum;
+                    for (int e = 0, oIndex = oStart; e < length; e++, oIndex += oStride) {
+                        oData[oIndex] *= scale;
+                    }
+                }
+                return;
+            }
+
+            for (int group = from; group < to; group++) {
+                double max = Double.NEGATIVE_INFINITY;
+                for (int e = 0; e < length; e++) {
+                    max = Math.max(max, source.getValue(groups.row(group, e), groups.column(group, e)));
+                }
+                double sum = 0;
+                for (int e = 0; e < length; e++) {
+                    final int row = groups.row(group, e);
+                    final int column = groups.column(group, e);
+                    final double value = Math.exp(source.getValue(row, column) - max);
+                    result.setValue(row, column, value);
+                    sum += value;
+                }
+                final double scale = 1 / sum;
+                for (int e = 0; e < length; e++) {
+                    final int row = groups.row(group, e);
+                    final int column = groups.column(group, e);
+                    result.setValue(row, column, result.getValue(row, column) * scale);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.ashutoshwad.utils.jautograd;
+
+import java.util.Arrays;
+
+/**
+ * A matrix that is mostly zeros, stored as CSR: the non-zeros of row r are values[rowPointers[r] .. rowPointers[r + 1])
+ * at columns columnIndices[...], sorted by column. {@link #matmul(Matrix)} with a dense matrix only touches the
+ * non-zeros. The set of non-zeros, the pattern, is fixed: elements outside of it read as zero and can only be set to
+ * zero, and a trainable sparse matrix only keeps gradients for its pattern, gradients for other elements are dropped.
+ */
+public class SparseMatrix extends Matrix {
+    private final int numRows;
+    private final int numCols;
+    private final int[] rowPointers;
+    private final int[] columnIndices;
+    private final double[] values;
+    private final double[] gradients;
+
+    SparseMatrix(int numRows, int numCols, int[] rowPointers, int[] columnIndices, double[] values, boolean trainable) {
+        super(trainable, null, null);
+        if (numRows <= 0 || numCols <= 0) {
+            throw new IllegalArgumentException("A matrix cannot have 0 or less than 0 rows or columns, found: [" + numRows + "," + numCols + "]");
+        }
+        if (rowPointers.length != numRows + 1 || rowPointers[0] != 0 || rowPointers[numRows] != columnIndices.length
+                || columnIndices.length != values.length) {
+            throw new IllegalArgumentException("Row pointers must have one entry per row plus one, starting at 0 and ending at the number of non-zeros");
+        }
+        for (int row = 0; row < numRows; row++) {
+            if (rowPointers[row] > rowPointers[row + 1]) {
+                throw new IllegalArgumentException("Row pointers must not decrease, found one at row: " + row);
+            }
+            for (int index = rowPointers[row]; index < rowPointers[row + 1]; index++) {
+                final int column = columnIndices[index];
+                if (column < 0 || column >= numCols || (index > rowPointers[row] && column <= columnIndices[index - 1])) {
+                    throw new IllegalArgumentException("Column indices must be within [0, " + numCols + ") and increasing within a row, found "
+                            + column + " in row: " + row);
+                }
+            }
+        }
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.rowPointers = rowPointers;
+        this.columnIndices = columnIndices;
+        this.values = values;
+        this.gradients = trainable ? new double[values.length] : null;
+    }
+
+    /**
+     * Builds a sparse matrix from COO triplets in any order, adding up values given for the same element.
+     */
+    static SparseMatrix fromCoordinates(int numRows, int numCols, int[] rows, int[] columns, double[] values, boolean trainable) {
+        if (rows.length != columns.length || rows.length != values.length) {
+            throw new IllegalArgumentException("Rows, columns and values must have the same length, found: "
+                    + rows.length + ", " + columns.length + ", " + values.length);
+        }
+        final Integer[] order = new Integer[rows.length];
+        for (int i = 0; i < order.length; i++) {
+            if (rows[i] < 0 || rows[i] >= numRows || columns[i] < 0 || columns[i] >= numCols) {
+                throw new IllegalArgumentException("Element (" + rows[i] + ", " + columns[i] + ") is outside of a ["
+                        + numRows + "," + numCols + "] matrix");
+            }
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> (rows[a] != rows[b]) ? Integer.compare(rows[a], rows[b]) : Integer.compare(columns[a], columns[b]));
+        final int[] rowPointers = new int[numRows + 1];
+        final int[] columnIndices = new int[order.length];
+        final double[] sorted = new double[order.length];
+        int count = 0;
+        for (int i = 0; i < order.length; i++) {
+            final int element = order[i];
+            if (count > 0 && i > 0 && rows[order[i - 1]] == rows[element] && columnIndices[count - 1] == columns[element]) {
+                sorted[count - 1] += values[element];
+                continue;
+            }
+            columnIndices[count] = columns[element];
+            sorted[count] = values[element];
+            rowPointers[rows[element] + 1]++;
+            count++;
+        }
+        for (int row = 0; row < numRows; row++) {
+            rowPointers[row + 1] += rowPointers[row];
+        }
+        return new SparseMatrix(numRows, numCols, rowPointers, Arrays.copyOf(columnIndices, count), Arrays.copyOf(sorted, count), trainable);
+    }
+
+    /**
+     * @return the position of the element in the non-zeros, or -1 if it is outside the pattern.
+     */
+    private int find(int row, int column) {
+        if (row < 0 || row >= numRows) {
+            throw new ArrayIndexOutOfBoundsException("This matrix has " + numRows + " rows. An attempt was made to access row: " + row);
+        }
+        if (column < 0 || column >= numCols) {
+            throw new ArrayIndexOutOfBoundsException("This matrix has " + numCols + " columns. An attempt was made to access column: " + column);
+        }
+        final int index = Arrays.binarySearch(columnIndices, rowPointers[row], rowPointers[row + 1], column);
+        return (index < 0) ? -1 : index;
+    }
+
+    //Override accessors
+    public double getValue(int row, int column) {
+        final int index = find(row, column);
+        return (index < 0) ? 0 : values[index];
+    }
+    public void setValue(int row, int column, double value) {
+        final int index = find(row, column);
+        if (index >= 0) {
+            values[index] = value;
+        } else if (value != 0) {
+            throw new IllegalArgumentException("Element (" + row + ", " + column + ") is outside the non-zeros of this sparse matrix");
+        }
+    }
+    public double getGradient(int row, int column) {
+        final int index = find(row, column);
+        return (index < 0) ? 0 : gradients[index];
+    }
+    public void setGradient(int row, int column, double value) {
+        final int index = find(row, column);
+        if (index >= 0) {
+            gradients[index] = value;
+        }
+    }
+    public void accumulateGradient(int row, int column, double value) {
+        final int index = find(row, column);
+        if (index >= 0) {
+            gradients[index] += value;
+        }
+    }
+    public int numRows() {
+        return numRows;
+    }
+    public int numCols() {
+        return numCols;
+    }
+
+    public int numNonZeros() {
+        return values.length;
+    }
+
+    @Override
+    public Matrix matmul(Matrix b) {
+        if (numCols != b.numRows()) {
+            String errorMessage = "Matrix dimension mismatch, this(rows: %d, columns: %d) and otherthis(rows: %d, columns: %d), cannot multiply!";
+            throw new IllegalArgumentException(String.format(errorMessage, numRows, numCols, b.numRows(), b.numCols()));
+        }
+        StridedStorage value = StridedStorage.allocate(numRows, b.numCols());
+        StridedStorage gradient = null;
+        boolean requiresGradient = recordsGradient(this.requiresGradient || b.requiresGradient);
+        if (requiresGradient) {
+            gradient = StridedStorage.allocate(numRows, b.numCols());
+        }
+        ForwardComputeOperation fop = new SparseMatrixMultiplicationForwardOperation(this, b, b.forwardComputeOperation);
+        BackwardComputeOperation bop = null;
+        if (requiresGradient) {
+            bop = new SparseMatrixMultiplicationBackwardOperation(this, b, b.backwardComputeOperation);
+        }
+        return new Matrix(value, gradient, requiresGradient, fop, bop);
+    }
+
+    int[] rowPointers() {
+        return rowPointers;
+    }
+
+    int[] columnIndices() {
+        return columnIndices;
+    }
+
+    double[] values() {
+        return values;
+    }
+
+    /**
+     * @return the gradients of the non-zeros, in the same order as {@link #values()}, or null if not trainable.
+     */
+    double[] gradients() {
+        return gradients;
+    }
+}
@@ -0,0 +1,117 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * Gradient of {@link SparseMatrixMultiplicationForwardOperation}. The dense matrix gets sparse^T x dResult: every
+ * non-zero at (r, k) adds its value times row r of dResult to row k, so workers take blocks of columns, which keeps
+ * their writes disjoint however the non-zeros fall. A trainable sparse matrix only gets the gradients of its
+ * non-zeros, the dot product of row r of dResult and row k of the dense matrix, so workers take blocks of rows.
+ */
+public class SparseMatrixMultiplicationBackwardOperation extends BackwardComputeOperation {
+    SparseMatrixMultiplicationBackwardOperation(SparseMatrix left, Matrix right, BackwardComputeOperation... backwardComputeOperations) {
+        super(left, right, backwardComputeOperations);
+    }
+
+    @Override
+    protected void perform() {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        final SparseMatrix sparse = (SparseMatrix) getLeft();
+        final Matrix dense = getRight();
+        final int numTasks = SparseMatrixMultiplicationForwardOperation.numTasks(sparse, dense, details.numThreads());
+        if (dense.getRequiresGradient()) {
+            final GradientAccumulator accumulator = GradientAccumulator.create(dense, RangePartitioner.numChunks(numTasks), false);
+            RangePartitioner.run(details, dense.numCols(), numTasks,
+                    new SparseMatrixMultiplicationBackwardOperation.DenseJob(sparse, dense, getResult(), accumulator));
+            accumulator.merge();
+        }
+        if (sparse.getRequiresGradient()) {
+            RangePartitioner.run(details, sparse.numRows(), numTasks,
+                    new SparseMatrixMultiplicationBackwardOperation.PatternJob(sparse, dense, getResult()));
+        }
+    }
+
+    private static class DenseJob implements RangePartitioner.RangeJob {
+        private final SparseMatrix sparse;
+        private final Matrix dense;
+        private final Matrix result;
+        private final GradientAccumulator accumulator;
+
+        public DenseJob(SparseMatrix sparse, Matrix dense, Matrix result, GradientAccumulator accumulator) {
+            this.sparse = sparse;
+            this.dense = dense;
+            this.result = result;
+            this.accumulator = accumulator;
+        }
+
+        @Override
+        public void run(int chunk, int from, int to) {
+            final int[] rowPointers = sparse.rowPointers();
+            final int[] columnIndices = sparse.columnIndices();
+            final double[] values = sparse.values();
+            final StridedStorage oGrad = result.getGradientStorage();
+            final StridedStorage dGrad = accumulator.isDirect() ? dense.getGradientStorage() : null;
+            if (null != oGrad && null != dGrad) {
+                final double[] oGradData = oGrad.data();
+                final double[] dGradData = dGrad.data();
+                for (int row = 0; row < sparse.numRows(); row++) {
+                    final int oStart = oGrad.offset() + row * oGrad.rowStride() + from * oGrad.colStride();
+                    for (int index = rowPointers[row]; index < rowPointers[row + 1]; index++) {
+                        final double value = values[index];
+                        int dIndex = dGrad.offset() + columnIndices[index] * dGrad.rowStride() + from * dGrad.colStride();
+                        for (int col = from, oIndex = oStart; col < to; col++, oIndex += oGrad.colStride(), dIndex += dGrad.colStride()) {
+                            dGradData[dIndex] += value * oGradData[oIndex];
+                        }
+                    }
+                }
+                return;
+            }
+
+            for (int row = 0; row < sparse.numRows(); row++) {
+                for (int index = rowPointers[row]; index < rowPointers[row + 1]; index++) {
+                    final double value = values[index];
+                    for (int col = from; col < to; col++) {
+                        accumulator.add(chunk, columnIndices[index], col, value * result.getGradient(row, col));
+                    }
+                }
+            }
+        }
+    }
+
+    private static class PatternJob implements RangePartitioner.RangeJob {
+        private final SparseMatrix sparse;
+        private final Matrix dense;
+        private final Matrix result;
+
+        public PatternJob(SparseMatrix sparse, Matrix dense, Matrix result) {
+            this.sparse = sparse;
+            this.dense = dense;
+            this.result = result;
+        }
+
+        @Override
+        public void run(int chunk, int from, int to) {
+            final int[] rowPointers = sparse.rowPointers();
+            final int[] columnIndices = sparse.columnIndices();
+            final double[] gradients = sparse.gradients();
+            final int numCols = result.numCols();
+            final StridedStorage oGrad = result.getGradientStorage();
+            final StridedStorage d = dense.getValueStorage();
+            for (int row = from; row < to; row++) {
+                for (int index = rowPointers[row]; index < rowPointers[row + 1]; index++) {
+                    double dot = 0;
+                    if (null != oGrad && null != d) {
+                        int oIndex = oGrad.offset() + row * oGrad.rowStride();
+                        int dIndex = d.offset() + columnIndices[index] * d.rowStride();
+                        for (int col = 0; col < numCols; col++, oIndex += oGrad.colStride(), dIndex += d.colStride()) {
+                            dot += oGrad.data()[oIndex] * d.data()[dIndex];
+                        }
+                    } else {
+                        for (int col = 0; col < numCols; col++) {
+                            dot += result.getGradient(row, col) * dense.getValue(columnIndices[index], col);
+                        }
+                    }
+                    gradients[index] += dot;
+                }
+            }
+        }
+    }
+}
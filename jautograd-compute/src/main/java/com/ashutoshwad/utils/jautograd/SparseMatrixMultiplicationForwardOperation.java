@@ -0,0 +1,76 @@
+package com.ashutoshwad.utils.jautograd;
+
+/**
+ * Sparse x dense product. Row r of the result is the sum of the rows of the dense matrix picked by the non-zeros of
+ * row r of the sparse one, each scaled by its value, so the work is proportional to the number of non-zeros times the
+ * width of the result. Workers take blocks of rows of the result.
+ */
+class SparseMatrixMultiplicationForwardOperation extends ForwardComputeOperation {
+    SparseMatrixMultiplicationForwardOperation(SparseMatrix left, Matrix right, ForwardComputeOperation... forwardComputeOperations) {
+        super(left, right, forwardComputeOperations);
+    }
+
+    static int numTasks(SparseMatrix sparse, Matrix dense, int numThreads) {
+        final long nonZeros = sparse.numNonZeros();
+        final long width = dense.numCols();
+        return CostModel.numTasks(2 * nonZeros * width, (nonZeros * (width + 2) + (long) sparse.numRows() * width) * Double.BYTES, numThreads);
+    }
+
+    @Override
+    protected void perform() {
+        ExecutorFactory.Details details = ExecutorFactory.getDetails();
+        final SparseMatrix sparse = (SparseMatrix) getLeft();
+        final int numTasks = numTasks(sparse, getRight(), details.numThreads());
+        RangePartitioner.run(details, sparse.numRows(), numTasks, new SparseMatrixMultiplicationForwardOperation.WorkerJob(sparse, getRight(), getResult()));
+    }
+
+    private static class WorkerJob implements RangePartitioner.RangeJob {
+        private final SparseMatrix sparse;
+        private final Matrix dense;
+        private final Matrix result;
+
+        public WorkerJob(SparseMatrix sparse, Matrix dense, Matrix result) {
+            this.sparse = sparse;
+            this.dense = dense;
+            this.result = result;
+        }
+
+        @Override
+        public void run(int chunk, int from, int to) {
+            final int[] rowPointers = sparse.rowPointers();
+            final int[] columnIndices = sparse.columnIndices();
+            final double[] values = sparse.values();
+            final int numCols = result.numCols();
+            final StridedStorage d = dense.getValueStorage();
+            final StridedStorage o = result.getValueStorage();
+            if (null != d && null != o) {
+                final double[] dData = d.data();
+                final double[] oData = o.data();
+                for (int row = from; row < to; row++) {
+                    final int oStart = o.offset() + row * o.rowStride();
+                    for (int col = 0, oIndex = oStart; col < numCols; col++, oIndex += o.colStride()) {
+                        oData[oIndex] = 0;
+                    }
+                    for (int index = rowPointers[row]; index < rowPointers[row + 1]; index++) {
+                        final double value = values[index];
+                        int dIndex = d.offset() + columnIndices[index] * d.rowStride();
+                        for (int col = 0, oIndex = oStart; col < numCols; col++, oIndex += o.colStride(), dIndex += d.colStride()) {
+                            oData[oIndex] += value * dData[dIndex];
+                        }
+                    }
+                }
+                return;
+            }
+
+            for (int row = from; row < to; row++) {
+                for (int col = 0; col < numCols; col++) {
+                    double accumulator = 0;
+                    for (int index = rowPointers[row]; index < rowPointers[row + 1]; index++) {
+                        accumulator += values[index] * dense.getValue(columnIndices[index], col);
+                    }
+                    result.setValue(row, col, accumulator);
+                }
+            }
+        }
+    }
+}
@@ -34,16 +34,16 @@ public class SplitView extends Matrix {
     public double getValue(int row, int column) {
         return original.getValue(mapRow(row), mapCol(column));
     }
-    public synchronized void setValue(int row, int column, double value) {
+    public void setValue(int row, int column, double value) {
         original.setValue(mapRow(row), mapCol(column), value);
     }
     public double getGradient(int row, int column) {
         return original.getGradient(mapRow(row), mapCol(column));
     }
-    public synchronized void setGradient(int row, int column, double value) {
+    public void setGradient(int row, int column, double value) {
         original.setGradient(mapRow(row), mapCol(column), value);
     }
-    public synchronized void accumulateGradient(int row, int column, double value) {
+    public void accumulateGradient(int row, int column, double value) {
         original.accumulateGradient(mapRow(row), mapCol(column), value);
     }
     public int numRows() {
@@ -52,4 +52,25 @@ public class SplitView extends Matrix {
     public int numCols() {
         return colLength;
     }
+    StridedStorage getValueStorage() {
+        StridedStorage storage = original.getValueStorage();
+        return (null == storage) ? null : storage.slice(rowStart, rowLength, colStart, colLength);
+    }
+    BufferStorage getBufferStorage() {
+        BufferStorage storage = original.getBufferStorage();
+        return (null == storage) ? null : storage.slice(rowStart, rowLength, colStart, colLength);
+    }
+    StridedStorage getGradientStorage() {
+        StridedStorage storage = original.getGradientStorage();
+        return (null == storage) ? null : storage.slice(rowStart, rowLength, colStart, colLength);
+    }
+
+    BufferStorage getGradientBufferStorage() {
+        BufferStorage storage = original.getGradientBufferStorage();
+        return (null == storage) ? null : storage.slice(rowStart, rowLength, colStart, colLength);
+    }
+
+    Matrix[] getViewSources() {
+        return new Matrix[]{original};
+    }
 }
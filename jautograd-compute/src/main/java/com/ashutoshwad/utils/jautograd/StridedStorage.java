@@ -0,0 +1,85 @@
+package com.ashutoshwad.utils.jautograd;
+
+import java.util.Arrays;
+
+/**
+ * A two dimensional window over a single flat {@code double[]}.
+ * Element (row, column) lives at {@code offset + row * rowStride + column * colStride}, so transposes, slices and
+ * broadcasts are just different offsets and strides over the same buffer, no copies and no per-row objects.
+ */
+record StridedStorage(double[] data, int offset, int rowStride, int colStride, int numRows, int numCols) implements ElementWindow {
+
+    public static StridedStorage allocate(int rows, int columns) {
+        final long length = (long) rows * columns;
+        if (length > ElementBuffer.MAX_ARRAY_LENGTH) {
+            throw new IllegalArgumentException("A heap matrix holds at most " + ElementBuffer.MAX_ARRAY_LENGTH + " elements, found: ["
+                    + rows + "," + columns + "]. Use Matrix.createOffHeap for larger matrices");
+        }
+        return new StridedStorage(new double[(int) length], 0, columns, 1, rows, columns);
+    }
+
+    public int index(int row, int column) {
+        if (row < 0 || row >= numRows) {
+            throw new ArrayIndexOutOfBoundsException("This matrix has " + numRows + " rows. An attempt was made to access row: " + row);
+        }
+        if (column < 0 || column >= numCols) {
+            throw new ArrayIndexOutOfBoundsException("This matrix has " + numCols + " columns. An attempt was made to access column: " + column);
+        }
+        return offset + row * rowStride + column * colStride;
+    }
+
+    public double get(int row, int column) {
+        return data[index(row, column)];
+    }
+
+    public void set(int row, int column, double value) {
+        data[index(row, column)] = value;
+    }
+
+    public void add(int row, int column, double value) {
+        data[index(row, column)] += value;
+    }
+
+    public void fill(double value) {
+        if (isContiguous()) {
+            Arrays.fill(data, offset, offset + numRows * numCols, value);
+            return;
+        }
+        for (int row = 0; row < numRows; row++) {
+            int index = offset + row * rowStride;
+            for (int col = 0; col < numCols; col++, index += colStride) {
+                data[index] = value;
+            }
+        }
+    }
+
+    /**
+     * @return true if the elements are laid out row after row with no gaps, i.e. element i of the window is data[offset + i].
+     */
+    public boolean isContiguous() {
+        return colStride == 1 && (rowStride == numCols || numRows == 1);
+    }
+
+    /**
+     * @return true if two different (row, column) pairs can map to the same element, which is the case for broadcasts.
+     */
+    public boolean isOverlapping() {
+        return (rowStride == 0 && numRows > 1) || (colStride == 0 && numCols > 1);
+    }
+
+    public boolean sharesData(StridedStorage other) {
+        return null != other && data == other.data;
+    }
+
+    public StridedStorage transpose() {
+        return new StridedStorage(data, offset, colStride, rowStride, numCols, numRows);
+    }
+
+    public StridedStorage slice(int rowStart, int rowLength, int colStart, int colLength) {
+        return new StridedStorage(data, offset + rowStart * rowStride + colStart * colStride, rowStride, colStride, rowLength, colLength);
+    }
+
+    public StridedStorage broadcast(int rows, int columns) {
+        return new StridedStorage(data, offset, (numRows == 1) ? 0 : rowStride, (numCols == 1) ? 0 : colStride, rows, columns);
+    }
+}
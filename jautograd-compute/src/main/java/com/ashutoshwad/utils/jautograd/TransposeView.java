@@ -11,16 +11,16 @@ public class TransposeView extends Matrix {
     public double getValue(int row, int column) {
         return original.getValue(column, row);
     }
-    public synchronized void setValue(int row, int column, double value) {
+    public void setValue(int row, int column, double value) {
         original.setValue(column, row, value);
     }
     public double getGradient(int row, int column) {
         return original.getGradient(column, row);
     }
-    public synchronized void setGradient(int row, int column, double value) {
+    public void setGradient(int row, int column, double value) {
         original.setGradient(column, row, value);
     }
-    public synchronized void accumulateGradient(int row, int column, double value) {
+    public void accumulateGradient(int row, int column, double value) {
         original.accumulateGradient(column, row, value);
     }
     public int numRows() {
@@ -29,4 +29,25 @@ public class TransposeView extends Matrix {
     public int numCols() {
         return original.numRows();
     }
+    StridedStorage getValueStorage() {
+        StridedStorage storage = original.getValueStorage();
+        return (null == storage) ? null : storage.transpose();
+    }
+    BufferStorage getBufferStorage() {
+        BufferStorage storage = original.getBufferStorage();
+        return (null == storage) ? null : storage.transpose();
+    }
+    StridedStorage getGradientStorage() {
+        StridedStorage storage = original.getGradientStorage();
+        return (null == storage) ? null : storage.transpose();
+    }
+
+    BufferStorage getGradientBufferStorage() {
+        BufferStorage storage = original.getGradientBufferStorage();
+        return (null == storage) ? null : storage.transpose();
+    }
+
+    Matrix[] getViewSources() {
+        return new Matrix[]{original};
+    }
 }
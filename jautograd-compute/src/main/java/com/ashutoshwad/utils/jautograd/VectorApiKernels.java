@@ -0,0 +1,410 @@
+package com.ashutoshwad.utils.jautograd;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vectorized versions of the {@link FunctionRegistry} functions built on the incubating Vector API.
+ * Do not call this class directly, go through {@link SimdKernels} which checks that the module is available.
+ *
+ * Every function gets its own loop instead of a shared loop calling into a lambda, the Vector API only turns into
+ * SIMD instructions when every call in the loop body can be inlined. The lanes compute exactly the same expressions
+ * as the scalar lambdas, and the tail of each range is handled by the scalar lambda itself.
+ */
+final class VectorApiKernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final double NAN_GUARD = 1e-12;
+
+    private VectorApiKernels() {
+    }
+
+    //Forward functions
+    private static VectorOperators.Binary binaryOperator(FunctionRegistry.BinaryCalcFunction function) {
+        if (function == FunctionRegistry.ADD) {
+            return VectorOperators.ADD;
+        } else if (function == FunctionRegistry.SUB) {
+            return VectorOperators.SUB;
+        } else if (function == FunctionRegistry.MUL) {
+            return VectorOperators.MUL;
+        } else if (function == FunctionRegistry.DIV) {
+            return VectorOperators.DIV;
+        } else if (function == FunctionRegistry.MAX) {
+            return VectorOperators.MAX;
+        } else if (function == FunctionRegistry.MIN) {
+            return VectorOperators.MIN;
+        }
+        return null;
+    }
+
+    static boolean supports(FunctionRegistry.BinaryCalcFunction function) {
+        return null != binaryOperator(function);
+    }
+
+    static boolean supports(FunctionRegistry.UnaryCalcFunction function) {
+        return function == FunctionRegistry.RELU
+                || function == FunctionRegistry.LEAKY_RELU
+                || function == FunctionRegistry.SQRT;
+    }
+
+    static void forward(FunctionRegistry.BinaryCalcFunction function, double[] left, int leftOffset, double[] right, int rightOffset, double[] result, int resultOffset, int length) {
+        final VectorOperators.Binary operator = binaryOperator(function);
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector l = DoubleVector.fromArray(SPECIES, left, leftOffset + i);
+            DoubleVector r = DoubleVector.fromArray(SPECIES, right, rightOffset + i);
+            l.lanewise(operator, r).intoArray(result, resultOffset + i);
+        }
+        for (; i < length; i++) {
+            result[resultOffset + i] = function.result(left[leftOffset + i], right[rightOffset + i]);
+        }
+    }
+
+    static void forward(FunctionRegistry.UnaryCalcFunction function, double[] input, int inputOffset, double[] result, int resultOffset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        if (function == FunctionRegistry.RELU) {
+            for (; i < bound; i += SPECIES.length()) {
+                DoubleVector x = DoubleVector.fromArray(SPECIES, input, inputOffset + i);
+                DoubleVector.zero(SPECIES).blend(x, x.compare(VectorOperators.GE, 0.0)).intoArray(result, resultOffset + i);
+            }
+        } else if (function == FunctionRegistry.LEAKY_RELU) {
+            for (; i < bound; i += SPECIES.length()) {
+                DoubleVector x = DoubleVector.fromArray(SPECIES, input, inputOffset + i);
+                x.mul(0.1).blend(x, x.compare(VectorOperators.GE, 0.0)).intoArray(result, resultOffset + i);
+            }
+        } else if (function == FunctionRegistry.SQRT) {
+            for (; i < bound; i += SPECIES.length()) {
+                DoubleVector.fromArray(SPECIES, input, inputOffset + i).lanewise(VectorOperators.SQRT).intoArray(result, resultOffset + i);
+            }
+        }
+        for (; i < length; i++) {
+            result[resultOffset + i] = function.result(input[inputOffset + i]);
+        }
+    }
+
+    //Unary gradient functions, all of them accumulate into the input gradient
+    static boolean supports(FunctionRegistry.UnaryGradientFunction function) {
+        return function == FunctionRegistry.RELU_GRAD
+                || function == FunctionRegistry.LEAKY_RELU_GRAD
+                || function == FunctionRegistry.EXP_GRAD
+                || function == FunctionRegistry.SIGMOID_GRAD
+                || function == FunctionRegistry.TANH_GRAD
+                || function == FunctionRegistry.TAN_GRAD
+                || function == FunctionRegistry.SQRT_GRAD;
+    }
+
+    static void backward(FunctionRegistry.UnaryGradientFunction function, double[] input, int inputOffset, double[] result, int resultOffset,
+                         double[] resultGradient, int resultGradientOffset, double[] inputGradient, int inputGradientOffset, int length) {
+        int i;
+        if (function == FunctionRegistry.RELU_GRAD) {
+            i = reluGrad(0.0, input, inputOffset, resultGradient, resultGradientOffset, inputGradient, inputGradientOffset, length);
+        } else if (function == FunctionRegistry.LEAKY_RELU_GRAD) {
+            i = reluGrad(0.1, input, inputOffset, resultGradient, resultGradientOffset, inputGradient, inputGradientOffset, length);
+        } else if (function == FunctionRegistry.EXP_GRAD) {
+            i = expGrad(result, resultOffset, resultGradient, resultGradientOffset, inputGradient, inputGradientOffset, length);
+        } else if (function == FunctionRegistry.SIGMOID_GRAD) {
+            i = sigmoidGrad(result, resultOffset, resultGradient, resultGradientOffset, inputGradient, inputGradientOffset, length);
+        } else if (function == FunctionRegistry.TANH_GRAD) {
+            i = squareGrad(-1, result, resultOffset, resultGradient, resultGradientOffset, inputGradient, inputGradientOffset, length);
+        } else if (function == FunctionRegistry.TAN_GRAD) {
+            i = squareGrad(1, result, resultOffset, resultGradient, resultGradientOffset, inputGradient, inputGradientOffset, length);
+        } else {
+            i = sqrtGrad(result, resultOffset, resultGradient, resultGradientOffset, inputGradient, inputGradientOffset, length);
+        }
+        for (; i < length; i++) {
+            inputGradient[inputGradientOffset + i] += function.result(input[inputOffset + i], result[resultOffset + i], resultGradient[resultGradientOffset + i]);
+        }
+    }
+
+    private static int reluGrad(double negativeSlope, double[] input, int inputOffset, double[] resultGradient, int resultGradientOffset,
+                                double[] inputGradient, int inputGradientOffset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, input, inputOffset + i);
+            DoubleVector g = DoubleVector.fromArray(SPECIES, resultGradient, resultGradientOffset + i);
+            DoubleVector slope = DoubleVector.broadcast(SPECIES, negativeSlope).blend(1.0, x.compare(VectorOperators.GE, 0.0));
+            DoubleVector.fromArray(SPECIES, inputGradient, inputGradientOffset + i).add(g.mul(slope)).intoArray(inputGradient, inputGradientOffset + i);
+        }
+        return i;
+    }
+
+    private static int expGrad(double[] result, int resultOffset, double[] resultGradient, int resultGradientOffset,
+                               double[] inputGradient, int inputGradientOffset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector o = DoubleVector.fromArray(SPECIES, result, resultOffset + i);
+            DoubleVector g = DoubleVector.fromArray(SPECIES, resultGradient, resultGradientOffset + i);
+            DoubleVector.fromArray(SPECIES, inputGradient, inputGradientOffset + i).add(g.mul(o)).intoArray(inputGradient, inputGradientOffset + i);
+        }
+        return i;
+    }
+
+    private static int sigmoidGrad(double[] result, int resultOffset, double[] resultGradient, int resultGradientOffset,
+                                   double[] inputGradient, int inputGradientOffset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector o = DoubleVector.fromArray(SPECIES, result, resultOffset + i);
+            DoubleVector g = DoubleVector.fromArray(SPECIES, resultGradient, resultGradientOffset + i);
+            DoubleVector derivative = o.mul(DoubleVector.broadcast(SPECIES, 1.0).sub(o));
+            DoubleVector.fromArray(SPECIES, inputGradient, inputGradientOffset + i).add(g.mul(derivative)).intoArray(inputGradient, inputGradientOffset + i);
+        }
+        return i;
+    }
+
+    /**
+     * g * (1 + sign * o * o), which covers tanh (sign -1) and tan (sign 1).
+     */
+    private static int squareGrad(double sign, double[] result, int resultOffset, double[] resultGradient, int resultGradientOffset,
+                                  double[] inputGradient, int inputGradientOffset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector o = DoubleVector.fromArray(SPECIES, result, resultOffset + i);
+            DoubleVector g = DoubleVector.fromArray(SPECIES, resultGradient, resultGradientOffset + i);
+            DoubleVector square = o.mul(o);
+            DoubleVector derivative = (sign < 0) ? DoubleVector.broadcast(SPECIES, 1.0).sub(square) : DoubleVector.broadcast(SPECIES, 1.0).add(square);
+            DoubleVector.fromArray(SPECIES, inputGradient, inputGradientOffset + i).add(g.mul(derivative)).intoArray(inputGradient, inputGradientOffset + i);
+        }
+        return i;
+    }
+
+    private static int sqrtGrad(double[] result, int resultOffset, double[] resultGradient, int resultGradientOffset,
+                                double[] inputGradient, int inputGradientOffset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector o = DoubleVector.fromArray(SPECIES, result, resultOffset + i).max(NAN_GUARD);
+            DoubleVector g = DoubleVector.fromArray(SPECIES, resultGradient, resultGradientOffset + i);
+            DoubleVector derivative = DoubleVector.broadcast(SPECIES, 1.0).div(o.mul(2.0));
+            DoubleVector.fromArray(SPECIES, inputGradient, inputGradientOffset + i).add(g.mul(derivative)).intoArray(inputGradient, inputGradientOffset + i);
+        }
+        return i;
+    }
+
+    //Binary gradient functions, each side is computed in its own pass
+    static boolean supports(FunctionRegistry.BinaryGradientFunction function) {
+        return function == FunctionRegistry.ADD_GRAD_LEFT || function == FunctionRegistry.ADD_GRAD_RIGHT
+                || function == FunctionRegistry.SUB_GRAD_LEFT || function == FunctionRegistry.SUB_GRAD_RIGHT
+                || function == FunctionRegistry.MUL_GRAD_LEFT || function == FunctionRegistry.MUL_GRAD_RIGHT
+                || function == FunctionRegistry.DIV_GRAD_LEFT || function == FunctionRegistry.DIV_GRAD_RIGHT
+                || function == FunctionRegistry.MAX_GRAD_LEFT || function == FunctionRegistry.MAX_GRAD_RIGHT
+                || function == FunctionRegistry.MIN_GRAD_LEFT || function == FunctionRegistry.MIN_GRAD_RIGHT;
+    }
+
+    static void backward(FunctionRegistry.BinaryGradientFunction leftFunction, FunctionRegistry.BinaryGradientFunction rightFunction,
+                         double[] left, int leftOffset, double[] right, int rightOffset, double[] result, int resultOffset,
+                         double[] resultGradient, int resultGradientOffset,
+                         double[] leftGradient, int leftGradientOffset, double[] rightGradient, int rightGradientOffset, int length) {
+        if (null != leftGradient) {
+            binaryGradient(leftFunction, left, leftOffset, right, rightOffset, result, resultOffset, resultGradient, resultGradientOffset, leftGradient, leftGradientOffset, length);
+        }
+        if (null != rightGradient) {
+            binaryGradient(rightFunction, left, leftOffset, right, rightOffset, result, resultOffset, resultGradient, resultGradientOffset, rightGradient, rightGradientOffset, length);
+        }
+    }
+
+    private static void binaryGradient(FunctionRegistry.BinaryGradientFunction function, double[] left, int leftOffset, double[] right, int rightOffset,
+                                       double[] result, int resultOffset, double[] resultGradient, int resultGradientOffset,
+                                       double[] gradient, int gradientOffset, int length) {
+        int i;
+        if (function == FunctionRegistry.ADD_GRAD_LEFT || function == FunctionRegistry.ADD_GRAD_RIGHT || function == FunctionRegistry.SUB_GRAD_LEFT) {
+            i = scaledGrad(1.0, resultGradient, resultGradientOffset, gradient, gradientOffset, length);
+        } else if (function == FunctionRegistry.SUB_GRAD_RIGHT) {
+            i = scaledGrad(-1.0, resultGradient, resultGradientOffset, gradient, gradientOffset, length);
+        } else if (function == FunctionRegistry.MUL_GRAD_LEFT) {
+            i = productGrad(right, rightOffset, resultGradient, resultGradientOffset, gradient, gradientOffset, length);
+        } else if (function == FunctionRegistry.MUL_GRAD_RIGHT) {
+            i = productGrad(left, leftOffset, resultGradient, resultGradientOffset, gradient, gradientOffset, length);
+        } else if (function == FunctionRegistry.DIV_GRAD_LEFT) {
+            i = divLeftGrad(right, rightOffset, resultGradient, resultGradientOffset, gradient, gradientOffset, length);
+        } else if (function == FunctionRegistry.DIV_GRAD_RIGHT) {
+            i = divRightGrad(left, leftOffset, right, rightOffset, resultGradient, resultGradientOffset, gradient, gradientOffset, length);
+        } else if (function == FunctionRegistry.MAX_GRAD_LEFT) {
+            i = selectGrad(VectorOperators.GT, left, leftOffset, right, rightOffset, resultGradient, resultGradientOffset, gradient, gradientOffset, length);
+        } else if (function == FunctionRegistry.MAX_GRAD_RIGHT) {
+            i = selectGrad(VectorOperators.GT, right, rightOffset, left, leftOffset, resultGradient, resultGradientOffset, gradient, gradientOffset, length);
+        } else if (function == FunctionRegistry.MIN_GRAD_LEFT) {
+            i = selectGrad(VectorOperators.LT, left, leftOffset, right, rightOffset, resultGradient, resultGradientOffset, gradient, gradientOffset, length);
+        } else {
+            i = selectGrad(VectorOperators.LT, right, rightOffset, left, leftOffset, resultGradient, resultGradientOffset, gradient, gradientOffset, length);
+        }
+        for (; i < length; i++) {
+            gradient[gradientOffset + i] += function.result(left[leftOffset + i], right[rightOffset + i], result[resultOffset + i], resultGradient[resultGradientOffset + i]);
+        }
+    }
+
+    private static int scaledGrad(double scale, double[] resultGradient, int resultGradientOffset, double[] gradient, int gradientOffset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector g = DoubleVector.fromArray(SPECIES, resultGradient, resultGradientOffset + i);
+            if (scale != 1.0) {
+                g = g.mul(scale);
+            }
+            DoubleVector.fromArray(SPECIES, gradient, gradientOffset + i).add(g).intoArray(gradient, gradientOffset + i);
+        }
+        return i;
+    }
+
+    private static int productGrad(double[] other, int otherOffset, double[] resultGradient, int resultGradientOffset, double[] gradient, int gradientOffset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, other, otherOffset + i);
+            DoubleVector g = DoubleVector.fromArray(SPECIES, resultGradient, resultGradientOffset + i);
+            DoubleVector.fromArray(SPECIES, gradient, gradientOffset + i).add(g.mul(x)).intoArray(gradient, gradientOffset + i);
+        }
+        return i;
+    }
+
+    private static int divLeftGrad(double[] right, int rightOffset, double[] resultGradient, int resultGradientOffset, double[] gradient, int gradientOffset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector r = nanGuard(DoubleVector.fromArray(SPECIES, right, rightOffset + i));
+            DoubleVector g = DoubleVector.fromArray(SPECIES, resultGradient, resultGradientOffset + i);
+            DoubleVector.fromArray(SPECIES, gradient, gradientOffset + i).add(g.div(r)).intoArray(gradient, gradientOffset + i);
+        }
+        return i;
+    }
+
+    private static int divRightGrad(double[] left, int leftOffset, double[] right, int rightOffset, double[] resultGradient, int resultGradientOffset,
+                                    double[] gradient, int gradientOffset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector l = DoubleVector.fromArray(SPECIES, left, leftOffset + i);
+            DoubleVector r = nanGuard(DoubleVector.fromArray(SPECIES, right, rightOffset + i));
+            DoubleVector g = DoubleVector.fromArray(SPECIES, resultGradient, resultGradientOffset + i);
+            DoubleVector derivative = l.mul(DoubleVector.broadcast(SPECIES, -1.0).div(r.mul(r)));
+            DoubleVector.fromArray(SPECIES, gradient, gradientOffset + i).add(g.mul(derivative)).intoArray(gradient, gradientOffset + i);
+        }
+        return i;
+    }
+
+    /**
+     * Gradient of max/min for the operand "self": the full gradient where self wins by more than EPSILON, half of it on a
+     * tie, nothing otherwise. The winning test takes precedence over the tie test, as in the scalar functions.
+     */
+    private static int selectGrad(VectorOperators.Comparison wins, double[] self, int selfOffset, double[] other, int otherOffset,
+                                  double[] resultGradient, int resultGradientOffset, double[] gradient, int gradientOffset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector s = DoubleVector.fromArray(SPECIES, self, selfOffset + i);
+            DoubleVector o = DoubleVector.fromArray(SPECIES, other, otherOffset + i);
+            DoubleVector g = DoubleVector.fromArray(SPECIES, resultGradient, resultGradientOffset + i);
+            VectorMask<Double> won = (wins == VectorOperators.GT)
+                    ? s.compare(VectorOperators.GT, o.add(FunctionRegistry.EPSILON))
+                    : s.compare(VectorOperators.LT, o.add(FunctionRegistry.EPSILON));
+            VectorMask<Double> tie = s.sub(o).abs().compare(VectorOperators.LE, FunctionRegistry.EPSILON);
+            DoubleVector contribution = DoubleVector.zero(SPECIES).blend(g.mul(0.5), tie).blend(g, won);
+            DoubleVector.fromArray(SPECIES, gradient, gradientOffset + i).add(contribution).intoArray(gradient, gradientOffset + i);
+        }
+        return i;
+    }
+
+    private static DoubleVector nanGuard(DoubleVector x) {
+        DoubleVector guard = DoubleVector.broadcast(SPECIES, -NAN_GUARD).blend(NAN_GUARD, x.compare(VectorOperators.GE, 0.0));
+        return x.blend(guard, x.abs().compare(VectorOperators.LT, NAN_GUARD));
+    }
+
+    //Reductions
+    static double sum(double[] data, int offset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        DoubleVector accumulator = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            accumulator = accumulator.add(DoubleVector.fromArray(SPECIES, data, offset + i));
+        }
+        double sum = accumulator.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += data[offset + i];
+        }
+        return sum;
+    }
+
+    static double max(double[] data, int offset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        DoubleVector accumulator = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            accumulator = accumulator.max(DoubleVector.fromArray(SPECIES, data, offset + i));
+        }
+        double max = accumulator.reduceLanes(VectorOperators.MAX);
+        for (; i < length; i++) {
+            max = Math.max(max, data[offset + i]);
+        }
+        return max;
+    }
+
+    static double min(double[] data, int offset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        DoubleVector accumulator = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            accumulator = accumulator.min(DoubleVector.fromArray(SPECIES, data, offset + i));
+        }
+        double min = accumulator.reduceLanes(VectorOperators.MIN);
+        for (; i < length; i++) {
+            min = Math.min(min, data[offset + i]);
+        }
+        return min;
+    }
+
+    static void sumInto(double[] accumulator, int accumulatorOffset, double[] data, int offset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, accumulator, accumulatorOffset + i)
+                    .add(DoubleVector.fromArray(SPECIES, data, offset + i))
+                    .intoArray(accumulator, accumulatorOffset + i);
+        }
+        for (; i < length; i++) {
+            accumulator[accumulatorOffset + i] += data[offset + i];
+        }
+    }
+
+    static void maxInto(double[] accumulator, int accumulatorOffset, double[] data, int offset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, accumulator, accumulatorOffset + i)
+                    .max(DoubleVector.fromArray(SPECIES, data, offset + i))
+                    .intoArray(accumulator, accumulatorOffset + i);
+        }
+        for (; i < length; i++) {
+            accumulator[accumulatorOffset + i] = Math.max(accumulator[accumulatorOffset + i], data[offset + i]);
+        }
+    }
+
+    static void minInto(double[] accumulator, int accumulatorOffset, double[] data, int offset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, accumulator, accumulatorOffset + i)
+                    .min(DoubleVector.fromArray(SPECIES, data, offset + i))
+                    .intoArray(accumulator, accumulatorOffset + i);
+        }
+        for (; i < length; i++) {
+            accumulator[accumulatorOffset + i] = Math.min(accumulator[accumulatorOffset + i], data[offset + i]);
+        }
+    }
+
+    static void addScalar(double[] data, int offset, int length, double value) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, data, offset + i).add(value).intoArray(data, offset + i);
+        }
+        for (; i < length; i++) {
+            data[offset + i] += value;
+        }
+    }
+}
@@ -63,7 +63,7 @@ public class VerticalConcatView extends Matrix  {
         IndexTuple tup = mapRows(row);
         return matrices[tup.matrixNum].getValue(tup.rowIndex, column);
     }
-    public synchronized void setValue(int row, int column, double value) {
+    public void setValue(int row, int column, double value) {
         IndexTuple tup = mapRows(row);
         matrices[tup.matrixNum].setValue(tup.rowIndex, column, value);
     }
@@ -71,11 +71,11 @@ public class VerticalConcatView extends Matrix  {
         IndexTuple tup = mapRows(row);
         return matrices[tup.matrixNum].getGradient(tup.rowIndex, column);
     }
-    public synchronized void setGradient(int row, int column, double value) {
+    public void setGradient(int row, int column, double value) {
         IndexTuple tup = mapRows(row);
         matrices[tup.matrixNum].setGradient(tup.rowIndex, column, value);
     }
-    public synchronized void accumulateGradient(int row, int column, double value) {
+    public void accumulateGradient(int row, int column, double value) {
         IndexTuple tup = mapRows(row);
         matrices[tup.matrixNum].accumulateGradient(tup.rowIndex, column, value);
     }
@@ -85,4 +85,8 @@ public class VerticalConcatView extends Matrix  {
     public int numCols() {
         return matrices[0].numCols();
     }
+
+    Matrix[] getViewSources() {
+        return matrices;
+    }
 }
@@ -10,7 +10,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
 public class AdamWOptimizer {
-    private record GradientData(Matrix parameters, double[][]momentum, double[][]variance){}
+    private record GradientData(Matrix parameters, LongDoubleArray momentum, LongDoubleArray variance, MasterCopy master){}
 
     private static final double EPSILON = 0.0000001;
 
@@ -36,7 +36,7 @@ public class AdamWOptimizer {
     }
 
     public void addParameter(Matrix m) {
-        GradientData data = new GradientData(m, new double[m.numRows()][m.numCols()], new double[m.numRows()][m.numCols()]);
+        GradientData data = new GradientData(m, new LongDoubleArray(m.numElements()), new LongDoubleArray(m.numElements()), MasterCopy.of(m));
         gradientDataList.add(data);
     }
 
@@ -73,21 +73,22 @@ public class AdamWOptimizer {
         @Override
         public void run() {
             Matrix parameters = data.parameters;
+            long index = 0;
             for (int row = 0; row < parameters.numRows(); row++) {
-                for (int col = 0; col < parameters.numCols(); col++) {
+                for (int col = 0; col < parameters.numCols(); col++, index++) {
                     final double gradient = data.parameters.getGradient(row, col);
-                    double momentum = data.momentum[row][col];
-                    double variance = data.variance[row][col];
+                    double momentum = data.momentum.get(index);
+                    double variance = data.variance.get(index);
                     momentum = MOMENTUM_BETA * momentum + (1 - MOMENTUM_BETA) * gradient;
                     variance = VARIANCE_BETA * variance + (1 - VARIANCE_BETA) * (gradient * gradient);
-                    data.momentum[row][col] = momentum;
-                    data.variance[row][col] = variance;
+                    data.momentum.set(index, momentum);
+                    data.variance.set(index, variance);
                     double mPrime = momentum / (1 - Math.pow(MOMENTUM_BETA, step));
                     double vPrime = variance / (1 - Math.pow(VARIANCE_BETA, step));
 
-                    double value = parameters.getValue(row, col);
+                    double value = (null != data.master) ? data.master.get(index) : parameters.getValue(row, col);
                     double updatedValue = value - learningRate * (mPrime / (Math.sqrt(vPrime) + EPSILON) + DECAY_RATE * value);
-                    parameters.setValue(row, col, updatedValue);
+                    parameters.setValue(row, col, (null != data.master) ? data.master.set(index, updatedValue) : updatedValue);
                 }
             }
         }
@@ -0,0 +1,27 @@
+package com.ashutoshwad.utils.jautograd.optimizer;
+
+/**
+ * Zero initialised doubles indexed with a long, stored in chunks of at most 2^27 elements, so optimizer state can
+ * match parameters of more than 2^31 elements.
+ */
+final class LongDoubleArray {
+    static final int CHUNK_SHIFT = 27;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    private final double[][] chunks;
+
+    LongDoubleArray(long length) {
+        this.chunks = new double[Math.toIntExact((length + CHUNK_MASK) >>> CHUNK_SHIFT)][];
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            chunks[chunk] = new double[(int) Math.min(CHUNK_MASK + 1, length - ((long) chunk << CHUNK_SHIFT))];
+        }
+    }
+
+    double get(long index) {
+        return chunks[(int) (index >>> CHUNK_SHIFT)][(int) (index & CHUNK_MASK)];
+    }
+
+    void set(long index, double value) {
+        chunks[(int) (index >>> CHUNK_SHIFT)][(int) (index & CHUNK_MASK)] = value;
+    }
+}
@@ -0,0 +1,51 @@
+package com.ashutoshwad.utils.jautograd.optimizer;
+
+import com.ashutoshwad.utils.jautograd.Matrix;
+
+/**
+ * Float32 copy of a parameter kept in a 16 bit {@link com.ashutoshwad.utils.jautograd.Precision}. An update smaller
+ * than the spacing of the 16 bit values would round away to nothing, so the optimizers apply updates to the copy and
+ * store the rounded result in the parameter. Indexed row by row with a long like {@link LongDoubleArray}.
+ */
+final class MasterCopy {
+    private static final long CHUNK_MASK = (1L << LongDoubleArray.CHUNK_SHIFT) - 1;
+
+    private final float[][] chunks;
+
+    private MasterCopy(long length) {
+        this.chunks = new float[Math.toIntExact((length + CHUNK_MASK) >>> LongDoubleArray.CHUNK_SHIFT)][];
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            chunks[chunk] = new float[(int) Math.min(CHUNK_MASK + 1, length - ((long) chunk << LongDoubleArray.CHUNK_SHIFT))];
+        }
+    }
+
+    /**
+     * @return a copy of the values of the parameter, or null if it is kept in float32 or wider and is its own master copy.
+     */
+    static MasterCopy of(Matrix parameters) {
+        if (parameters.getPrecision().bytesPerElement() >= Float.BYTES) {
+            return null;
+        }
+        MasterCopy master = new MasterCopy(parameters.numElements());
+        long index = 0;
+        for (int row = 0; row < parameters.numRows(); row++) {
+            for (int col = 0; col < parameters.numCols(); col++, index++) {
+                master.set(index, parameters.getValue(row, col));
+            }
+        }
+        return master;
+    }
+
+    double get(long index) {
+        return chunks[(int) (index >>> LongDoubleArray.CHUNK_SHIFT)][(int) (index & CHUNK_MASK)];
+    }
+
+    /**
+     * Stores the value rounded to float32 and returns what was stored.
+     */
+    double set(long index, double value) {
+        final float rounded = (float) value;
+        chunks[(int) (index >>> LongDoubleArray.CHUNK_SHIFT)][(int) (index & CHUNK_MASK)] = rounded;
+        return rounded;
+    }
+}
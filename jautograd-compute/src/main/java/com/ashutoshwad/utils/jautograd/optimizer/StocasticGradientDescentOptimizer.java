@@ -10,7 +10,9 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
 public class StocasticGradientDescentOptimizer {
-    private final List<Matrix> parameters;
+    private record Parameter(Matrix parameters, MasterCopy master){}
+
+    private final List<Parameter> parameters;
     private final double learningRate;
 
     public StocasticGradientDescentOptimizer(double learningRate) {
@@ -19,7 +21,7 @@ public class StocasticGradientDescentOptimizer {
     }
 
     public void addParameter(Matrix m) {
-        parameters.add(m);
+        parameters.add(new Parameter(m, MasterCopy.of(m)));
     }
 
     public synchronized void learn() {
@@ -27,7 +29,7 @@ public class StocasticGradientDescentOptimizer {
         ExecutorService executorService = details.executorService();
 
         List<Future<?>>futures = new LinkedList<>();
-        for (Matrix params:parameters) {
+        for (Parameter params:parameters) {
             futures.add(executorService.submit(new WorkerJob(params)));
         }
         for (Future<?>future:futures) {
@@ -43,17 +45,27 @@ public class StocasticGradientDescentOptimizer {
     }
 
     private class WorkerJob implements Runnable {
-        private final Matrix parameters;
+        private final Parameter data;
 
-        public WorkerJob(Matrix parameters) {
-            this.parameters = parameters;
+        public WorkerJob(Parameter data) {
+            this.data = data;
         }
 
         @Override
         public void run() {
+            Matrix parameters = data.parameters;
+            if (null == data.master) {
+                for (int row = 0; row < parameters.numRows(); row++) {
+                    for (int col = 0; col < parameters.numCols(); col++) {
+                        parameters.setValue(row, col, parameters.getValue(row, col) - (learningRate * parameters.getGradient(row, col)));
+                    }
+                }
+                return;
+            }
+            long index = 0;
             for (int row = 0; row < parameters.numRows(); row++) {
-                for (int col = 0; col < parameters.numCols(); col++) {
-                    parameters.setValue(row, col, parameters.getValue(row, col) - (learningRate * parameters.getGradient(row, col)));
+                for (int col = 0; col < parameters.numCols(); col++, index++) {
+                    parameters.setValue(row, col, data.master.set(index, data.master.get(index) - (learningRate * parameters.getGradient(row, col))));
                 }
             }
         }
@@ -1,8 +1,22 @@
 package com.ashutoshwad.utils.jautograd;
 
+import com.ashutoshwad.utils.jautograd.optimizer.StocasticGradientDescentOptimizer;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 public class MatrixTest {
     @Test
@@ -24,4 +38,1089 @@ public class MatrixTest {
             }
         }
     }
+
+    @Test
+    public void testStridedViewsMultiplication() {
+        Matrix a = Matrix.create(3, 4, true);
+        Matrix b = Matrix.create(3, 2, true);
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 4; col++) {
+                a.setValue(row, col, row * 4 + col);
+            }
+            b.setValue(row, 0, row + 1);
+            b.setValue(row, 1, -row);
+        }
+
+        //(a^T)[1:3, :] x b, exercises transposed and sliced strides on the left operand
+        Matrix c = a.transpose().slice(1, 3, 0, 3).matmul(b);
+        c.backward();
+        for (int row = 0; row < 2; row++) {
+            for (int col = 0; col < 2; col++) {
+                double expected = 0;
+                for (int k = 0; k < 3; k++) {
+                    expected += a.getValue(k, row + 1) * b.getValue(k, col);
+                }
+                assertEquals(expected, c.getValue(row, col), 1e-12);
+            }
+        }
+        for (int k = 0; k < 3; k++) {
+            assertEquals(0, a.getGradient(k, 0));
+            assertEquals(b.getValue(k, 0) + b.getValue(k, 1), a.getGradient(k, 1), 1e-12);
+            assertEquals(b.getValue(k, 0) + b.getValue(k, 1), a.getGradient(k, 2), 1e-12);
+            assertEquals(0, a.getGradient(k, 3));
+            assertEquals(a.getValue(k, 1) + a.getValue(k, 2), b.getGradient(k, 0), 1e-12);
+        }
+    }
+
+    @Test
+    public void testBlockedMultiplicationMatchesNaive() {
+        Random random = new Random(42);
+        Matrix a = Matrix.create(67, 301, () -> random.nextDouble() - 0.5);
+        Matrix b = Matrix.create(530, 301, () -> random.nextDouble() - 0.5);
+
+        //Odd sizes leave partial register tiles and partial cache blocks, b is consumed transposed
+        Matrix c = a.matmul(b.transpose());
+        for (int row = 0; row < c.numRows(); row++) {
+            for (int col = 0; col < c.numCols(); col++) {
+                double expected = 0;
+                for (int k = 0; k < a.numCols(); k++) {
+                    expected += a.getValue(row, k) * b.getValue(col, k);
+                }
+                assertEquals(expected, c.getValue(row, col), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testBlockedMultiplicationGradients() {
+        Random random = new Random(7);
+        Matrix a = Matrix.create(45, 70, () -> random.nextDouble() - 0.5, true);
+        Matrix b = Matrix.create(70, 38, () -> random.nextDouble() - 0.5, true);
+        Matrix weights = Matrix.create(45, 38, () -> random.nextDouble() - 0.5);
+
+        //d(sum(w * (a x b)))/da = w x b^T and d/db = a^T x w
+        Matrix loss = a.matmul(b).mul(weights).sum();
+        loss.backward();
+        for (int row = 0; row < a.numRows(); row++) {
+            for (int col = 0; col < a.numCols(); col++) {
+                double expected = 0;
+                for (int k = 0; k < b.numCols(); k++) {
+                    expected += weights.getValue(row, k) * b.getValue(col, k);
+                }
+                assertEquals(expected, a.getGradient(row, col), 1e-9);
+            }
+        }
+        for (int row = 0; row < b.numRows(); row++) {
+            for (int col = 0; col < b.numCols(); col++) {
+                double expected = 0;
+                for (int k = 0; k < a.numRows(); k++) {
+                    expected += a.getValue(k, row) * weights.getValue(k, col);
+                }
+                assertEquals(expected, b.getGradient(row, col), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testBroadcastGradientsAcrossWorkers() {
+        Random random = new Random(3);
+        Matrix x = Matrix.create(513, 33, () -> random.nextDouble(), true);
+        Matrix bias = Matrix.create(1, 33, () -> random.nextDouble(), true);
+        Matrix scale = Matrix.create(513, 1, () -> random.nextDouble(), true);
+
+        //Every worker touches every bias element and every scale element, their contributions must all survive
+        Matrix loss = x.add(bias).mul(scale).sum();
+        withThreads(4, () -> {
+            assertTrue(CostModel.elementwiseTasks(513 * 33, 2, 8, 4) > 1);
+            loss.backward();
+        });
+        for (int col = 0; col < bias.numCols(); col++) {
+            double expected = 0;
+            for (int row = 0; row < scale.numRows(); row++) {
+                expected += scale.getValue(row, 0);
+            }
+            assertEquals(expected, bias.getGradient(0, col), 1e-9);
+        }
+        for (int row = 0; row < scale.numRows(); row++) {
+            double expected = 0;
+            for (int col = 0; col < bias.numCols(); col++) {
+                expected += x.getValue(row, col) + bias.getValue(0, col);
+            }
+            assertEquals(expected, scale.getGradient(row, 0), 1e-9);
+            assertEquals(scale.getValue(row, 0), x.getGradient(row, 5), 1e-12);
+        }
+    }
+
+    @Test
+    public void testBroadcastKernelsMatchExpandedOperands() {
+        Random random = new Random(67);
+        Matrix x = Matrix.create(301, 47, () -> random.nextDouble() + 0.5, true);
+        Matrix row = Matrix.create(1, 47, () -> random.nextDouble() + 0.5, true);
+        Matrix column = Matrix.create(301, 1, () -> random.nextDouble() + 0.5, true);
+        Matrix scalar = Matrix.create(1, 1, () -> 2.0, true);
+        Matrix[] broadcasts = {row, column, scalar};
+        withThreads(4, () -> {
+            for (Matrix b : broadcasts) {
+                Matrix expanded = Matrix.create(301, 47, true);
+                for (int r = 0; r < 301; r++) {
+                    for (int c = 0; c < 47; c++) {
+                        expanded.setValue(r, c, b.getValue(b.numRows() == 1 ? 0 : r, b.numCols() == 1 ? 0 : c));
+                    }
+                }
+                //Broadcast on the right of a division and on the left of a subtraction
+                Matrix y = x.div(b).add(b.sub(x));
+                Matrix z = x.div(expanded).add(expanded.sub(x));
+                y.sum().backward();
+                z.sum().backward();
+                for (int r = 0; r < 301; r++) {
+                    for (int c = 0; c < 47; c++) {
+                        assertEquals(z.getValue(r, c), y.getValue(r, c), 1e-12);
+                    }
+                }
+                for (int r = 0; r < b.numRows(); r++) {
+                    for (int c = 0; c < b.numCols(); c++) {
+                        double expected = 0;
+                        for (int er = 0; er < 301; er++) {
+                            for (int ec = 0; ec < 47; ec++) {
+                                if ((b.numRows() == 1 || er == r) && (b.numCols() == 1 || ec == c)) {
+                                    expected += expanded.getGradient(er, ec);
+                                }
+                            }
+                        }
+                        assertEquals(expected, b.getGradient(r, c), 1e-9);
+                    }
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testCostModelKeepsSmallOpsInline() {
+        assertEquals(1, CostModel.elementwiseTasks(4 * 8, 1, 3, 16));
+        assertEquals(1, CostModel.matmulTasks(4, 8, 2, 16));
+        assertEquals(1, CostModel.matmulTasks(1024, 1024, 1024, 1));
+        assertEquals(16, CostModel.matmulTasks(1024, 1024, 1024, 16));
+        int tasks = CostModel.elementwiseTasks(64 * 1024, 1, 3, 16);
+        assertTrue(tasks > 1 && tasks < 16, "Mid sized work should get fewer tasks than threads, got " + tasks);
+    }
+
+    @Test
+    public void testRangePartitionerCoversEveryIndexOnce() {
+        withThreads(3, () -> {
+            ExecutorFactory.Details details = ExecutorFactory.getDetails();
+            int[] hits = new int[1001];
+            int[] owners = new int[hits.length];
+            RangePartitioner.run(details, hits.length, 3, 4, (chunk, from, to) -> {
+                assertTrue(from % 4 == 0, "Chunk boundaries should be aligned, got " + from);
+                for (int i = from; i < to; i++) {
+                    hits[i]++;
+                    owners[i] = chunk;
+                }
+            });
+            for (int i = 0; i < hits.length; i++) {
+                assertEquals(1, hits[i]);
+                assertTrue(i == 0 || owners[i] >= owners[i - 1], "Chunks should be contiguous and in order");
+            }
+            assertEquals(RangePartitioner.numChunks(3) - 1, owners[hits.length - 1]);
+        });
+    }
+
+    @Test
+    public void testInferenceModeRecordsNoGradients() {
+        Matrix x = Matrix.create(2, 3, () -> 0.5, true);
+        Matrix w = Matrix.create(3, 2, () -> 2.0, true);
+
+        Matrix y;
+        try (InferenceMode ignored = InferenceMode.enable()) {
+            y = x.matmul(w).add(x.sum()).tanh().sum(1);
+            assertFalse(y.getRequiresGradient());
+            assertNull(y.getGradientStorage());
+            y.zeroGradAndforward();
+            y.zeroGrad();
+            assertThrows(IllegalArgumentException.class, y::backward);
+        }
+        assertEquals(2 * Math.tanh(3 + 3), y.getValue(0, 0), 1e-12);
+        assertFalse(InferenceMode.isEnabled());
+
+        Matrix loss = x.matmul(w).sum();
+        assertTrue(loss.getRequiresGradient());
+        loss.zeroGradAndforward();
+        loss.backward();
+        assertEquals(4, x.getGradient(0, 0));
+    }
+
+    private static Matrix memoryPlanNet(Matrix x, Matrix w, Matrix b) {
+        Matrix h = x;
+        for (int i = 0; i < 6; i++) {
+            h = h.matmul(w).add(b).tanh().add(h);
+            Matrix[] parts = h.splitCols(2);
+            h = parts[1].concat(parts[0]).mul(h.exp().transpose().transpose());
+        }
+        return h.mul(h).sum();
+    }
+
+    @Test
+    public void testMemoryPlanReusesBuffers() {
+        Matrix[][] leaves = twinLeaves(5, new int[][]{{16, 8}, {8, 8}, {1, 8}});
+        Matrix plain = memoryPlanNet(leaves[0][0], leaves[0][1], leaves[0][2]);
+        Matrix planned = memoryPlanNet(leaves[1][0], leaves[1][1], leaves[1][2]);
+        MemoryPlanner.Summary summary = MemoryPlanner.plan(planned);
+        //Values have to survive until the backward pass, the savings come from gradients taking over their slabs
+        assertTrue(3 * summary.slabElements() < 2 * summary.bufferElements(), summary.toString());
+        assertThrows(IllegalArgumentException.class, planned::planMemory);
+        try (InferenceMode ignored = InferenceMode.enable()) {
+            Matrix inference = memoryPlanNet(leaves[1][0], leaves[1][1], leaves[1][2]);
+            MemoryPlanner.Summary inferenceSummary = MemoryPlanner.plan(inference);
+            assertTrue(8 * inferenceSummary.slabElements() < inferenceSummary.bufferElements(), inferenceSummary.toString());
+            double expected = inference.getValue();
+            inference.forward();
+            assertEquals(expected, inference.getValue(), 1e-12);
+        }
+
+        for (int step = 0; step < 2; step++) {
+            plain.zeroGradAndforward();
+            plain.backward();
+            planned.zeroGradAndforward();
+            planned.backward();
+            assertEquals(plain.getValue(), planned.getValue(), 1e-12);
+            assertGradientsMatch(leaves, 1e-12);
+        }
+    }
+
+    private static Matrix fusionNet(Matrix x, Matrix w, Matrix b) {
+        Matrix h = x.matmul(w).add(b).swish();
+        Matrix g = h.sub(b).mul(h.tanh());
+        return g.exp().div(b.add(Matrix.create(2.0))).sum();
+    }
+
+    @Test
+    public void testElementwiseFusionMatchesUnfused() {
+        Matrix[][] leaves = twinLeaves(17, new int[][]{{300, 40}, {40, 24}, {1, 24}});
+        Matrix plain = fusionNet(leaves[0][0], leaves[0][1], leaves[0][2]);
+        Matrix fused = fusionNet(leaves[1][0], leaves[1][1], leaves[1][2]);
+        //add-swish, sub-mul-exp-div; h is used twice and stays, the add of the constant is outside any chain
+        assertEquals(4, ElementWiseFusion.fuse(fused));
+        assertEquals(0, ElementWiseFusion.fuse(fused));
+        fused.planMemory();
+
+        withThreads(4, () -> {
+            for (int step = 0; step < 2; step++) {
+                plain.zeroGradAndforward();
+                plain.backward();
+                fused.zeroGradAndforward();
+                fused.backward();
+                assertEquals(plain.getValue(), fused.getValue(), 1e-9);
+                assertGradientsMatch(leaves, 1e-9);
+            }
+        });
+    }
+
+    @Test
+    public void testSoftmaxMatchesComposedGraph() {
+        Random random = new Random(23);
+        Matrix weights = Matrix.create(7, 5, () -> random.nextDouble() - 0.5);
+        for (int axis = -1; axis < 2; axis++) {
+            Matrix[] sources = new Matrix[2];
+            Matrix[] outputs = new Matrix[2];
+            for (int n = 0; n < 2; n++) {
+                Random values = new Random(axis + 31);
+                sources[n] = Matrix.create(5, 7, () -> 10 * values.nextDouble(), true);
+                //Transposed, so the whole matrix softmax gets a source that is not contiguous
+                Matrix x = sources[n].transpose();
+                if (n == 0) {
+                    Matrix shiftedExp = (axis < 0) ? x.sub(x.max()).exp() : x.sub(x.max(axis)).exp();
+                    outputs[n] = shiftedExp.div((axis < 0) ? shiftedExp.sum() : shiftedExp.sum(axis));
+                } else {
+                    outputs[n] = (axis < 0) ? x.softmax() : x.softmax(axis);
+                }
+                outputs[n].mul(weights).sum().backward();
+            }
+            for (int row = 0; row < 7; row++) {
+                for (int col = 0; col < 5; col++) {
+                    assertEquals(outputs[0].getValue(row, col), outputs[1].getValue(row, col), 1e-12);
+                    assertEquals(sources[0].getGradient(col, row), sources[1].getGradient(col, row), 1e-12);
+                }
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> weights.softmax(2));
+    }
+
+    @Test
+    public void testLayerNormMatchesComposedGraph() {
+        Random random = new Random(29);
+        Matrix weights = Matrix.create(7, 5, () -> random.nextDouble() - 0.5);
+        for (int axis = -1; axis < 2; axis++) {
+            Matrix[] sources = new Matrix[2];
+            Matrix[] outputs = new Matrix[2];
+            for (int n = 0; n < 2; n++) {
+                Random values = new Random(axis + 37);
+                sources[n] = Matrix.create(5, 7, () -> 100 + 10 * values.nextDouble(), true);
+                Matrix x = sources[n].transpose();
+                if (n == 0) {
+                    Matrix eps = Matrix.create(Matrix.EPSILON);
+                    outputs[n] = (axis < 0) ? x.sub(x.mean()).div(x.variance().add(eps).sqrt())
+                            : x.sub(x.mean(axis)).div(x.variance(axis).add(eps).sqrt());
+                } else {
+                    outputs[n] = (axis < 0) ? x.layerNorm() : x.layerNorm(axis);
+                }
+                outputs[n].mul(weights).sum().backward();
+            }
+            for (int row = 0; row < 7; row++) {
+                for (int col = 0; col < 5; col++) {
+                    assertEquals(outputs[0].getValue(row, col), outputs[1].getValue(row, col), 1e-9);
+                    assertEquals(sources[0].getGradient(col, row), sources[1].getGradient(col, row), 1e-9);
+                }
+            }
+        }
+
+        Matrix x = Matrix.create(4, 3, () -> random.nextDouble(), true);
+        Matrix gain = Matrix.create(1, 3, () -> 2.0, true);
+        Matrix bias = Matrix.create(1, 3, () -> 0.5, true);
+        Matrix y = x.layerNorm(1, gain, bias);
+        y.sum().backward();
+        Matrix normalized = x.layerNorm(1);
+        for (int col = 0; col < 3; col++) {
+            assertEquals(2 * normalized.getValue(0, col) + 0.5, y.getValue(0, col), 1e-12);
+            assertEquals(4, bias.getGradient(0, col));
+        }
+    }
+
+    @Test
+    public void testFusedLossesMatchComposedGraphs() {
+        Random random = new Random(43);
+        int[] classes = {2, 0, 3, 3, 1, 0};
+        Matrix onehot = Matrix.create(6, 4);
+        for (int row = 0; row < classes.length; row++) {
+            onehot.setValue(row, classes[row], 1);
+        }
+        Matrix targets = Matrix.create(6, 4, () -> random.nextDouble());
+        Matrix[] sources = new Matrix[2];
+        Matrix[] losses = new Matrix[4];
+        for (int n = 0; n < 2; n++) {
+            Random values = new Random(47);
+            sources[n] = Matrix.create(6, 4, () -> 8 * values.nextDouble() - 4, true);
+        }
+        losses[0] = sources[0].softmax(1).ln().mul(onehot).sum().mul(Matrix.create(-1.0 / 6));
+        losses[1] = sources[1].softmaxCrossEntropy(classes);
+        Matrix p = sources[0].sigmoid();
+        Matrix one = Matrix.create(1.0);
+        losses[2] = targets.mul(p.ln()).add(one.sub(targets).mul(one.sub(p).ln())).mean().mul(Matrix.create(-1.0));
+        losses[3] = sources[1].binaryCrossEntropyWithLogits(targets);
+        for (Matrix loss : losses) {
+            loss.backward();
+        }
+        assertEquals(losses[0].getValue(0, 0), losses[1].getValue(0, 0), 1e-12);
+        assertEquals(losses[2].getValue(0, 0), losses[3].getValue(0, 0), 1e-12);
+        for (int row = 0; row < 6; row++) {
+            for (int col = 0; col < 4; col++) {
+                assertEquals(sources[0].getGradient(row, col), sources[1].getGradient(row, col), 1e-12);
+            }
+        }
+
+        //Logits far outside the range of exp stay finite
+        Matrix large = Matrix.create(1, 2, () -> 1000.0, true);
+        large.setValue(0, 1, -1000);
+        Matrix loss = large.softmaxCrossEntropy(1).add(large.binaryCrossEntropyWithLogits(Matrix.create(1, 2)));
+        loss.backward();
+        assertEquals(2000 + 500, loss.getValue(0, 0), 1e-9);
+        assertEquals(1.5, large.getGradient(0, 0), 1e-12);
+        assertEquals(-1, large.getGradient(0, 1), 1e-12);
+        assertThrows(IllegalArgumentException.class, () -> large.softmaxCrossEntropy(2));
+    }
+
+    @Test
+    public void testMeanLossesMatchComposedGraphs() {
+        Random random = new Random(53);
+        Matrix target = Matrix.create(9, 3, () -> random.nextDouble(), true);
+        Matrix[] sources = new Matrix[2];
+        for (int n = 0; n < 2; n++) {
+            Random values = new Random(59);
+            sources[n] = Matrix.create(3, 9, () -> 4 * values.nextDouble() - 2, true);
+        }
+        Matrix residual = sources[0].transpose().sub(target);
+        Matrix absolute = residual.relu().add(residual.mul(Matrix.create(-1.0)).relu());
+        Matrix quadratic = absolute.min(Matrix.create(1.0));
+        Matrix[] composed = {
+                residual.mul(residual).mean(),
+                absolute.mean(),
+                quadratic.mul(quadratic).mul(Matrix.create(0.5)).add(absolute.sub(quadratic)).mean()
+        };
+        Matrix x = sources[1].transpose();
+        Matrix[] fused = {x.mse(target), x.mae(target), x.huber(target)};
+        for (int i = 0; i < fused.length; i++) {
+            composed[i].zeroGrad();
+            fused[i].zeroGrad();
+            composed[i].backward();
+            fused[i].backward();
+            assertEquals(composed[i].getValue(0, 0), fused[i].getValue(0, 0), 1e-12);
+            for (int row = 0; row < 3; row++) {
+                for (int col = 0; col < 9; col++) {
+                    assertEquals(sources[0].getGradient(row, col), sources[1].getGradient(row, col), 1e-12);
+                }
+            }
+        }
+
+        Matrix trainableTarget = Matrix.create(9, 3, () -> random.nextDouble(), true);
+        Matrix constant = Matrix.create(9, 3, () -> 0.25);
+        constant.mse(trainableTarget).backward();
+        assertEquals(2 * (trainableTarget.getValue(4, 1) - 0.25) / 27, trainableTarget.getGradient(4, 1), 1e-12);
+        assertThrows(IllegalArgumentException.class, () -> sources[1].mse(target));
+    }
+
+    @Test
+    public void testParallelReductionsAcrossWorkers() {
+        Random random = new Random(61);
+        Matrix source = Matrix.create(700, 900, () -> random.nextDouble() - 0.5, true);
+        Matrix x = source.transpose();
+        Matrix tenths = Matrix.create(1000, 1000, () -> 0.1);
+        withThreads(4, () -> {
+            assertTrue(CostModel.elementwiseTasks(900 * 700, 1, 1, 4) > 1);
+            //Adding 0.1 a million times one by one is off by more than 1e-6
+            assertEquals(100_000, tenths.sum().getValue(0, 0), 1e-9);
+            Matrix columnTenths = tenths.sum(0);
+            for (int col = 0; col < 1000; col++) {
+                assertEquals(100, columnTenths.getValue(0, col), 1e-12);
+            }
+
+            Matrix[] reductions = {x.sum(0), x.sum(1), x.max(0), x.min(1), x.max(), x.min()};
+            for (Matrix reduction : reductions) {
+                reduction.sum().backward();
+            }
+            double max = Double.NEGATIVE_INFINITY;
+            for (int col = 0; col < 700; col++) {
+                double sum = 0;
+                double colMax = Double.NEGATIVE_INFINITY;
+                for (int row = 0; row < 900; row++) {
+                    sum += x.getValue(row, col);
+                    colMax = Math.max(colMax, x.getValue(row, col));
+                }
+                assertEquals(sum, reductions[0].getValue(0, col), 1e-9);
+                assertEquals(colMax, reductions[2].getValue(0, col));
+                max = Math.max(max, colMax);
+            }
+            double min = Double.POSITIVE_INFINITY;
+            for (int row = 0; row < 900; row++) {
+                double sum = 0;
+                double rowMin = Double.POSITIVE_INFINITY;
+                for (int col = 0; col < 700; col++) {
+                    sum += x.getValue(row, col);
+                    rowMin = Math.min(rowMin, x.getValue(row, col));
+                }
+                assertEquals(sum, reductions[1].getValue(row, 0), 1e-9);
+                assertEquals(rowMin, reductions[3].getValue(row, 0));
+                min = Math.min(min, rowMin);
+            }
+            assertEquals(max, reductions[4].getValue(0, 0));
+            assertEquals(min, reductions[5].getValue(0, 0));
+
+            //Every element gets 2 from the sums, plus 1 for every max or min it is
+            double extremes = 0;
+            for (int row = 0; row < 900; row++) {
+                for (int col = 0; col < 700; col++) {
+                    double gradient = x.getGradient(row, col);
+                    assertTrue(gradient == 2 || gradient == 3 || gradient == 4, "Unexpected gradient " + gradient);
+                    extremes += gradient - 2;
+                }
+            }
+            assertEquals(700 + 900 + 1 + 1, extremes);
+        });
+    }
+
+    @Test
+    public void testExtremesAreLocatedInForward() {
+        Matrix x = Matrix.create(3, 4, true);
+        double[][] values = {{1, 5, 5, 2}, {7, 0, 3, 7}, {-2, -2, 6, -1}};
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 4; col++) {
+                x.setValue(row, col, values[row][col]);
+            }
+        }
+        Matrix rowMax = x.max(1);
+        Matrix columnMin = x.min(0);
+        Matrix max = x.max();
+        Matrix loss = rowMax.sum().add(columnMin.sum()).add(max);
+
+        //The backward pass spreads over what the forward pass found, without looking at the values again
+        x.setValue(0, 0, 100);
+        loss.backward();
+        //Ties share: 5 twice in row 0, 7 twice in row 1 and twice overall
+        double[][] expected = {{0, 0.5, 0.5, 0}, {1, 0, 1, 1}, {1, 1, 1, 1}};
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 4; col++) {
+                assertEquals(expected[row][col], x.getGradient(row, col), 1e-12, "at " + row + "," + col);
+            }
+        }
+
+        //Ties spread over many chunks and workers, each found once in the pass that finds the extreme
+        Random random = new Random(17);
+        Matrix wide = Matrix.create(300, 400, () -> (double) random.nextInt(50), true);
+        Matrix wideLoss = wide.max().add(wide.max(0).sum()).add(wide.min(1).sum());
+        withThreads(4, () -> {
+            wideLoss.zeroGradAndforward();
+            wideLoss.backward();
+        });
+        int maxCount = 0;
+        int[] columnMaxCounts = new int[400];
+        int[] rowMinCounts = new int[300];
+        double[] columnMax = new double[400];
+        double[] rowMin = new double[300];
+        Arrays.fill(columnMax, Double.NEGATIVE_INFINITY);
+        Arrays.fill(rowMin, Double.POSITIVE_INFINITY);
+        for (int row = 0; row < 300; row++) {
+            for (int col = 0; col < 400; col++) {
+                double value = wide.getValue(row, col);
+                maxCount += (value == 49) ? 1 : 0;
+                columnMaxCounts[col] = (value > columnMax[col]) ? 1 : columnMaxCounts[col] + ((value == columnMax[col]) ? 1 : 0);
+                columnMax[col] = Math.max(columnMax[col], value);
+                rowMinCounts[row] = (value < rowMin[row]) ? 1 : rowMinCounts[row] + ((value == rowMin[row]) ? 1 : 0);
+                rowMin[row] = Math.min(rowMin[row], value);
+            }
+        }
+        for (int row = 0; row < 300; row++) {
+            for (int col = 0; col < 400; col++) {
+                double value = wide.getValue(row, col);
+                double expectedGradient = ((value == 49) ? 1.0 / maxCount : 0) + ((value == columnMax[col]) ? 1.0 / columnMaxCounts[col] : 0)
+                        + ((value == rowMin[row]) ? 1.0 / rowMinCounts[row] : 0);
+                assertEquals(expectedGradient, wide.getGradient(row, col), 1e-12, "at " + row + "," + col);
+            }
+        }
+    }
+
+    @Test
+    public void testReducedPrecisionStorage() {
+        assertEquals(0.333251953125, Precision.FLOAT16.round(1.0 / 3));
+        assertEquals(0.333984375, Precision.BFLOAT16.round(1.0 / 3));
+        assertEquals(Math.scalb(1.0, -24), Precision.FLOAT16.round(Math.scalb(1.0, -24)));
+        assertEquals(Double.POSITIVE_INFINITY, Precision.FLOAT16.round(65520));
+        assertEquals(65504, Precision.FLOAT16.round(65519));
+        //Just above halfway rounds up, which rounding to the nearest float first would turn into a tie to even
+        assertEquals(1 + Math.scalb(1.0, -10), Precision.FLOAT16.round(1 + Math.scalb(1.0, -11) + Math.scalb(1.0, -40)));
+        assertEquals(1 + Math.scalb(1.0, -7), Precision.BFLOAT16.round(1 + Math.scalb(1.0, -8) + Math.scalb(1.0, -40)));
+        assertEquals(1, Precision.FLOAT16.round(1 + Math.scalb(1.0, -11)));
+        assertEquals(1, Precision.BFLOAT16.round(1 + Math.scalb(1.0, -8)));
+        assertEquals(-Math.scalb(1.0, -24), Precision.FLOAT16.round(-Math.scalb(1.0, -25) - Math.scalb(1.0, -60)));
+
+        Random random = new Random(5);
+        Matrix x = Matrix.create(40, 48, () -> random.nextDouble() * 2 - 1, true);
+        for (Precision precision : new Precision[]{Precision.FLOAT32, Precision.BFLOAT16, Precision.FLOAT16}) {
+            Matrix w = Matrix.create(48, 36, () -> random.nextDouble() * 2 - 1, true, precision);
+            Matrix reference = Matrix.create(48, 36, true);
+            for (int row = 0; row < 48; row++) {
+                for (int col = 0; col < 36; col++) {
+                    assertEquals(precision.round(w.getValue(row, col)), w.getValue(row, col));
+                    reference.setValue(row, col, w.getValue(row, col));
+                }
+            }
+            assertEquals(precision, w.getPrecision());
+            assertEquals(precision, w.transpose().getPrecision());
+
+            //Blocked products widen the narrow operand and accumulate in double, so they match the double graph
+            Matrix compact = x.matmul(w).sum().add(x.matmul(w.transpose().transpose()).max());
+            Matrix wide = x.matmul(reference).sum().add(x.matmul(reference).max());
+            compact.backward();
+            assertEquals(wide.getValue(), compact.getValue(), 1e-9);
+            double[][] xGradient = new double[40][48];
+            for (int row = 0; row < 40; row++) {
+                for (int col = 0; col < 48; col++) {
+                    xGradient[row][col] = x.getGradient(row, col);
+                    x.setGradient(row, col, 0);
+                }
+            }
+            wide.backward();
+            for (int row = 0; row < 40; row++) {
+                for (int col = 0; col < 48; col++) {
+                    assertEquals(x.getGradient(row, col), xGradient[row][col], 1e-9);
+                    x.setGradient(row, col, 0);
+                }
+            }
+            for (int row = 0; row < 48; row++) {
+                for (int col = 0; col < 36; col++) {
+                    assertEquals(reference.getGradient(row, col), w.getGradient(row, col), 1e-9);
+                }
+            }
+        }
+
+        //Steps far below the spacing of bfloat16 around 1 still add up through the float32 master copy
+        Matrix parameter = Matrix.create(1, 1, () -> 1.0, true, Precision.BFLOAT16);
+        StocasticGradientDescentOptimizer optimizer = new StocasticGradientDescentOptimizer(0.0001);
+        optimizer.addParameter(parameter);
+        parameter.setGradient(0, 0, 1);
+        for (int step = 0; step < 100; step++) {
+            optimizer.learn();
+        }
+        assertEquals(Precision.BFLOAT16.round(0.99), parameter.getValue());
+    }
+
+    @Test
+    public void testOffHeapMatrices() {
+        Random random = new Random(6);
+        Matrix x = Matrix.create(40, 48, () -> random.nextDouble() * 2 - 1);
+        Matrix reference = Matrix.create(48, 36, true);
+        Matrix bias = Matrix.create(1, 36, true);
+        Matrix w;
+        Matrix b;
+        try (OffHeapArena arena = new OffHeapArena()) {
+            w = Matrix.createOffHeap(arena, 48, 36, () -> random.nextDouble() * 2 - 1, true);
+            b = Matrix.createOffHeap(arena, 1, 36, () -> 0.5, true, Precision.FLOAT32);
+            assertEquals(48L * 36 * 8 * 2 + 36 * (4 + 8), arena.allocatedBytes());
+            for (int row = 0; row < 48; row++) {
+                for (int col = 0; col < 36; col++) {
+                    reference.setValue(row, col, w.getValue(row, col));
+                }
+            }
+            bias.fill(0.5);
+
+            //Blocked matmul for the value, the broadcast bias gradient goes through the staged accumulator
+            Matrix offHeap = x.matmul(w).add(b).tanh().sum();
+            Matrix onHeap = x.matmul(reference).add(bias).tanh().sum();
+            offHeap.backward();
+            onHeap.backward();
+            assertEquals(onHeap.getValue(), offHeap.getValue(), 1e-9);
+            for (int row = 0; row < 48; row++) {
+                for (int col = 0; col < 36; col++) {
+                    assertEquals(reference.getGradient(row, col), w.getGradient(row, col), 1e-9);
+                }
+            }
+            for (int col = 0; col < 36; col++) {
+                assertEquals(bias.getGradient(0, col), b.getGradient(0, col), 1e-9);
+            }
+
+            StocasticGradientDescentOptimizer optimizer = new StocasticGradientDescentOptimizer(0.1);
+            optimizer.addParameter(w);
+            optimizer.learn();
+            assertEquals(reference.getValue(3, 4) - 0.1 * reference.getGradient(3, 4), w.getValue(3, 4), 1e-12);
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> w.getValue(0, 0));
+        OffHeapArena closed = new OffHeapArena();
+        closed.close();
+        assertFalse(closed.isOpen());
+        assertThrows(IllegalStateException.class, () -> Matrix.createOffHeap(closed, 2, 2, () -> 0.0, false));
+    }
+
+    @Test
+    public void testLongIndexing() {
+        //Chunk boundaries of a range past 2^31, without running anything per element
+        final long total = 3L << 30;
+        final int numTasks = 4;
+        final long[] from = new long[RangePartitioner.numChunks(numTasks)];
+        final long[] to = new long[from.length];
+        RangePartitioner.runLong(ExecutorFactory.getDetails(), total, numTasks, (chunk, chunkFrom, chunkTo) -> {
+            from[chunk] = chunkFrom;
+            to[chunk] = chunkTo;
+        });
+        assertEquals(0, from[0]);
+        for (int chunk = 1; chunk < from.length; chunk++) {
+            assertEquals(to[chunk - 1], from[chunk]);
+        }
+        assertEquals(total, to[to.length - 1]);
+
+        assertEquals(1L << 32, BroadcastView.broadcast(Matrix.create(1.0), 65536, 65536).numElements());
+        assertThrows(IllegalArgumentException.class, () -> StridedStorage.allocate(65536, 65536));
+
+        //64 byte chunks, so every matrix below spans several of them
+        Random random = new Random(7);
+        try (OffHeapArena arena = new OffHeapArena(6)) {
+            Matrix x = Matrix.createOffHeap(arena, 7, 9, () -> (double) random.nextInt(5), true);
+            Matrix w = Matrix.createOffHeap(arena, 9, 5, () -> random.nextDouble() - 0.5, true, Precision.FLOAT32);
+            Matrix xReference = Matrix.create(7, 9, true);
+            Matrix wReference = Matrix.create(9, 5, true);
+            for (int row = 0; row < 9; row++) {
+                for (int col = 0; col < 9; col++) {
+                    if (row < 7) {
+                        xReference.setValue(row, col, x.getValue(row, col));
+                    }
+                    if (col < 5) {
+                        wReference.setValue(row, col, w.getValue(row, col));
+                    }
+                }
+            }
+            Matrix chunked = x.matmul(w).sum().add(x.max()).add(x.min()).add(x.sum());
+            Matrix reference = xReference.matmul(wReference).sum().add(xReference.max()).add(xReference.min()).add(xReference.sum());
+            chunked.backward();
+            reference.backward();
+            assertEquals(reference.getValue(), chunked.getValue(), 1e-12);
+            for (int row = 0; row < 9; row++) {
+                for (int col = 0; col < 9; col++) {
+                    if (row < 7) {
+                        assertEquals(xReference.getGradient(row, col), x.getGradient(row, col), 1e-12);
+                    }
+                    if (col < 5) {
+                        assertEquals(wReference.getGradient(row, col), w.getGradient(row, col), 1e-12);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAliasedOffHeapGradients() {
+        Random random = new Random(8);
+        Matrix heap = Matrix.create(256, 256, () -> random.nextDouble() - 0.5, true);
+        try (OffHeapArena arena = new OffHeapArena()) {
+            Matrix x = Matrix.createOffHeap(arena, 256, 256, () -> 0.0, true);
+            for (int row = 0; row < 256; row++) {
+                for (int col = 0; col < 256; col++) {
+                    x.setValue(row, col, heap.getValue(row, col));
+                }
+            }
+            //x and its transpose are two windows over one off-heap gradient, written by different workers
+            Matrix sum = x.add(x.transpose()).sum();
+            Matrix loss = x.mse(x.transpose());
+            Matrix heapLoss = heap.mse(heap.transpose());
+            withThreads(4, () -> {
+                sum.zeroGradAndforward();
+                sum.backward();
+                for (int row = 0; row < 256; row++) {
+                    for (int col = 0; col < 256; col++) {
+                        assertEquals(2, x.getGradient(row, col));
+                        x.setGradient(row, col, 0);
+                    }
+                }
+                loss.zeroGradAndforward();
+                loss.backward();
+                heapLoss.zeroGradAndforward();
+                heapLoss.backward();
+            });
+            for (int row = 0; row < 256; row++) {
+                for (int col = 0; col < 256; col++) {
+                    assertEquals(heap.getGradient(row, col), x.getGradient(row, col), 1e-15);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMappedMatrices(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("embeddings.bin");
+        try (OffHeapArena arena = new OffHeapArena()) {
+            Matrix table = Matrix.createMapped(arena, file, 6, 4, true, Precision.FLOAT32);
+            assertEquals(6 * 4 * 4, arena.mappedBytes());
+            assertEquals(6 * 4 * 8, arena.allocatedBytes());
+            assertEquals(0, table.getValue(5, 3));
+            for (int row = 0; row < 6; row++) {
+                for (int col = 0; col < 4; col++) {
+                    table.setValue(row, col, row * 4 + col);
+                }
+            }
+            //One hot rows look up rows 1 and 4 of the table
+            Matrix lookup = Matrix.create(2, 6);
+            lookup.setValue(0, 1, 1);
+            lookup.setValue(1, 4, 1);
+            Matrix loss = lookup.matmul(table).sum();
+            loss.backward();
+            assertEquals(4 + 5 + 6 + 7 + 16 + 17 + 18 + 19, loss.getValue());
+
+            StocasticGradientDescentOptimizer optimizer = new StocasticGradientDescentOptimizer(0.5);
+            optimizer.addParameter(table);
+            optimizer.learn();
+            arena.force();
+        }
+
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(6 * 4 * 4, bytes.capacity());
+        assertEquals(3f, bytes.getFloat(3 * 4));
+        assertEquals(4 - 0.5f, bytes.getFloat(4 * 4));
+        try (OffHeapArena arena = new OffHeapArena()) {
+            Matrix reopened = Matrix.createMapped(arena, file, 6, 4, false, Precision.FLOAT32);
+            assertEquals(18 - 0.5, reopened.getValue(4, 2));
+            assertEquals(23, reopened.getValue(5, 3));
+            assertThrows(IllegalArgumentException.class, () -> Matrix.createMapped(arena, file, 5, 4, false, Precision.FLOAT32));
+        }
+    }
+
+    @Test
+    public void testSparseMatmulMatchesDense() {
+        //Unsorted COO entries, (3, 2) is given twice and adds up, row 1 is empty
+        int[] rows = {3, 0, 4, 3, 0, 2, 3};
+        int[] cols = {2, 6, 0, 5, 1, 3, 2};
+        double[] values = {1.5, -2, 0.5, 3, 4, -1, 0.25};
+        SparseMatrix sparse = Matrix.createSparse(5, 7, rows, cols, values, true);
+        assertEquals(6, sparse.numNonZeros());
+        Matrix reference = Matrix.create(5, 7, true);
+        for (int i = 0; i < rows.length; i++) {
+            reference.setValue(rows[i], cols[i], reference.getValue(rows[i], cols[i]) + values[i]);
+        }
+        Random random = new Random(5);
+        Matrix dense = Matrix.create(7, 4, random::nextGaussian, true);
+
+        Matrix loss = sparse.matmul(dense).sin().sum();
+        Matrix referenceLoss = reference.matmul(dense).sin().sum();
+        referenceLoss.zeroGradAndforward();
+        referenceLoss.backward();
+        double[][] denseGradient = new double[7][4];
+        for (int row = 0; row < 7; row++) {
+            for (int col = 0; col < 4; col++) {
+                denseGradient[row][col] = dense.getGradient(row, col);
+                dense.setGradient(row, col, 0);
+            }
+        }
+        loss.zeroGradAndforward();
+        loss.backward();
+        assertEquals(referenceLoss.getValue(), loss.getValue(), 1e-12);
+        for (int row = 0; row < 7; row++) {
+            for (int col = 0; col < 4; col++) {
+                assertEquals(denseGradient[row][col], dense.getGradient(row, col), 1e-12);
+            }
+        }
+        for (int row = 0; row < 5; row++) {
+            for (int col = 0; col < 7; col++) {
+                double expected = (0 == reference.getValue(row, col)) ? 0 : reference.getGradient(row, col);
+                assertEquals(reference.getValue(row, col), sparse.getValue(row, col));
+                assertEquals(expected, sparse.getGradient(row, col), 1e-12);
+            }
+        }
+        sparse.setValue(1, 1, 0);
+        assertThrows(IllegalArgumentException.class, () -> sparse.setValue(1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> Matrix.createSparseCsr(2, 3, new int[]{0, 2, 2}, new int[]{2, 1}, new double[]{1, 1}, false));
+    }
+
+    @Test
+    public void testExecutionPlanIsReusedAcrossRuns() {
+        Matrix x = Matrix.create(2, 3, () -> 1.0, true);
+        Matrix w = Matrix.create(3, 2, () -> 0.5, true);
+        Matrix loss = x.matmul(w).tanh().sum();
+        loss.zeroGradAndforward();
+        loss.backward();
+        ExecutionPlan<ForwardComputeOperation> forwardPlan = loss.forwardComputeOperation.getPlan();
+        ExecutionPlan<BackwardComputeOperation> backwardPlan = loss.backwardComputeOperation.getPlan();
+
+        //New leaf values run through the same plans, leaf gradients are cleared as an optimizer would
+        x.setValue(1, 2, -3);
+        w.setValue(2, 0, 2);
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 2; col++) {
+                w.setGradient(row, col, 0);
+            }
+        }
+        loss.zeroGradAndforward();
+        loss.backward();
+        assertSame(forwardPlan, loss.forwardComputeOperation.getPlan());
+        assertSame(backwardPlan, loss.backwardComputeOperation.getPlan());
+        double expectedLoss = 0;
+        for (int row = 0; row < 2; row++) {
+            for (int col = 0; col < 2; col++) {
+                double z = 0;
+                for (int k = 0; k < 3; k++) {
+                    z += x.getValue(row, k) * w.getValue(k, col);
+                }
+                expectedLoss += Math.tanh(z);
+            }
+        }
+        assertEquals(expectedLoss, loss.getValue(), 1e-12);
+        double z10 = x.getValue(1, 0) * w.getValue(0, 0) + x.getValue(1, 1) * w.getValue(1, 0) + x.getValue(1, 2) * w.getValue(2, 0);
+        double z00 = x.getValue(0, 0) * w.getValue(0, 0) + x.getValue(0, 1) * w.getValue(1, 0) + x.getValue(0, 2) * w.getValue(2, 0);
+        double expectedGradient = (1 - Math.tanh(z00) * Math.tanh(z00)) * x.getValue(0, 2) + (1 - Math.tanh(z10) * Math.tanh(z10)) * x.getValue(1, 2);
+        assertEquals(expectedGradient, w.getGradient(2, 0), 1e-12);
+    }
+
+    @Test
+    public void testVeryDeepGraph() {
+        Matrix x = Matrix.create(1, 2, () -> 1.0, true);
+        Matrix step = Matrix.create(1, 2, () -> 0.5);
+
+        //Far deeper than a recursive traversal could go
+        Matrix y = x;
+        for (int i = 0; i < 50_000; i++) {
+            y = y.add(step);
+        }
+        Matrix loss = y.sum();
+        x.setValue(0, 0, 2);
+        loss.zeroGradAndforward();
+        loss.backward();
+        assertEquals(3 + 50_000, loss.getValue(0, 0), 1e-9);
+        assertEquals(1, x.getGradient(0, 0));
+        assertEquals(1, x.getGradient(0, 1));
+    }
+
+    @Test
+    public void testParallelBranchesShareGradients() {
+        Random random = new Random(11);
+        Matrix x = Matrix.create(9, 16, () -> random.nextDouble() - 0.5, true);
+        Matrix[] weights = new Matrix[6];
+        Matrix[] heads = new Matrix[weights.length];
+        //Independent heads over the same input, all of them add into the gradient of x
+        for (int k = 0; k < weights.length; k++) {
+            weights[k] = Matrix.create(16, 5, () -> random.nextDouble() - 0.5, true);
+            heads[k] = x.matmul(weights[k]).tanh().sum();
+        }
+        Matrix loss = Arrays.stream(heads).reduce(Matrix::add).orElseThrow();
+        withThreads(4, () -> {
+            loss.zeroGradAndforward();
+            loss.backward();
+        });
+        for (int row = 0; row < x.numRows(); row++) {
+            for (int col = 0; col < x.numCols(); col++) {
+                double expected = 0;
+                for (Matrix w : weights) {
+                    for (int j = 0; j < w.numCols(); j++) {
+                        double z = 0;
+                        for (int k = 0; k < x.numCols(); k++) {
+                            z += x.getValue(row, k) * w.getValue(k, j);
+                        }
+                        expected += (1 - Math.tanh(z) * Math.tanh(z)) * w.getValue(col, j);
+                    }
+                }
+                assertEquals(expected, x.getGradient(row, col), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testGraphFailureWaitsForRunningNodes() {
+        PlanNode failing = new PlanNode();
+        PlanNode slow = new PlanNode();
+        PlanNode root = new PlanNode(failing, slow);
+        ExecutionPlan<PlanNode> plan = ExecutionPlan.compile(root, PlanNode[]::new, true);
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        AtomicBoolean slowFinished = new AtomicBoolean();
+        AtomicBoolean rootRan = new AtomicBoolean();
+        withThreads(4, () -> {
+            assertThrows(RuntimeException.class, () -> GraphScheduler.run(plan, node -> {
+                try {
+                    if (node == failing) {
+                        slowStarted.await(5, TimeUnit.SECONDS);
+                        throw new IllegalStateException("failed");
+                    } else if (node == slow) {
+                        slowStarted.countDown();
+                        Thread.sleep(200);
+                        slowFinished.set(true);
+                    } else {
+                        rootRan.set(true);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        });
+        //The failure is only reported once the node that was already running is done, and the root is skipped
+        assertTrue(slowFinished.get());
+        assertFalse(rootRan.get());
+    }
+
+    @Test
+    public void testVectorizedKernelsMatchScalarFunctions() {
+        assumeTrue(SimdKernels.ENABLED, "jdk.incubator.vector is not available");
+        Random random = new Random(3);
+        final int length = 37;
+        double[] left = new double[length];
+        double[] right = new double[length];
+        double[] result = new double[length];
+        double[] resultGradient = new double[length];
+        for (int i = 0; i < length; i++) {
+            left[i] = (i % 5 == 0) ? 0 : random.nextDouble() * 4 - 2;
+            right[i] = (i % 7 == 0) ? left[i] : random.nextDouble() * 4 - 2;
+            result[i] = random.nextDouble();
+            resultGradient[i] = random.nextDouble() * 2 - 1;
+        }
+
+        FunctionRegistry.BinaryCalcFunction[] binary = {FunctionRegistry.ADD, FunctionRegistry.SUB, FunctionRegistry.MUL,
+                FunctionRegistry.DIV, FunctionRegistry.MAX, FunctionRegistry.MIN};
+        for (FunctionRegistry.BinaryCalcFunction function : binary) {
+            double[] actual = new double[length];
+            SimdKernels.forward(function, left, 0, right, 0, actual, 0, length);
+            for (int i = 0; i < length; i++) {
+                assertEquals(function.result(left[i], right[i]), actual[i]);
+            }
+        }
+
+        FunctionRegistry.BinaryGradientFunction[][] binaryGradients = {
+                {FunctionRegistry.ADD_GRAD_LEFT, FunctionRegistry.ADD_GRAD_RIGHT},
+                {FunctionRegistry.SUB_GRAD_LEFT, FunctionRegistry.SUB_GRAD_RIGHT},
+                {FunctionRegistry.MUL_GRAD_LEFT, FunctionRegistry.MUL_GRAD_RIGHT},
+                {FunctionRegistry.DIV_GRAD_LEFT, FunctionRegistry.DIV_GRAD_RIGHT},
+                {FunctionRegistry.MAX_GRAD_LEFT, FunctionRegistry.MAX_GRAD_RIGHT},
+                {FunctionRegistry.MIN_GRAD_LEFT, FunctionRegistry.MIN_GRAD_RIGHT}};
+        for (FunctionRegistry.BinaryGradientFunction[] pair : binaryGradients) {
+            double[] leftGradient = new double[length];
+            double[] rightGradient = new double[length];
+            SimdKernels.backward(pair[0], pair[1], left, 0, right, 0, result, 0, resultGradient, 0, leftGradient, 0, rightGradient, 0, length);
+            for (int i = 0; i < length; i++) {
+                assertEquals(0.0 + pair[0].result(left[i], right[i], result[i], resultGradient[i]), leftGradient[i]);
+                assertEquals(0.0 + pair[1].result(left[i], right[i], result[i], resultGradient[i]), rightGradient[i]);
+            }
+        }
+
+        FunctionRegistry.UnaryGradientFunction[] unaryGradients = {FunctionRegistry.RELU_GRAD, FunctionRegistry.LEAKY_RELU_GRAD,
+                FunctionRegistry.EXP_GRAD, FunctionRegistry.SIGMOID_GRAD, FunctionRegistry.TANH_GRAD, FunctionRegistry.TAN_GRAD, FunctionRegistry.SQRT_GRAD};
+        for (FunctionRegistry.UnaryGradientFunction function : unaryGradients) {
+            double[] inputGradient = new double[length];
+            SimdKernels.backward(function, left, 0, result, 0, resultGradient, 0, inputGradient, 0, length);
+            for (int i = 0; i < length; i++) {
+                assertEquals(0.0 + function.result(left[i], result[i], resultGradient[i]), inputGradient[i]);
+            }
+        }
+
+        assertEquals(Arrays.stream(left).max().getAsDouble(), SimdKernels.max(left, 0, length));
+        assertEquals(Arrays.stream(left).min().getAsDouble(), SimdKernels.min(left, 0, length));
+        assertEquals(Arrays.stream(left).sum(), SimdKernels.sum(left, 0, length), 1e-12);
+    }
+
+    /**
+     * Runs the body with a compute pool of numThreads threads, then restores the default pool.
+     */
+    private static void withThreads(int numThreads, Runnable body) {
+        ExecutorFactory.createExecutor(numThreads);
+        try {
+            body.run();
+        } finally {
+            ExecutorFactory.createExecutor(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * Two sets of trainable leaves of the given [rows, columns] shapes holding the same random values, for two copies
+     * of a graph that are run differently and compared.
+     */
+    private static Matrix[][] twinLeaves(long seed, int[][] shapes) {
+        Random random = new Random(seed);
+        Matrix[][] leaves = new Matrix[2][shapes.length];
+        for (int l = 0; l < shapes.length; l++) {
+            Matrix leaf = Matrix.create(shapes[l][0], shapes[l][1], () -> random.nextDouble() - 0.5, true);
+            leaves[0][l] = leaf;
+            leaves[1][l] = Matrix.create(shapes[l][0], shapes[l][1], true);
+            for (int row = 0; row < leaf.numRows(); row++) {
+                for (int col = 0; col < leaf.numCols(); col++) {
+                    leaves[1][l].setValue(row, col, leaf.getValue(row, col));
+                }
+            }
+        }
+        return leaves;
+    }
+
+    /**
+     * Asserts that every leaf of the second set of {@link #twinLeaves} has the gradient of its twin in the first.
+     */
+    private static void assertGradientsMatch(Matrix[][] leaves, double tolerance) {
+        for (int l = 0; l < leaves[0].length; l++) {
+            for (int row = 0; row < leaves[0][l].numRows(); row++) {
+                for (int col = 0; col < leaves[0][l].numCols(); col++) {
+                    assertEquals(leaves[0][l].getGradient(row, col), leaves[1][l].getGradient(row, col), tolerance);
+                }
+            }
+        }
+    }
+
+    private static class PlanNode implements ExecutionPlan.Node<PlanNode> {
+        private final PlanNode[] inputs;
+        private int planMark;
+
+        PlanNode(PlanNode... inputs) {
+            this.inputs = inputs;
+        }
+
+        @Override
+        public PlanNode[] inputs() {
+            return inputs;
+        }
+
+        @Override
+        public int getPlanMark() {
+            return planMark;
+        }
+
+        @Override
+        public void setPlanMark(int mark) {
+            this.planMark = mark;
+        }
+    }
 }
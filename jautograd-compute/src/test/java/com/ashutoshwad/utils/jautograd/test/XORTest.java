@@ -6,9 +6,6 @@ import com.ashutoshwad.utils.jautograd.optimizer.AdamWOptimizer;
 import com.ashutoshwad.utils.jautograd.optimizer.GradientClipper;
 import org.junit.jupiter.api.Test;
 
-import java.util.LinkedList;
-import java.util.Queue;
-
 public class XORTest {
     private static final double LEARNING_RATE = 0.01;
     private Matrix input;
@@ -44,7 +41,7 @@ public class XORTest {
         Matrix intermediate = input.matmul(hiddenWeights).add(hiddenBias).swish();
         Matrix output = intermediate.matmul(outputWeights).add(outputBias).sigmoid();
 
-        Matrix loss = mse(output.sub(target));
+        Matrix loss = output.mse(target);
         loss.backward();
 
         train(1000, output, loss);
@@ -113,26 +110,6 @@ public class XORTest {
         System.out.println("\nResult: " + (allCorrect ? "PASSED! Your framework learned XOR!" : "Failed to learn XOR"));
     }
 
-    private Matrix mse(Matrix loss) {
-        //Compute and return the mean squared loss
-        loss = loss.mul(loss);
-        Matrix[][]temp = loss.explode();
-        Queue<Matrix>listToAdd = new LinkedList<>();
-        for (int row = 0; row < temp.length; row++) {
-            for (int col = 0; col < temp[row].length; col++) {
-                listToAdd.add(temp[row][col]);
-            }
-        }
-        while(listToAdd.size()>1) {
-            Matrix a = listToAdd.poll();
-            Matrix b = listToAdd.poll();
-            listToAdd.add(a.add(b));
-        }
-        loss = listToAdd.poll();
-        loss = loss.sqrt();
-        return loss;
-    }
-
     private Matrix createXORInput() {
         double[][] data = {
                 {0.0, 0.0},  // XOR input 1